@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The options and files given to a command. Every option has the form <code>--name value</code>,
+ * and may be repeated. Everything else is a file.
+ */
+final class Arguments {
+	private final Map<String, List<String>> options = new HashMap<>();
+	private final List<Path> files = new ArrayList<>();
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if an option has no value.
+	 */
+	Arguments(List<String> args) {
+		for (int i = 0; i < args.size(); i++) {
+			String arg = args.get(i);
+			if (arg.startsWith("--")) {
+				if (i + 1 == args.size()) {
+					throw new IllegalArgumentException("Missing value for " + arg);
+				}
+				options.computeIfAbsent(arg.substring(2), name -> new ArrayList<>()).add(args.get(++i));
+			} else {
+				files.add(Paths.get(arg));
+			}
+		}
+	}
+
+	/**
+	 * @return the values of an option, in the order given.
+	 */
+	List<String> options(String name) {
+		return options.getOrDefault(name, Collections.emptyList());
+	}
+
+	/**
+	 * @return the last value of an option, or the default value if not given.
+	 */
+	String option(String name, String defaultValue) {
+		List<String> values = options(name);
+		return values.isEmpty() ? defaultValue : values.get(values.size() - 1);
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the value is not a positive integer.
+	 */
+	int intOption(String name, int defaultValue) {
+		String value = option(name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value);
+			if (result > 0) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new IllegalArgumentException("--" + name + " must be a positive integer, not " + value);
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if an option not in the given names was used.
+	 */
+	void checkOptions(String... names) {
+		for (String option : options.keySet()) {
+			boolean known = false;
+			for (String name : names) {
+				known |= name.equals(option);
+			}
+			if (!known) {
+				throw new IllegalArgumentException("Unknown option --" + option);
+			}
+		}
+	}
+
+	/**
+	 * @return the files given, with the directories replaced by the recordings in them, i.e. the
+	 *         files ending with <code>.jfr</code>.
+	 * @throws IllegalArgumentException
+	 *             if no files were given.
+	 * @throws IOException
+	 *             if a directory could not be listed.
+	 */
+	List<Path> recordings() throws IOException {
+		List<Path> recordings = new ArrayList<>();
+		for (Path file : files()) {
+			if (Files.isDirectory(file)) {
+				try (Stream<Path> listing = Files.list(file)) {
+					listing.filter(path -> path.getFileName().toString().endsWith(".jfr") && Files.isRegularFile(path))
+							.sorted().forEach(recordings::add);
+				}
+			} else {
+				recordings.add(file);
+			}
+		}
+		return recordings;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if no files were given.
+	 */
+	List<Path> files() {
+		if (files.isEmpty()) {
+			throw new IllegalArgumentException("No recordings given");
+		}
+		return files;
+	}
+}
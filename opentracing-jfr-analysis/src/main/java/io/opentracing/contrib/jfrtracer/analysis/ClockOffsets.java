@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Estimates the clock offsets between the hosts of a distributed trace, from the spans whose
+ * parent was recorded on another host.
+ * <p>
+ * A child span is assumed to happen within its parent, so every such pair bounds the offset
+ * between the clocks of the two hosts from both sides. The estimate of a pair centers the child in
+ * its parent, i.e. it assumes the request and the response took equally long on the network. The
+ * estimate for two hosts is the median of the estimates of their pairs, kept within the bounds
+ * all the pairs agree on, if any. The offsets of all hosts are then chained from the first host,
+ * following the host pairs with the most span pairs first.
+ */
+final class ClockOffsets {
+	private static final int MAX_SAMPLES = 1024;
+
+	/**
+	 * The span pairs between two hosts, as offsets of the clock of the second host relative to the
+	 * clock of the first.
+	 */
+	private static final class HostPair {
+		final int first;
+		final int second;
+		// A uniform sample of the estimates, to bound the memory used
+		final long[] samples = new long[MAX_SAMPLES];
+		long count;
+		long lower = Long.MIN_VALUE;
+		long upper = Long.MAX_VALUE;
+
+		HostPair(int first, int second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		void add(long lowerBound, long upperBound, Random random) {
+			long estimate = lowerBound + (upperBound - lowerBound) / 2;
+			if (count < MAX_SAMPLES) {
+				samples[(int) count] = estimate;
+			} else {
+				long slot = (long) (random.nextDouble() * (count + 1));
+				if (slot < MAX_SAMPLES) {
+					samples[(int) slot] = estimate;
+				}
+			}
+			count++;
+			lower = Math.max(lower, lowerBound);
+			upper = Math.min(upper, upperBound);
+		}
+
+		long estimate() {
+			long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, MAX_SAMPLES));
+			Arrays.sort(sorted);
+			long median = sorted[sorted.length / 2];
+			if (lower > upper) {
+				// The pairs contradict each other, e.g. because of clock drift, so just use the median
+				return median;
+			}
+			return Math.max(lower, Math.min(upper, median));
+		}
+	}
+
+	private final int hosts;
+	private final Map<Integer, HostPair> pairs = new HashMap<>();
+	private final Random random = new Random(0);
+
+	ClockOffsets(int hosts) {
+		this.hosts = hosts;
+	}
+
+	/**
+	 * Adds a span whose parent was recorded on another host.
+	 */
+	void add(SpanRecord parent, SpanRecord child) {
+		if (parent.host == child.host) {
+			return;
+		}
+		// Adding the offset to the child times puts the child within the parent
+		long lowerBound = parent.start - child.start;
+		long upperBound = parent.end() - child.end();
+		if (lowerBound > upperBound) {
+			// The child took longer than its parent, so only keep the center
+			lowerBound = upperBound = lowerBound + (upperBound - lowerBound) / 2;
+		}
+		if (parent.host < child.host) {
+			pair(parent.host, child.host).add(lowerBound, upperBound, random);
+		} else {
+			pair(child.host, parent.host).add(-upperBound, -lowerBound, random);
+		}
+	}
+
+	/**
+	 * @return the number of span pairs between two hosts.
+	 */
+	long pairs(int host, int other) {
+		HostPair pair = pairs.get(Math.min(host, other) * hosts + Math.max(host, other));
+		return pair == null ? 0 : pair.count;
+	}
+
+	/**
+	 * @return the offsets to add to the times of every host to align them with the clock of the
+	 *         first host, or with the clock of the first host they are connected to, for groups of
+	 *         hosts not connected by any span to the first.
+	 */
+	long[] offsets() {
+		long[] offsets = new long[hosts];
+		boolean[] aligned = new boolean[hosts];
+		PriorityQueue<HostPair> edges = new PriorityQueue<>((a, b) -> Long.compare(b.count, a.count));
+		for (int root = 0; root < hosts; root++) {
+			if (aligned[root]) {
+				continue;
+			}
+			aligned[root] = true;
+			addEdges(root, edges);
+			while (!edges.isEmpty()) {
+				HostPair pair = edges.poll();
+				if (aligned[pair.first] && aligned[pair.second]) {
+					continue;
+				}
+				if (aligned[pair.first]) {
+					offsets[pair.second] = offsets[pair.first] + pair.estimate();
+					aligned[pair.second] = true;
+					addEdges(pair.second, edges);
+				} else {
+					offsets[pair.first] = offsets[pair.second] - pair.estimate();
+					aligned[pair.first] = true;
+					addEdges(pair.first, edges);
+				}
+			}
+		}
+		return offsets;
+	}
+
+	private void addEdges(int host, PriorityQueue<HostPair> edges) {
+		for (HostPair pair : pairs.values()) {
+			if (pair.first == host || pair.second == host) {
+				edges.add(pair);
+			}
+		}
+	}
+
+	private HostPair pair(int first, int second) {
+		return pairs.computeIfAbsent(first * hosts + second, key -> new HostPair(first, second));
+	}
+}
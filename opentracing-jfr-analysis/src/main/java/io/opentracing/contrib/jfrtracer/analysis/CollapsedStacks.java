@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+
+/**
+ * Sample counts by stack, written in the collapsed stack format read by flame graph tools: one
+ * line per stack, with the frames from the root down separated by semicolons, followed by a space
+ * and the number of samples.
+ */
+final class CollapsedStacks {
+	private final Map<String, Long> counts = new HashMap<>();
+	private long total;
+
+	void add(String stack, long samples) {
+		counts.merge(stack, samples, Long::sum);
+		total += samples;
+	}
+
+	CollapsedStacks merge(CollapsedStacks other) {
+		other.counts.forEach(this::add);
+		return this;
+	}
+
+	/**
+	 * @return the total number of samples.
+	 */
+	long total() {
+		return total;
+	}
+
+	void write(Path file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Long> entry : new TreeMap<>(counts).entrySet()) {
+				writer.write(entry.getKey());
+				writer.write(' ');
+				writer.write(Long.toString(entry.getValue()));
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * @param prefix
+	 *            frames to put below the root of the stack, e.g. the operation name, or null.
+	 * @return the stack in collapsed form.
+	 */
+	static String collapse(RecordedStackTrace stackTrace, String prefix) {
+		StringBuilder stack = new StringBuilder();
+		if (prefix != null) {
+			stack.append(frameName(prefix));
+		}
+		if (stackTrace != null) {
+			List<RecordedFrame> frames = stackTrace.getFrames();
+			if (stackTrace.isTruncated()) {
+				separate(stack).append("[truncated]");
+			}
+			for (int i = frames.size() - 1; i >= 0; i--) {
+				separate(stack).append(frameName(frames.get(i)));
+			}
+		}
+		return stack.length() == 0 ? "[unknown]" : stack.toString();
+	}
+
+	private static StringBuilder separate(StringBuilder stack) {
+		return stack.length() == 0 ? stack : stack.append(';');
+	}
+
+	private static String frameName(RecordedFrame frame) {
+		RecordedMethod method = frame.getMethod();
+		if (method == null) {
+			return "[unknown]";
+		}
+		return frameName(method.getType().getName() + '.' + method.getName());
+	}
+
+	// Semicolons separate the frames, and the last space separates the count
+	private static String frameName(String name) {
+		return name.replace(';', ':').replace(' ', '_');
+	}
+}
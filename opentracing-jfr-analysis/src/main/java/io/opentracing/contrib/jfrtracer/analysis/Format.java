@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formatting shared by the commands.
+ */
+final class Format {
+	private Format() {
+	}
+
+	/**
+	 * @return the duration in milliseconds, with three decimals.
+	 */
+	static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+	}
+
+	/**
+	 * @return the part of the total as a percentage, with one decimal.
+	 */
+	static String percent(long part, long total) {
+		return String.format(Locale.ROOT, "%.1f%%", total == 0 ? 0.0 : part * 100.0 / total);
+	}
+
+	/**
+	 * Prints rows of cells as a table, the first column left aligned and the others right aligned.
+	 */
+	static void table(List<String[]> rows, PrintStream out) {
+		int[] widths = new int[rows.get(0).length];
+		for (String[] row : rows) {
+			for (int i = 0; i < row.length; i++) {
+				widths[i] = Math.max(widths[i], row[i].length());
+			}
+		}
+		for (String[] row : rows) {
+			StringBuilder line = new StringBuilder(String.format("%-" + widths[0] + "s", row[0]));
+			for (int i = 1; i < row.length; i++) {
+				line.append(String.format("  %" + widths[i] + "s", row[i]));
+			}
+			out.println(line);
+		}
+	}
+}
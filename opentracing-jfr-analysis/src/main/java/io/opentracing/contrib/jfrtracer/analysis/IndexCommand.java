@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the trace index of every recording to a sidecar file next to it, unless the index is
+ * already up to date, so that a directory of rolling recordings can be indexed repeatedly.
+ */
+final class IndexCommand {
+	static final String USAGE = "index [--threads N] <recording.jfr | directory>...";
+
+	private IndexCommand() {
+	}
+
+	static void run(Arguments arguments, PrintStream out) throws IOException {
+		arguments.checkOptions("threads");
+		RecordingChunks reader = new RecordingChunks(
+				arguments.intOption("threads", Runtime.getRuntime().availableProcessors()));
+		for (Path recording : arguments.recordings()) {
+			Path sidecar = TraceIndex.sidecar(recording);
+			if (Files.exists(sidecar) && isCurrent(sidecar, recording)) {
+				out.println(recording + ": up to date");
+				continue;
+			}
+			TraceIndex.write(recording, reader, sidecar);
+			try (TraceIndex index = TraceIndex.open(sidecar)) {
+				out.println(recording + ": " + index.chunks().size() + " chunks, " + index.traceCount() + " traces, "
+						+ index.operations().size() + " operations");
+			}
+		}
+	}
+
+	private static boolean isCurrent(Path sidecar, Path recording) {
+		try (TraceIndex index = TraceIndex.open(sidecar)) {
+			return index.isCurrent(recording);
+		} catch (IOException e) {
+			// Rebuilt
+			return false;
+		}
+	}
+}
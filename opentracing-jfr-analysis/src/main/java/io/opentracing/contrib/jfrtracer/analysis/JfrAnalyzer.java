@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command line tool for analysing the span and scope events in flight recordings.
+ */
+public final class JfrAnalyzer {
+	private static final int FAILED = 1;
+	private static final int USAGE = 2;
+
+	private JfrAnalyzer() {
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	/**
+	 * Runs a command.
+	 *
+	 * @return the exit status: 0 on success, 1 if the recordings could not be read and 2 if the
+	 *         command line was wrong.
+	 */
+	static int run(String[] args, PrintStream out, PrintStream err) {
+		if (args.length == 0) {
+			return usage(err, null);
+		}
+		List<String> commandArgs = Arrays.asList(args).subList(1, args.length);
+		try {
+			switch (args[0]) {
+			case "traces":
+				TracesCommand.run(new Arguments(commandArgs), out);
+				return 0;
+			case "profile":
+				ProfileCommand.run(new Arguments(commandArgs), out);
+				return 0;
+			case "waits":
+				WaitsCommand.run(new Arguments(commandArgs), out);
+				return 0;
+			case "merge":
+				MergeCommand.run(new Arguments(commandArgs), out);
+				return 0;
+			case "index":
+				IndexCommand.run(new Arguments(commandArgs), out);
+				return 0;
+			case "query":
+				QueryCommand.run(new Arguments(commandArgs), out);
+				return 0;
+			default:
+				return usage(err, "Unknown command " + args[0]);
+			}
+		} catch (IllegalArgumentException e) {
+			return usage(err, e.getMessage());
+		} catch (IOException e) {
+			err.println(e.getMessage());
+			return FAILED;
+		}
+	}
+
+	private static int usage(PrintStream err, String message) {
+		if (message != null) {
+			err.println(message);
+		}
+		err.println("Usage: JfrAnalyzer <command> [options] <recording.jfr>...");
+		err.println("Commands:");
+		err.println("  " + TracesCommand.USAGE);
+		err.println("  " + ProfileCommand.USAGE);
+		err.println("  " + WaitsCommand.USAGE);
+		err.println("  " + MergeCommand.USAGE);
+		err.println("  " + IndexCommand.USAGE);
+		err.println("  " + QueryCommand.USAGE);
+		return USAGE;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+/**
+ * A histogram of durations in nanoseconds, with a relative error of at most 1/64, about 1.6%, for
+ * any value. Durations below 64 ns are counted exactly, and every following power of two is split
+ * into 64 buckets of equal width. Histograms can be merged, so one can be built per chunk of a
+ * recording and then combined.
+ */
+final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long min = Long.MAX_VALUE;
+	private long max;
+	private long sum;
+
+	/**
+	 * Records a duration. Negative durations are recorded as 0.
+	 */
+	void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts[index(value)]++;
+		count++;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		sum += value;
+	}
+
+	/**
+	 * Adds the counts of another histogram to this one.
+	 *
+	 * @return this histogram.
+	 */
+	LatencyHistogram merge(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		sum += other.sum;
+		return this;
+	}
+
+	long count() {
+		return count;
+	}
+
+	long min() {
+		return count == 0 ? 0 : min;
+	}
+
+	long max() {
+		return max;
+	}
+
+	long mean() {
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * @param percentile
+	 *            the percentile, between 0 and 100.
+	 * @return the smallest recorded duration, within the resolution of the histogram, that at
+	 *         least the given percentage of the durations are less than or equal to.
+	 */
+	long percentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				// Report the upper end of the bucket, but never more than the largest duration
+				return Math.max(min, Math.min(max, highestValue(i)));
+			}
+		}
+		return max;
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (exponent + 1) * SUB_BUCKETS + (int) (value >>> exponent) - SUB_BUCKETS;
+	}
+
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << exponent) - 1;
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Joins the spans recorded by several processes, one recording per process, into cross-process
+ * traces. The clock offsets between the hosts are estimated from the spans whose parent was
+ * recorded by another process, and the timelines of the slowest traces, or of the traces asked
+ * for, are printed with the offsets corrected.
+ * <p>
+ * All recordings are read at the same time, one thread per recording, and merged into one stream
+ * of spans ordered by end time. A trace is kept in memory only until no span of it has been seen
+ * for a time window, so the memory used depends on the number of traces in flight, not on the size
+ * of the recordings.
+ */
+final class MergeCommand {
+	static final String USAGE = "merge [--slowest N] [--trace ID]... [--window SECONDS] <recording.jfr>...";
+
+	private static final Comparator<List<SpanRecord>> BY_LONGEST_SPAN = Comparator
+			.comparingLong(MergeCommand::longestSpan);
+
+	/**
+	 * Takes the completed traces, for the clock offsets and for printing.
+	 */
+	private static final class Collector implements Consumer<List<SpanRecord>> {
+		final ClockOffsets clocks;
+		final int slowestCount;
+		final Set<String> traceIds;
+		final PriorityQueue<List<SpanRecord>> slowest = new PriorityQueue<>(BY_LONGEST_SPAN);
+		final Map<String, List<SpanRecord>> selected = new HashMap<>();
+		long traces;
+		long crossProcessTraces;
+
+		Collector(int hosts, int slowestCount, Set<String> traceIds) {
+			this.clocks = new ClockOffsets(hosts);
+			this.slowestCount = slowestCount;
+			this.traceIds = traceIds;
+		}
+
+		@Override
+		public void accept(List<SpanRecord> spans) {
+			traces++;
+			if (addClockPairs(spans, clocks)) {
+				crossProcessTraces++;
+			}
+			String traceId = spans.get(0).traceId;
+			if (!traceIds.isEmpty()) {
+				if (traceIds.contains(traceId)) {
+					// A trace split by a too short window is joined again
+					selected.computeIfAbsent(traceId, id -> new ArrayList<>()).addAll(spans);
+				}
+			} else {
+				slowest.add(spans);
+				if (slowest.size() > slowestCount) {
+					slowest.poll();
+				}
+			}
+		}
+	}
+
+	private MergeCommand() {
+	}
+
+	static void run(Arguments arguments, PrintStream out) throws IOException {
+		arguments.checkOptions("slowest", "trace", "window");
+		int slowest = arguments.intOption("slowest", 10);
+		Set<String> traceIds = new LinkedHashSet<>(arguments.options("trace"));
+		long windowNanos = arguments.intOption("window", 60) * 1_000_000_000L;
+		List<Path> files = arguments.files();
+
+		Collector collector = new Collector(files.size(), slowest, traceIds);
+		TraceMerger merger = new TraceMerger(windowNanos, collector);
+		try (SpanStreams streams = new SpanStreams(files)) {
+			for (SpanRecord span = streams.next(); span != null; span = streams.next()) {
+				merger.add(span);
+			}
+		}
+		merger.finish();
+
+		ClockOffsets clocks = collector.clocks;
+		long[] offsets = clocks.offsets();
+		List<String> hosts = hostNames(files);
+		out.println(collector.traces + " traces, " + collector.crossProcessTraces + " across processes, at most "
+				+ merger.maxInFlight() + " in flight");
+		out.println();
+		List<String[]> rows = new ArrayList<>();
+		rows.add(new String[] {"Recording", "Clock offset ms", "Cross-process spans"});
+		for (int host = 0; host < files.size(); host++) {
+			long pairs = 0;
+			for (int other = 0; other < files.size(); other++) {
+				pairs += other == host ? 0 : clocks.pairs(host, other);
+			}
+			rows.add(new String[] {hosts.get(host), Format.millis(offsets[host]), String.valueOf(pairs)});
+		}
+		Format.table(rows, out);
+
+		Map<String, List<SpanRecord>> printed = new LinkedHashMap<>();
+		if (traceIds.isEmpty()) {
+			List<List<SpanRecord>> traces = new ArrayList<>(collector.slowest);
+			traces.sort(BY_LONGEST_SPAN.reversed());
+			for (List<SpanRecord> spans : traces) {
+				printed.put(spans.get(0).traceId, spans);
+			}
+		} else {
+			for (String traceId : traceIds) {
+				printed.put(traceId, collector.selected.get(traceId));
+			}
+		}
+		for (Map.Entry<String, List<SpanRecord>> trace : printed.entrySet()) {
+			out.println();
+			if (trace.getValue() == null) {
+				out.println("Trace " + trace.getKey() + " not found");
+				continue;
+			}
+			List<SpanRecord> corrected = new ArrayList<>(trace.getValue().size());
+			for (SpanRecord span : trace.getValue()) {
+				corrected.add(span.shift(offsets[span.host]));
+			}
+			TracesCommand.printTrace(trace.getKey(), new TraceTree(corrected), hosts, out);
+		}
+	}
+
+	/**
+	 * Adds the spans whose parent was recorded by another process to the clock offset estimates.
+	 *
+	 * @return true if there were any.
+	 */
+	private static boolean addClockPairs(List<SpanRecord> spans, ClockOffsets clocks) {
+		Map<String, SpanRecord> bySpanId = new HashMap<>();
+		Set<Integer> hosts = new HashSet<>();
+		for (SpanRecord span : spans) {
+			bySpanId.putIfAbsent(span.spanId, span);
+			hosts.add(span.host);
+		}
+		if (hosts.size() < 2) {
+			return false;
+		}
+		for (SpanRecord span : spans) {
+			SpanRecord parent = span.parentId == null ? null : bySpanId.get(span.parentId);
+			if (parent != null) {
+				clocks.add(parent, span);
+			}
+		}
+		return true;
+	}
+
+	private static long longestSpan(List<SpanRecord> spans) {
+		long longest = 0;
+		for (SpanRecord span : spans) {
+			longest = Math.max(longest, span.duration);
+		}
+		return longest;
+	}
+
+	/**
+	 * @return the file names of the recordings, or their paths if the file names are not unique.
+	 */
+	private static List<String> hostNames(List<Path> files) {
+		Set<String> names = new HashSet<>();
+		for (Path file : files) {
+			names.add(String.valueOf(file.getFileName()));
+		}
+		List<String> hosts = new ArrayList<>();
+		for (Path file : files) {
+			hosts.add(names.size() == files.size() ? String.valueOf(file.getFileName()) : file.toString());
+		}
+		return hosts;
+	}
+}
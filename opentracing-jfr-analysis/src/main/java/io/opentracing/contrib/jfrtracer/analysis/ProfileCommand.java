@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes flame graphs, in the collapsed stack format, of the execution samples taken while scopes
+ * were active: one per operation, and one per trace for the traces asked for, or by default for
+ * the traces with the most samples.
+ * <p>
+ * Each recording is read twice: first to index the scopes of every thread, then to attribute the
+ * execution samples to the innermost scope active on the sampled thread. When the traces with the
+ * most samples are wanted, the samples are read a third time to build their flame graphs. The
+ * recordings are joined separately, since thread ids are only unique within a JVM.
+ */
+final class ProfileCommand {
+	static final String USAGE = "profile --output <dir> [--trace ID]... [--traces N] [--threads N] <recording.jfr>...";
+
+	private ProfileCommand() {
+	}
+
+	static void run(Arguments arguments, PrintStream out) throws IOException {
+		arguments.checkOptions("output", "trace", "traces", "threads");
+		String output = arguments.option("output", null);
+		if (output == null) {
+			throw new IllegalArgumentException("Missing --output");
+		}
+		int topTraces = arguments.intOption("traces", 10);
+		Set<String> traceIds = new LinkedHashSet<>(arguments.options("trace"));
+		RecordingChunks reader = new RecordingChunks(
+				arguments.intOption("threads", Runtime.getRuntime().availableProcessors()));
+		List<Path> files = arguments.files();
+
+		List<List<RecordingChunks.Chunk>> chunks = new ArrayList<>();
+		List<ScopeIndex> indexes = new ArrayList<>();
+		ProfileReport report = null;
+		for (Path file : files) {
+			List<RecordingChunks.Chunk> fileChunks = RecordingChunks.chunks(file);
+			ScopeIndex index = ScopeIndex.read(reader, fileChunks);
+			ProfileReport fileReport = profile(reader, fileChunks, index, traceIds.isEmpty() ? null : traceIds);
+			report = report == null ? fileReport : report.merge(fileReport);
+			chunks.add(fileChunks);
+			indexes.add(index);
+		}
+
+		Map<String, CollapsedStacks> traces = report.traces();
+		if (traceIds.isEmpty()) {
+			traceIds.addAll(mostSampled(report.traceSamples(), topTraces));
+			for (int i = 0; i < files.size(); i++) {
+				ProfileReport fileReport = profile(reader, chunks.get(i), indexes.get(i), traceIds);
+				fileReport.traces().forEach((traceId, stacks) -> traces.merge(traceId, stacks, CollapsedStacks::merge));
+			}
+		}
+
+		Path directory = Paths.get(output);
+		long attributed = 0;
+		for (CollapsedStacks stacks : report.operations().values()) {
+			attributed += stacks.total();
+		}
+		out.println(report.samples() + " execution samples, " + attributed + " taken in scopes");
+		out.println();
+		out.println("Operation flame graphs:");
+		write(directory.resolve("operations"), new TreeMap<>(report.operations()), out);
+		out.println();
+		out.println("Trace flame graphs:");
+		Map<String, CollapsedStacks> selected = new LinkedHashMap<>();
+		for (String traceId : traceIds) {
+			CollapsedStacks stacks = traces.get(traceId);
+			if (stacks == null) {
+				out.println("  No samples in trace " + traceId);
+			} else {
+				selected.put(traceId, stacks);
+			}
+		}
+		write(directory.resolve("traces"), selected, out);
+	}
+
+	private static ProfileReport profile(RecordingChunks reader, List<RecordingChunks.Chunk> chunks, ScopeIndex index,
+			Set<String> selected) throws IOException {
+		return reader.process(chunks, chunk -> new ProfileReport(index, selected), ProfileReport::accept,
+				ProfileReport::merge);
+	}
+
+	private static List<String> mostSampled(Map<String, Long> traceSamples, int count) {
+		List<Map.Entry<String, Long>> entries = new ArrayList<>(traceSamples.entrySet());
+		entries.sort(Map.Entry.<String, Long> comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+		List<String> traceIds = new ArrayList<>();
+		for (int i = 0; i < Math.min(count, entries.size()); i++) {
+			traceIds.add(entries.get(i).getKey());
+		}
+		return traceIds;
+	}
+
+	private static void write(Path directory, Map<String, CollapsedStacks> stacks, PrintStream out)
+			throws IOException {
+		if (stacks.isEmpty()) {
+			return;
+		}
+		Files.createDirectories(directory);
+		Set<String> fileNames = new HashSet<>();
+		for (Map.Entry<String, CollapsedStacks> entry : stacks.entrySet()) {
+			Path file = directory.resolve(fileName(entry.getKey(), fileNames));
+			entry.getValue().write(file);
+			out.println(String.format("  %8d samples  %s  %s", entry.getValue().total(), entry.getKey(), file));
+		}
+	}
+
+	/**
+	 * @return a file name for an operation name or trace id, unique among the names given.
+	 */
+	private static String fileName(String name, Set<String> fileNames) {
+		String base = name.replaceAll("[^A-Za-z0-9._-]", "_");
+		if (base.isEmpty() || base.startsWith(".")) {
+			base = "_" + base;
+		}
+		String fileName = base + ".collapsed";
+		for (int i = 2; !fileNames.add(fileName); i++) {
+			fileName = base + "-" + i + ".collapsed";
+		}
+		return fileName;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+/**
+ * Attributes the execution samples of a chunk to the scopes active on the sampled threads, and
+ * folds them into collapsed stacks per operation, and per selected trace.
+ */
+final class ProfileReport {
+	static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+
+	private final ScopeIndex index;
+	private final Set<String> selected;
+	private final Map<String, CollapsedStacks> operations = new HashMap<>();
+	private final Map<String, CollapsedStacks> traces = new HashMap<>();
+	private final Map<String, Long> traceSamples = new HashMap<>();
+	private long samples;
+
+	/**
+	 * @param index
+	 *            the scopes of the recording the chunk belongs to.
+	 * @param selected
+	 *            the ids of the traces to build collapsed stacks for, or null for none.
+	 */
+	ProfileReport(ScopeIndex index, Set<String> selected) {
+		this.index = index;
+		this.selected = selected;
+	}
+
+	void accept(RecordedEvent event) {
+		if (!EXECUTION_SAMPLE.equals(event.getEventType().getName())) {
+			return;
+		}
+		samples++;
+		ScopeInterval scope = index.find(event.getThread("sampledThread"), SpanRecord.epochNanos(event.getStartTime()));
+		if (scope == null) {
+			return;
+		}
+		operations.computeIfAbsent(String.valueOf(scope.operationName), op -> new CollapsedStacks())
+				.add(CollapsedStacks.collapse(event.getStackTrace(), null), 1);
+		if (scope.traceId != null) {
+			traceSamples.merge(scope.traceId, 1L, Long::sum);
+			if (selected != null && selected.contains(scope.traceId)) {
+				// Operations of the trace become the roots of its flame graph
+				traces.computeIfAbsent(scope.traceId, id -> new CollapsedStacks())
+						.add(CollapsedStacks.collapse(event.getStackTrace(), String.valueOf(scope.operationName)), 1);
+			}
+		}
+	}
+
+	ProfileReport merge(ProfileReport other) {
+		other.operations.forEach((op, stacks) -> operations.merge(op, stacks, CollapsedStacks::merge));
+		other.traces.forEach((traceId, stacks) -> traces.merge(traceId, stacks, CollapsedStacks::merge));
+		other.traceSamples.forEach((traceId, count) -> traceSamples.merge(traceId, count, Long::sum));
+		samples += other.samples;
+		return this;
+	}
+
+	/**
+	 * @return the number of execution samples, attributed or not.
+	 */
+	long samples() {
+		return samples;
+	}
+
+	/**
+	 * @return the collapsed stacks of the samples taken in scopes, by operation name.
+	 */
+	Map<String, CollapsedStacks> operations() {
+		return operations;
+	}
+
+	/**
+	 * @return the collapsed stacks of the selected traces, by trace id.
+	 */
+	Map<String, CollapsedStacks> traces() {
+		return traces;
+	}
+
+	/**
+	 * @return the number of samples of every trace.
+	 */
+	Map<String, Long> traceSamples() {
+		return traceSamples;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Looks up traces in indexed recordings, reading only the chunks with spans of the traces, and
+ * prints their timelines. Without trace ids, prints the span durations of every operation, from
+ * the indexes alone. The recordings are queried one at a time, and only the header of the index of
+ * one recording is in memory at any time.
+ */
+final class QueryCommand {
+	static final String USAGE = "query [--trace ID]... [--threads N] <recording.jfr | directory>...";
+
+	private QueryCommand() {
+	}
+
+	static void run(Arguments arguments, PrintStream out) throws IOException {
+		arguments.checkOptions("trace", "threads");
+		Set<String> traceIds = new LinkedHashSet<>(arguments.options("trace"));
+		RecordingChunks reader = new RecordingChunks(
+				arguments.intOption("threads", Runtime.getRuntime().availableProcessors()));
+		List<Path> recordings = arguments.recordings();
+		if (traceIds.isEmpty()) {
+			printOperations(recordings, out);
+			return;
+		}
+
+		Map<String, List<SpanRecord>> traces = new TreeMap<>();
+		int chunksRead = 0;
+		int chunkCount = 0;
+		int recordingsRead = 0;
+		for (int host = 0; host < recordings.size(); host++) {
+			Set<Integer> wanted = new LinkedHashSet<>();
+			List<RecordingChunks.Chunk> chunks = new ArrayList<>();
+			try (TraceIndex index = open(recordings.get(host), out)) {
+				if (index == null) {
+					continue;
+				}
+				chunkCount += index.chunks().size();
+				for (String traceId : traceIds) {
+					TraceIndex.TraceEntry trace = index.find(traceId);
+					if (trace != null) {
+						for (RecordingChunks.Chunk chunk : index.chunks(recordings.get(host), trace)) {
+							if (wanted.add(chunk.index)) {
+								chunks.add(chunk);
+							}
+						}
+					}
+				}
+			}
+			if (chunks.isEmpty()) {
+				continue;
+			}
+			int recordingHost = host;
+			TraceReport report = reader.process(chunks, chunk -> new TraceReport(0, traceIds, false, recordingHost),
+					TraceReport::accept, TraceReport::merge);
+			report.traces().forEach((traceId, spans) -> traces.computeIfAbsent(traceId, id -> new ArrayList<>())
+					.addAll(spans));
+			chunksRead += chunks.size();
+			recordingsRead++;
+		}
+
+		out.println("Read " + chunksRead + " of " + chunkCount + " chunks, in " + recordingsRead + " of "
+				+ recordings.size() + " recordings");
+		List<String> hosts = null;
+		if (recordings.size() > 1) {
+			hosts = new ArrayList<>();
+			for (Path recording : recordings) {
+				hosts.add(String.valueOf(recording.getFileName()));
+			}
+		}
+		for (String traceId : traceIds) {
+			out.println();
+			List<SpanRecord> spans = traces.get(traceId);
+			if (spans == null) {
+				out.println("Trace " + traceId + " not found");
+			} else {
+				TracesCommand.printTrace(traceId, new TraceTree(spans), hosts, out);
+			}
+		}
+	}
+
+	/**
+	 * @return the open index of a recording, or null if it has no index, or its index is out of
+	 *         date.
+	 */
+	private static TraceIndex open(Path recording, PrintStream out) throws IOException {
+		Path sidecar = TraceIndex.sidecar(recording);
+		if (!Files.exists(sidecar)) {
+			out.println(recording + " is not indexed, skipped");
+			return null;
+		}
+		TraceIndex index = TraceIndex.open(sidecar);
+		if (!index.isCurrent(recording)) {
+			index.close();
+			out.println(recording + " has changed since it was indexed, skipped");
+			return null;
+		}
+		return index;
+	}
+
+	private static void printOperations(List<Path> recordings, PrintStream out) throws IOException {
+		Map<String, TraceIndex.OperationEntry> operations = new TreeMap<>();
+		for (Path recording : recordings) {
+			try (TraceIndex index = open(recording, out)) {
+				if (index == null) {
+					continue;
+				}
+				for (TraceIndex.OperationEntry operation : index.operations()) {
+					operations.computeIfAbsent(operation.name, TraceIndex.OperationEntry::new).add(operation);
+				}
+			}
+		}
+		List<String[]> rows = new ArrayList<>();
+		rows.add(new String[] {"Operation", "Count", "Min ms", "Max ms"});
+		for (TraceIndex.OperationEntry operation : operations.values()) {
+			rows.add(new String[] {operation.name, String.valueOf(operation.count), Format.millis(operation.min),
+					Format.millis(operation.max)});
+		}
+		Format.table(rows, out);
+	}
+}
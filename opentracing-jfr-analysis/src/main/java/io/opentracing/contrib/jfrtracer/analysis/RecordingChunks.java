@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Streams the events of recordings, one chunk at a time and in parallel. A recording file is a
+ * sequence of self-contained chunks, so each chunk can be parsed on its own. Every chunk is folded
+ * into a partial result of its own, and the partial results are then combined, so memory use only
+ * depends on the size of the results, and on the number of chunks parsed at the same time.
+ * <p>
+ * The JFR consumer API only reads files, so the chunks of a file with more than one chunk are
+ * copied to temporary files, one at a time per worker, just before they are parsed.
+ */
+final class RecordingChunks {
+	private static final byte[] MAGIC = {'F', 'L', 'R', 0};
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * A chunk of a recording file.
+	 */
+	static final class Chunk {
+		final Path file;
+		final int index;
+		final long offset;
+		final long size;
+		// True if the chunk is the whole file, and can be parsed in place
+		final boolean whole;
+
+		Chunk(Path file, int index, long offset, long size, boolean whole) {
+			this.file = file;
+			this.index = index;
+			this.offset = offset;
+			this.size = size;
+			this.whole = whole;
+		}
+
+		@Override
+		public String toString() {
+			return file + " chunk " + index;
+		}
+	}
+
+	private final int parallelism;
+
+	/**
+	 * @param parallelism
+	 *            the maximum number of chunks parsed at the same time.
+	 */
+	RecordingChunks(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Lists the chunks of a recording file, from the chunk headers. A chunk still being written has
+	 * no size in its header, and is assumed to last until the end of the file.
+	 *
+	 * @throws IOException
+	 *             if the file could not be read, or is not a recording.
+	 */
+	static List<Chunk> chunks(Path file) throws IOException {
+		List<Chunk> chunks = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			long offset = 0;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (offset + HEADER_SIZE <= fileSize) {
+				header.clear();
+				while (header.hasRemaining() && channel.read(header, offset + header.position()) >= 0) {
+					// Read the whole header
+				}
+				for (int i = 0; i < MAGIC.length; i++) {
+					if (header.get(i) != MAGIC[i]) {
+						throw new IOException(file + " is not a flight recording, no chunk at offset " + offset);
+					}
+				}
+				long size = header.getLong(8);
+				if (size <= 0 || offset + size > fileSize) {
+					size = fileSize - offset;
+				}
+				chunks.add(new Chunk(file, chunks.size(), offset, size, false));
+				offset += size;
+			}
+		}
+		if (chunks.isEmpty()) {
+			throw new IOException(file + " is not a flight recording");
+		}
+		if (chunks.size() == 1) {
+			Chunk only = chunks.get(0);
+			chunks.set(0, new Chunk(file, 0, only.offset, only.size, true));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Lists the chunks of all the files.
+	 */
+	static List<Chunk> chunks(List<Path> files) throws IOException {
+		List<Chunk> chunks = new ArrayList<>();
+		for (Path file : files) {
+			chunks.addAll(chunks(file));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Folds the events of the chunks into a result.
+	 *
+	 * @param chunks
+	 *            the chunks to read.
+	 * @param newResult
+	 *            creates an empty partial result for a chunk.
+	 * @param accumulator
+	 *            adds an event to a partial result. Only ever called by one thread at a time for
+	 *            the same partial result.
+	 * @param combiner
+	 *            combines two partial results, in no particular order.
+	 * @return the combined result of all chunks.
+	 * @throws IOException
+	 *             if a chunk could not be read.
+	 */
+	<R> R process(List<Chunk> chunks, Function<Chunk, R> newResult, BiConsumer<R, RecordedEvent> accumulator,
+			BinaryOperator<R> combiner) throws IOException {
+		if (chunks.isEmpty()) {
+			throw new IllegalArgumentException("No chunks to process");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()), runnable -> {
+			Thread thread = new Thread(runnable, "JFR chunk reader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			CompletionService<R> completed = new ExecutorCompletionService<>(executor);
+			for (Chunk chunk : chunks) {
+				completed.submit(() -> read(chunk, newResult.apply(chunk), accumulator));
+			}
+			// Combine the partial results as soon as they are done, so that they do not pile up
+			R result = null;
+			for (int i = 0; i < chunks.size(); i++) {
+				R partial = completed.take().get();
+				result = result == null ? partial : combiner.apply(result, partial);
+			}
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the recordings", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static <R> R read(Chunk chunk, R result, BiConsumer<R, RecordedEvent> accumulator) throws IOException {
+		Path path = chunk.whole ? chunk.file : copy(chunk);
+		try (RecordingFile recording = new RecordingFile(path)) {
+			while (recording.hasMoreEvents()) {
+				accumulator.accept(result, recording.readEvent());
+			}
+		} catch (IOException e) {
+			throw new IOException("Failed to read " + chunk + ": " + e.getMessage(), e);
+		} finally {
+			if (!chunk.whole) {
+				Files.deleteIfExists(path);
+			}
+		}
+		return result;
+	}
+
+	private static Path copy(Chunk chunk) throws IOException {
+		Path copy = Files.createTempFile("jfr-chunk", ".jfr");
+		try (FileChannel source = FileChannel.open(chunk.file, StandardOpenOption.READ);
+				FileChannel target = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+			long copied = 0;
+			while (copied < chunk.size) {
+				copied += source.transferTo(chunk.offset + copied, chunk.size - copied, target);
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(copy);
+			throw e;
+		}
+		return copy;
+	}
+}
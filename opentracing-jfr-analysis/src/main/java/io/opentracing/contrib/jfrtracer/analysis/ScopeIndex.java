@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+
+/**
+ * Finds the scope active on a thread at a given time, for attributing other events, such as
+ * execution samples, to the spans they happened in.
+ * <p>
+ * The scopes of a thread nest, so the time line of every thread is cut into segments, each with
+ * the innermost scope active during it, or none. Finding the scope at a time is then a binary
+ * search over the segment start times of the thread, regardless of how deeply the scopes nest.
+ */
+final class ScopeIndex {
+	private static final Comparator<ScopeInterval> OUTERMOST_FIRST = Comparator
+			.<ScopeInterval> comparingLong(s -> s.start).thenComparing(Comparator.<ScopeInterval> comparingLong(s -> s.end).reversed());
+
+	/**
+	 * Collects the scope intervals of a chunk, by Java thread id.
+	 */
+	static final class Collector {
+		private final Map<Long, List<ScopeInterval>> byThread = new HashMap<>();
+		// Shares the strings of the many scopes of the same operation or trace
+		private final Map<String, String> strings = new HashMap<>();
+
+		void accept(RecordedEvent event) {
+			if (!SpanRecord.isScope(event)) {
+				return;
+			}
+			long threadId = threadId(event.getThread());
+			if (threadId < 0) {
+				return;
+			}
+			long start = SpanRecord.epochNanos(event.getStartTime());
+			byThread.computeIfAbsent(threadId, id -> new ArrayList<>())
+					.add(new ScopeInterval(start, start + event.getDuration().toNanos(),
+							share(event.getString("operationName")), share(SpanRecord.traceId(event)),
+							SpanRecord.spanId(event)));
+		}
+
+		Collector merge(Collector other) {
+			other.byThread.forEach((threadId, scopes) -> byThread.merge(threadId, scopes, (a, b) -> {
+				a.addAll(b);
+				return a;
+			}));
+			return this;
+		}
+
+		ScopeIndex build() {
+			return of(byThread);
+		}
+
+		private String share(String string) {
+			return string == null ? null : strings.computeIfAbsent(string, s -> s);
+		}
+	}
+
+	private static final class Timeline {
+		private long[] starts;
+		private ScopeInterval[] scopes;
+		private int size;
+
+		Timeline(List<ScopeInterval> intervals) {
+			intervals.sort(OUTERMOST_FIRST);
+			starts = new long[intervals.size() * 2 + 1];
+			scopes = new ScopeInterval[starts.length];
+			Deque<ScopeInterval> active = new ArrayDeque<>();
+			for (ScopeInterval scope : intervals) {
+				closeUntil(active, scope.start);
+				add(scope.start, scope);
+				active.push(scope);
+			}
+			closeUntil(active, Long.MAX_VALUE);
+			starts = Arrays.copyOf(starts, size);
+			scopes = Arrays.copyOf(scopes, size);
+		}
+
+		private void closeUntil(Deque<ScopeInterval> active, long time) {
+			while (!active.isEmpty() && active.peek().end <= time) {
+				ScopeInterval closed = active.pop();
+				add(closed.end, active.peek());
+			}
+		}
+
+		private void add(long start, ScopeInterval scope) {
+			// Scopes that do not nest properly are cut short by the ones following them
+			if (size > 0 && starts[size - 1] >= start) {
+				scopes[size - 1] = scope;
+				return;
+			}
+			starts[size] = start;
+			scopes[size] = scope;
+			size++;
+		}
+
+		void addSelfTimes(Map<String, Long> selfTimes) {
+			for (int i = 0; i < size - 1; i++) {
+				if (scopes[i] != null) {
+					selfTimes.merge(String.valueOf(scopes[i].operationName), starts[i + 1] - starts[i], Long::sum);
+				}
+			}
+		}
+
+		ScopeInterval find(long time) {
+			int index = Arrays.binarySearch(starts, time);
+			if (index < 0) {
+				index = -index - 2;
+			}
+			return index < 0 ? null : scopes[index];
+		}
+	}
+
+	private final Map<Long, Timeline> timelines;
+
+	private ScopeIndex(Map<Long, Timeline> timelines) {
+		this.timelines = timelines;
+	}
+
+	/**
+	 * Reads the scopes of the chunks of a recording, and indexes them.
+	 */
+	static ScopeIndex read(RecordingChunks reader, List<RecordingChunks.Chunk> chunks) throws IOException {
+		return reader.process(chunks, chunk -> new Collector(), Collector::accept, Collector::merge).build();
+	}
+
+	/**
+	 * @param byThread
+	 *            the scopes of every thread, by Java thread id. The lists are sorted in place.
+	 */
+	static ScopeIndex of(Map<Long, List<ScopeInterval>> byThread) {
+		Map<Long, Timeline> timelines = new HashMap<>();
+		byThread.forEach((threadId, scopes) -> timelines.put(threadId, new Timeline(scopes)));
+		return new ScopeIndex(timelines);
+	}
+
+	/**
+	 * @return the innermost scope active on the thread at the time, or null if none was.
+	 */
+	ScopeInterval find(RecordedThread thread, long epochNanos) {
+		return find(threadId(thread), epochNanos);
+	}
+
+	/**
+	 * @return the innermost scope active on the thread with the Java thread id at the time, or
+	 *         null if none was.
+	 */
+	ScopeInterval find(long threadId, long epochNanos) {
+		Timeline timeline = timelines.get(threadId);
+		return timeline == null ? null : timeline.find(epochNanos);
+	}
+
+	/**
+	 * Adds the time every operation was the innermost active scope on a thread, that is the time
+	 * spent in its scopes minus the time spent in nested scopes, to a map by operation name.
+	 */
+	void addSelfTimes(Map<String, Long> selfTimes) {
+		for (Timeline timeline : timelines.values()) {
+			timeline.addSelfTimes(selfTimes);
+		}
+	}
+
+	/**
+	 * @return the number of threads with scopes.
+	 */
+	int threads() {
+		return timelines.size();
+	}
+
+	private static long threadId(RecordedThread thread) {
+		return thread == null ? -1 : thread.getJavaThreadId();
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+/**
+ * The time a scope was active on a thread, and the span it was activated for.
+ */
+final class ScopeInterval {
+	// Nanoseconds since the epoch
+	final long start;
+	final long end;
+	final String operationName;
+	final String traceId;
+	final String spanId;
+
+	ScopeInterval(long start, long end, String operationName, String traceId, String spanId) {
+		this.start = start;
+		this.end = end;
+		this.operationName = operationName;
+		this.traceId = traceId;
+		this.spanId = spanId;
+	}
+}
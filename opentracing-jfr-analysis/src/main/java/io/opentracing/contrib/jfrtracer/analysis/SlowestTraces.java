@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Keeps the ids of the traces with the longest spans, in memory bounded by the number of traces
+ * kept. A trace is ranked by the duration of its longest span, which is usually its root span.
+ */
+final class SlowestTraces {
+	private static final class Entry {
+		final String traceId;
+		final long duration;
+
+		Entry(String traceId, long duration) {
+			this.traceId = traceId;
+			this.duration = duration;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER = Comparator.<Entry> comparingLong(e -> e.duration)
+			.thenComparing(e -> e.traceId);
+
+	private final int limit;
+	private final TreeSet<Entry> ranked = new TreeSet<>(ORDER);
+	private final Map<String, Entry> byTraceId = new HashMap<>();
+
+	/**
+	 * @param limit
+	 *            the number of traces to keep.
+	 */
+	SlowestTraces(int limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * Offers a span of a trace.
+	 */
+	void offer(String traceId, long duration) {
+		if (traceId == null || limit <= 0) {
+			return;
+		}
+		Entry previous = byTraceId.get(traceId);
+		if (previous != null) {
+			if (previous.duration >= duration) {
+				return;
+			}
+			ranked.remove(previous);
+		} else if (ranked.size() >= limit && ranked.first().duration >= duration) {
+			return;
+		}
+		Entry entry = new Entry(traceId, duration);
+		ranked.add(entry);
+		byTraceId.put(traceId, entry);
+		if (ranked.size() > limit) {
+			byTraceId.remove(ranked.pollFirst().traceId);
+		}
+	}
+
+	/**
+	 * Adds the traces of another instance to this one.
+	 *
+	 * @return this instance.
+	 */
+	SlowestTraces merge(SlowestTraces other) {
+		for (Entry entry : other.ranked) {
+			offer(entry.traceId, entry.duration);
+		}
+		return this;
+	}
+
+	/**
+	 * @return the trace ids, the slowest trace first.
+	 */
+	List<String> traceIds() {
+		List<String> traceIds = new ArrayList<>(ranked.size());
+		for (Entry entry : ranked.descendingSet()) {
+			traceIds.add(entry.traceId);
+		}
+		return traceIds;
+	}
+}
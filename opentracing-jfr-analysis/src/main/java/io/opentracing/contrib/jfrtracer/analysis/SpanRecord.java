@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.time.Instant;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+
+/**
+ * The parts of a span or scope event needed by the analyses, small enough to keep many of them in
+ * memory. Ids recorded in binary form are formatted as hexadecimal strings, the way most tracers
+ * format them.
+ */
+final class SpanRecord {
+	static final String SPAN_EVENT = "io.opentracing.Span";
+	static final String SCOPE_EVENT = "io.opentracing.Scope";
+
+	final String traceId;
+	final String spanId;
+	final String parentId;
+	final String operationName;
+	// Nanoseconds since the epoch
+	final long start;
+	final long duration;
+	final String thread;
+	// The recording the span was read from, when joining the spans of several processes
+	final int host;
+
+	SpanRecord(String traceId, String spanId, String parentId, String operationName, long start, long duration,
+			String thread, int host) {
+		this.traceId = traceId;
+		this.spanId = spanId;
+		this.parentId = parentId;
+		this.operationName = operationName;
+		this.start = start;
+		this.duration = duration;
+		this.thread = thread;
+		this.host = host;
+	}
+
+	/**
+	 * @return true if the event is a span event.
+	 */
+	static boolean isSpan(RecordedEvent event) {
+		return SPAN_EVENT.equals(event.getEventType().getName());
+	}
+
+	/**
+	 * @return true if the event is a scope event.
+	 */
+	static boolean isScope(RecordedEvent event) {
+		return SCOPE_EVENT.equals(event.getEventType().getName());
+	}
+
+	/**
+	 * @param event
+	 *            a span or scope event.
+	 * @return the record of the event. The thread is the start thread of a span, and the thread
+	 *         of a scope.
+	 */
+	static SpanRecord of(RecordedEvent event) {
+		return of(event, 0);
+	}
+
+	/**
+	 * @param host
+	 *            the index of the recording the event was read from.
+	 * @return the record of the event.
+	 */
+	static SpanRecord of(RecordedEvent event, int host) {
+		String thread = threadName(event.hasField("startThread") ? event.getThread("startThread") : event.getThread());
+		return new SpanRecord(traceId(event), spanId(event), parentId(event),
+				event.getString("operationName"), epochNanos(event.getStartTime()), event.getDuration().toNanos(), thread,
+				host);
+	}
+
+	/**
+	 * @return the trace id of a span or scope event.
+	 */
+	static String traceId(RecordedEvent event) {
+		String traceId = event.getString("traceId");
+		if (traceId != null || !event.hasField("binaryTraceIdLow")) {
+			return traceId;
+		}
+		long high = event.getLong("binaryTraceIdHigh");
+		long low = event.getLong("binaryTraceIdLow");
+		if (high == 0) {
+			return Long.toHexString(low);
+		}
+		return Long.toHexString(high) + String.format("%016x", low);
+	}
+
+	/**
+	 * @return the span id of a span or scope event.
+	 */
+	static String spanId(RecordedEvent event) {
+		return id(event, "spanId", "binarySpanId");
+	}
+
+	/**
+	 * @return the end of the span, in nanoseconds since the epoch.
+	 */
+	long end() {
+		return start + duration;
+	}
+
+	/**
+	 * @return a copy of the record with the start time moved by the offset.
+	 */
+	SpanRecord shift(long offset) {
+		return offset == 0 ? this
+				: new SpanRecord(traceId, spanId, parentId, operationName, start + offset, duration, thread, host);
+	}
+
+	static long epochNanos(Instant instant) {
+		return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+	}
+
+	private static String parentId(RecordedEvent event) {
+		String parentId = id(event, "parentId", "binaryParentId");
+		// Binary ids use 0 for no parent
+		return "0".equals(parentId) || "".equals(parentId) ? null : parentId;
+	}
+
+	private static String id(RecordedEvent event, String field, String binaryField) {
+		String id = event.getString(field);
+		if (id != null || !event.hasField(binaryField)) {
+			return id;
+		}
+		return Long.toHexString(event.getLong(binaryField));
+	}
+
+	private static String threadName(RecordedThread thread) {
+		return thread == null ? null : thread.getJavaName();
+	}
+}
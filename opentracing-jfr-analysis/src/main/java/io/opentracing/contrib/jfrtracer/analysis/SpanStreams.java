@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Reads the span events of several recordings at the same time, one thread per recording, and
+ * merges them into one stream ordered by end time, which is the order the tracer emits them in.
+ * The recordings are only read as fast as the merged stream is consumed, so the memory used does
+ * not depend on their size.
+ * <p>
+ * The events in a recording are only roughly ordered, so the merged stream is too.
+ */
+final class SpanStreams implements AutoCloseable {
+	private static final int QUEUE_SIZE = 4096;
+	private static final Object END = new Object();
+
+	private static final class Stream implements Runnable {
+		private final Path file;
+		private final int host;
+		private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+		private final Thread thread;
+
+		Stream(Path file, int host) {
+			this.file = file;
+			this.host = host;
+			thread = new Thread(this, "JFR reader " + file.getFileName());
+			thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try (RecordingFile recording = new RecordingFile(file)) {
+				while (recording.hasMoreEvents()) {
+					RecordedEvent event = recording.readEvent();
+					if (SpanRecord.isSpan(event)) {
+						queue.put(SpanRecord.of(event, host));
+					}
+				}
+				queue.put(END);
+			} catch (IOException e) {
+				put(new IOException("Failed to read " + file + ": " + e.getMessage(), e));
+			} catch (InterruptedException e) {
+				// Closed
+			} catch (RuntimeException e) {
+				put(e);
+			}
+		}
+
+		private void put(Object failure) {
+			try {
+				queue.put(failure);
+			} catch (InterruptedException e) {
+				// Closed
+			}
+		}
+
+		SpanRecord next() throws IOException {
+			Object next;
+			try {
+				next = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading " + file, e);
+			}
+			if (next instanceof IOException) {
+				throw (IOException) next;
+			}
+			if (next instanceof RuntimeException) {
+				throw (RuntimeException) next;
+			}
+			return next == END ? null : (SpanRecord) next;
+		}
+	}
+
+	private final List<Stream> streams = new ArrayList<>();
+	private final SpanRecord[] heads;
+	private boolean started;
+
+	/**
+	 * @param files
+	 *            the recordings. The host of every span is the index of its recording.
+	 */
+	SpanStreams(List<Path> files) {
+		for (Path file : files) {
+			streams.add(new Stream(file, streams.size()));
+		}
+		heads = new SpanRecord[streams.size()];
+	}
+
+	/**
+	 * @return the span with the earliest end time among the next spans of every recording, or
+	 *         null when all recordings have been read.
+	 * @throws IOException
+	 *             if a recording could not be read.
+	 */
+	SpanRecord next() throws IOException {
+		if (!started) {
+			started = true;
+			for (Stream stream : streams) {
+				stream.thread.start();
+			}
+			for (int i = 0; i < heads.length; i++) {
+				heads[i] = streams.get(i).next();
+			}
+		}
+		int earliest = -1;
+		for (int i = 0; i < heads.length; i++) {
+			if (heads[i] != null && (earliest < 0 || heads[i].end() < heads[earliest].end())) {
+				earliest = i;
+			}
+		}
+		if (earliest < 0) {
+			return null;
+		}
+		SpanRecord next = heads[earliest];
+		heads[earliest] = streams.get(earliest).next();
+		return next;
+	}
+
+	@Override
+	public void close() {
+		for (Stream stream : streams) {
+			stream.thread.interrupt();
+		}
+	}
+}
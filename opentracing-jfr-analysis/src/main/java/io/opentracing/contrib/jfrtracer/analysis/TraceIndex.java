@@ -0,0 +1,418 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+/**
+ * An index of the span events of a recording, kept in a sidecar file next to it. It holds the
+ * chunks of the recording, the chunks every trace has spans in, along with the time range of the
+ * trace, and the number of spans and their shortest and longest duration for every operation. A
+ * trace can then be looked up by only reading the chunks it has spans in.
+ * <p>
+ * The file is not compressed, so that it can be searched in place: a header with the chunks and the
+ * operations is followed by a table of fixed size slots, holding the hash of a trace id and the
+ * position of its entry, sorted by hash. An open index only keeps the header in memory, and finds a
+ * trace with a binary search of the table in the file.
+ */
+final class TraceIndex implements Closeable {
+	static final String SUFFIX = ".idx";
+
+	private static final int MAGIC = 0x4a465249;
+	private static final int VERSION = 2;
+	private static final int SLOT_SIZE = 16;
+
+	/**
+	 * A chunk of the recording, and the time range of its spans.
+	 */
+	static final class ChunkEntry {
+		final long offset;
+		final long size;
+		final long start;
+		final long end;
+
+		ChunkEntry(long offset, long size, long start, long end) {
+			this.offset = offset;
+			this.size = size;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * The span durations of an operation.
+	 */
+	static final class OperationEntry {
+		final String name;
+		long count;
+		long min = Long.MAX_VALUE;
+		long max;
+
+		OperationEntry(String name) {
+			this.name = name;
+		}
+
+		void add(long duration) {
+			count++;
+			min = Math.min(min, duration);
+			max = Math.max(max, duration);
+		}
+
+		void add(OperationEntry other) {
+			count += other.count;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+	}
+
+	/**
+	 * The time range of a trace, and the chunks with its spans.
+	 */
+	static final class TraceEntry {
+		final String traceId;
+		long start = Long.MAX_VALUE;
+		long end = Long.MIN_VALUE;
+		final BitSet chunks;
+
+		TraceEntry(String traceId, BitSet chunks) {
+			this.traceId = traceId;
+			this.chunks = chunks;
+		}
+
+		void add(long spanStart, long spanEnd) {
+			start = Math.min(start, spanStart);
+			end = Math.max(end, spanEnd);
+		}
+	}
+
+	/**
+	 * Indexes the span events of one chunk. The indexes of all chunks are then merged.
+	 */
+	static final class Builder {
+		private final Map<Integer, long[]> chunkRanges = new HashMap<>();
+		private final Map<String, OperationEntry> operations = new HashMap<>();
+		private final Map<String, TraceEntry> traces = new HashMap<>();
+		private final int chunk;
+
+		Builder(int chunk) {
+			this.chunk = chunk;
+		}
+
+		void accept(RecordedEvent event) {
+			if (!SpanRecord.isSpan(event)) {
+				return;
+			}
+			long start = SpanRecord.epochNanos(event.getStartTime());
+			long duration = event.getDuration().toNanos();
+			long[] range = chunkRanges.computeIfAbsent(chunk, index -> new long[] {Long.MAX_VALUE, Long.MIN_VALUE});
+			range[0] = Math.min(range[0], start);
+			range[1] = Math.max(range[1], start + duration);
+			operations.computeIfAbsent(String.valueOf(event.getString("operationName")), OperationEntry::new)
+					.add(duration);
+			String traceId = SpanRecord.traceId(event);
+			if (traceId != null) {
+				traces.computeIfAbsent(traceId, id -> {
+					BitSet chunks = new BitSet();
+					chunks.set(chunk);
+					return new TraceEntry(id, chunks);
+				}).add(start, start + duration);
+			}
+		}
+
+		Builder merge(Builder other) {
+			chunkRanges.putAll(other.chunkRanges);
+			other.operations.forEach((name, operation) -> operations.merge(name, operation, (a, b) -> {
+				a.add(b);
+				return a;
+			}));
+			other.traces.forEach((traceId, trace) -> traces.merge(traceId, trace, (a, b) -> {
+				a.add(b.start, b.end);
+				a.chunks.or(b.chunks);
+				return a;
+			}));
+			return this;
+		}
+
+		/**
+		 * Writes the index, replacing the previous one only once it is complete.
+		 */
+		void write(Path recording, List<RecordingChunks.Chunk> recordingChunks, Path file) throws IOException {
+			TraceEntry[] sortedTraces = traces.values().toArray(new TraceEntry[0]);
+			Arrays.sort(sortedTraces, BY_HASH);
+			// The entries are written after the table, which needs their positions
+			ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+			DataOutputStream entries = new DataOutputStream(entryBytes);
+			long[] entryOffsets = new long[sortedTraces.length];
+			for (int i = 0; i < sortedTraces.length; i++) {
+				TraceEntry trace = sortedTraces[i];
+				entryOffsets[i] = entries.size();
+				entries.writeUTF(trace.traceId);
+				entries.writeLong(trace.start);
+				entries.writeLong(trace.end);
+				byte[] chunkSet = trace.chunks.toByteArray();
+				entries.writeShort(chunkSet.length);
+				entries.write(chunkSet);
+			}
+
+			Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(Files.size(recording));
+				out.writeLong(Files.getLastModifiedTime(recording).toMillis());
+				out.writeInt(recordingChunks.size());
+				for (RecordingChunks.Chunk chunk : recordingChunks) {
+					long[] range = chunkRanges.getOrDefault(chunk.index, new long[2]);
+					out.writeLong(chunk.offset);
+					out.writeLong(chunk.size);
+					out.writeLong(range[0]);
+					out.writeLong(range[1]);
+				}
+				out.writeInt(operations.size());
+				for (OperationEntry operation : new TreeMap<>(operations).values()) {
+					out.writeUTF(operation.name);
+					out.writeLong(operation.count);
+					out.writeLong(operation.min);
+					out.writeLong(operation.max);
+				}
+				out.writeInt(sortedTraces.length);
+				long tableOffset = out.size() + Long.BYTES;
+				out.writeLong(tableOffset);
+				long entriesOffset = tableOffset + (long) SLOT_SIZE * sortedTraces.length;
+				for (int i = 0; i < sortedTraces.length; i++) {
+					out.writeLong(hash(sortedTraces[i].traceId));
+					out.writeLong(entriesOffset + entryOffsets[i]);
+				}
+				entryBytes.writeTo(out);
+			} catch (IOException e) {
+				Files.deleteIfExists(temporary);
+				throw e;
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	private static final Comparator<TraceEntry> BY_HASH = Comparator
+			.<TraceEntry> comparingLong(trace -> hash(trace.traceId)).thenComparing(trace -> trace.traceId);
+
+	private final FileChannel file;
+	private final long recordingSize;
+	private final long recordingModified;
+	private final List<ChunkEntry> chunks;
+	private final List<OperationEntry> operations;
+	private final int traceCount;
+	private final long tableOffset;
+	private final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+
+	private TraceIndex(FileChannel file, long recordingSize, long recordingModified, List<ChunkEntry> chunks,
+			List<OperationEntry> operations, int traceCount, long tableOffset) {
+		this.file = file;
+		this.recordingSize = recordingSize;
+		this.recordingModified = recordingModified;
+		this.chunks = chunks;
+		this.operations = operations;
+		this.traceCount = traceCount;
+		this.tableOffset = tableOffset;
+	}
+
+	/**
+	 * Reads a recording, in parallel by chunk, and writes its index.
+	 */
+	static void write(Path recording, RecordingChunks reader, Path file) throws IOException {
+		List<RecordingChunks.Chunk> chunks = RecordingChunks.chunks(recording);
+		reader.process(chunks, chunk -> new Builder(chunk.index), Builder::accept, Builder::merge)
+				.write(recording, chunks, file);
+	}
+
+	/**
+	 * @return the index file of a recording.
+	 */
+	static Path sidecar(Path recording) {
+		return recording.resolveSibling(recording.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * @return true if the index was built from the recording as it is now.
+	 */
+	boolean isCurrent(Path recording) throws IOException {
+		return Files.size(recording) == recordingSize
+				&& Files.getLastModifiedTime(recording).toMillis() == recordingModified;
+	}
+
+	List<ChunkEntry> chunks() {
+		return Collections.unmodifiableList(chunks);
+	}
+
+	/**
+	 * @return the operations, sorted by name.
+	 */
+	List<OperationEntry> operations() {
+		return Collections.unmodifiableList(operations);
+	}
+
+	int traceCount() {
+		return traceCount;
+	}
+
+	/**
+	 * @return the entry of a trace, or null if the recording has no spans of it.
+	 */
+	TraceEntry find(String traceId) throws IOException {
+		long hash = hash(traceId);
+		// The first slot with this hash or a greater one
+		int low = 0;
+		int high = traceCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (readSlot(middle) < hash) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		for (int i = low; i < traceCount && readSlot(i) == hash; i++) {
+			TraceEntry trace = readEntry(slot.getLong(Long.BYTES));
+			if (trace.traceId.equals(traceId)) {
+				return trace;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the chunks of the recording to read to get all the spans of a trace.
+	 */
+	List<RecordingChunks.Chunk> chunks(Path recording, TraceEntry trace) {
+		List<RecordingChunks.Chunk> result = new ArrayList<>();
+		for (int i = trace.chunks.nextSetBit(0); i >= 0; i = trace.chunks.nextSetBit(i + 1)) {
+			ChunkEntry chunk = chunks.get(i);
+			result.add(new RecordingChunks.Chunk(recording, i, chunk.offset, chunk.size, chunks.size() == 1));
+		}
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Opens an index, reading only its header.
+	 *
+	 * @throws IOException
+	 *             if the file could not be read, or is not an index of a known version.
+	 */
+	static TraceIndex open(Path path) throws IOException {
+		FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			// Not closed, as that would close the file
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(path + " is not a trace index, or was written by another version");
+			}
+			long recordingSize = in.readLong();
+			long recordingModified = in.readLong();
+			List<ChunkEntry> chunks = new ArrayList<>();
+			for (int i = in.readInt(); i > 0; i--) {
+				chunks.add(new ChunkEntry(in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+			}
+			List<OperationEntry> operations = new ArrayList<>();
+			for (int i = in.readInt(); i > 0; i--) {
+				OperationEntry operation = new OperationEntry(in.readUTF());
+				operation.count = in.readLong();
+				operation.min = in.readLong();
+				operation.max = in.readLong();
+				operations.add(operation);
+			}
+			int traceCount = in.readInt();
+			long tableOffset = in.readLong();
+			if (tableOffset + (long) SLOT_SIZE * traceCount > file.size()) {
+				throw new IOException(path + " is truncated");
+			}
+			return new TraceIndex(file, recordingSize, recordingModified, chunks, operations, traceCount,
+					tableOffset);
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a slot of the trace table into {@link #slot}.
+	 *
+	 * @return the hash of the trace id in the slot.
+	 */
+	private long readSlot(int index) throws IOException {
+		slot.clear();
+		long position = tableOffset + (long) SLOT_SIZE * index;
+		while (slot.hasRemaining()) {
+			if (file.read(slot, position + slot.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+		return slot.getLong(0);
+	}
+
+	private TraceEntry readEntry(long offset) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(file.position(offset)), 256));
+		String traceId = in.readUTF();
+		long start = in.readLong();
+		long end = in.readLong();
+		byte[] chunkSet = new byte[in.readUnsignedShort()];
+		in.readFully(chunkSet);
+		TraceEntry trace = new TraceEntry(traceId, BitSet.valueOf(chunkSet));
+		trace.add(start, end);
+		return trace;
+	}
+
+	/**
+	 * @return the 64-bit FNV-1a hash of a trace id, which orders the trace table.
+	 */
+	static long hash(String traceId) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < traceId.length(); i++) {
+			hash = (hash ^ traceId.charAt(i)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Groups a stream of spans, ordered by end time, into traces. A trace is considered complete once
+ * the stream has moved a time window past the end of its last span, so only the traces still in
+ * flight are kept in memory. The window must be longer than the longest trace, plus the clock
+ * offsets between the hosts, or the trace is split in several parts.
+ */
+final class TraceMerger {
+	private static final class InFlight {
+		final String traceId;
+		final List<SpanRecord> spans = new ArrayList<>();
+		long lastEnd;
+
+		InFlight(String traceId) {
+			this.traceId = traceId;
+		}
+	}
+
+	private static final class Deadline {
+		final long time;
+		final InFlight trace;
+
+		Deadline(long time, InFlight trace) {
+			this.time = time;
+			this.trace = trace;
+		}
+	}
+
+	private final long windowNanos;
+	private final Consumer<List<SpanRecord>> completed;
+	private final Map<String, InFlight> inFlight = new HashMap<>();
+	// Holds outdated deadlines too, which are skipped when their trace has seen later spans
+	private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>((a, b) -> Long.compare(a.time, b.time));
+	private int maxInFlight;
+
+	/**
+	 * @param windowNanos
+	 *            the time after the end of its last span a trace is considered complete.
+	 * @param completed
+	 *            receives the spans of every completed trace.
+	 */
+	TraceMerger(long windowNanos, Consumer<List<SpanRecord>> completed) {
+		this.windowNanos = windowNanos;
+		this.completed = completed;
+	}
+
+	void add(SpanRecord span) {
+		complete(span.end() - windowNanos);
+		if (span.traceId == null) {
+			return;
+		}
+		InFlight trace = inFlight.get(span.traceId);
+		if (trace == null) {
+			trace = new InFlight(span.traceId);
+			inFlight.put(span.traceId, trace);
+			maxInFlight = Math.max(maxInFlight, inFlight.size());
+		}
+		trace.spans.add(span);
+		if (span.end() > trace.lastEnd || trace.spans.size() == 1) {
+			trace.lastEnd = span.end();
+			deadlines.add(new Deadline(trace.lastEnd, trace));
+		}
+	}
+
+	/**
+	 * Completes all traces still in flight.
+	 */
+	void finish() {
+		complete(Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return the largest number of traces that were in flight at the same time.
+	 */
+	int maxInFlight() {
+		return maxInFlight;
+	}
+
+	private void complete(long before) {
+		while (!deadlines.isEmpty() && deadlines.peek().time <= before) {
+			Deadline deadline = deadlines.poll();
+			InFlight trace = deadline.trace;
+			if (deadline.time == trace.lastEnd && inFlight.get(trace.traceId) == trace) {
+				inFlight.remove(trace.traceId);
+				completed.accept(trace.spans);
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+/**
+ * Accumulates the span events of a recording into per-operation latency histograms, the slowest
+ * traces, and the spans of selected traces. One report is built per chunk, and the reports are
+ * then merged.
+ */
+final class TraceReport {
+	private final Set<String> selected;
+	private final boolean statistics;
+	private final int host;
+	private final Map<String, LatencyHistogram> operations = new HashMap<>();
+	private final SlowestTraces slowest;
+	private final Map<String, List<SpanRecord>> traces = new HashMap<>();
+
+	/**
+	 * @param slowest
+	 *            the number of slowest traces to keep.
+	 * @param selected
+	 *            the ids of the traces to keep the spans of, or null to keep none.
+	 * @param statistics
+	 *            true to build the histograms and the slowest traces.
+	 */
+	TraceReport(int slowest, Set<String> selected, boolean statistics) {
+		this(slowest, selected, statistics, 0);
+	}
+
+	/**
+	 * @param host
+	 *            the index of the recording, for the kept spans.
+	 */
+	TraceReport(int slowest, Set<String> selected, boolean statistics, int host) {
+		this.slowest = new SlowestTraces(statistics ? slowest : 0);
+		this.selected = selected;
+		this.statistics = statistics;
+		this.host = host;
+	}
+
+	void accept(RecordedEvent event) {
+		if (!SpanRecord.isSpan(event)) {
+			return;
+		}
+		String traceId = SpanRecord.traceId(event);
+		if (statistics) {
+			long duration = event.getDuration().toNanos();
+			operations.computeIfAbsent(String.valueOf(event.getString("operationName")), op -> new LatencyHistogram())
+					.record(duration);
+			slowest.offer(traceId, duration);
+		}
+		if (selected != null && selected.contains(traceId)) {
+			traces.computeIfAbsent(traceId, id -> new ArrayList<>()).add(SpanRecord.of(event, host));
+		}
+	}
+
+	TraceReport merge(TraceReport other) {
+		other.operations.forEach((op, histogram) -> operations.merge(op, histogram, LatencyHistogram::merge));
+		slowest.merge(other.slowest);
+		other.traces.forEach((traceId, spans) -> traces.merge(traceId, spans, (a, b) -> {
+			a.addAll(b);
+			return a;
+		}));
+		return this;
+	}
+
+	/**
+	 * @return the latency histograms, by operation name.
+	 */
+	Map<String, LatencyHistogram> operations() {
+		return new TreeMap<>(operations);
+	}
+
+	/**
+	 * @return the ids of the slowest traces, the slowest first.
+	 */
+	List<String> slowestTraceIds() {
+		return slowest.traceIds();
+	}
+
+	/**
+	 * @return the spans of the selected traces that were found, by trace id.
+	 */
+	Map<String, List<SpanRecord>> traces() {
+		return traces;
+	}
+
+	/**
+	 * @return the spans of a selected trace, or null if none were found.
+	 */
+	List<SpanRecord> trace(String traceId) {
+		return traces.get(traceId);
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The spans of a trace, arranged by their parent ids. Spans whose parent was not recorded, e.g.
+ * because it belongs to a process that was not recorded, are treated as roots.
+ */
+final class TraceTree {
+	private static final Comparator<SpanRecord> BY_START = Comparator.<SpanRecord> comparingLong(s -> s.start)
+			.thenComparing(s -> s.spanId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+	/**
+	 * A span and its depth in the tree.
+	 */
+	static final class Node {
+		final SpanRecord span;
+		final int depth;
+
+		Node(SpanRecord span, int depth) {
+			this.span = span;
+			this.depth = depth;
+		}
+	}
+
+	private final List<SpanRecord> spans;
+	private final Map<String, List<SpanRecord>> children = new HashMap<>();
+	private final List<SpanRecord> roots = new ArrayList<>();
+
+	TraceTree(List<SpanRecord> spans) {
+		this.spans = new ArrayList<>(spans);
+		this.spans.sort(BY_START);
+		Set<String> spanIds = new HashSet<>();
+		for (SpanRecord span : this.spans) {
+			spanIds.add(span.spanId);
+		}
+		for (SpanRecord span : this.spans) {
+			if (span.parentId == null || span.parentId.equals(span.spanId) || !spanIds.contains(span.parentId)) {
+				roots.add(span);
+			} else {
+				children.computeIfAbsent(span.parentId, id -> new ArrayList<>()).add(span);
+			}
+		}
+	}
+
+	/**
+	 * @return the start of the earliest span, in nanoseconds since the epoch.
+	 */
+	long start() {
+		return spans.isEmpty() ? 0 : spans.get(0).start;
+	}
+
+	/**
+	 * @return the time from the start of the earliest span to the end of the latest.
+	 */
+	long duration() {
+		long end = Long.MIN_VALUE;
+		for (SpanRecord span : spans) {
+			end = Math.max(end, span.end());
+		}
+		return spans.isEmpty() ? 0 : end - start();
+	}
+
+	int size() {
+		return spans.size();
+	}
+
+	/**
+	 * @return the spans depth first, the children of a span ordered by start time. Every span is
+	 *         visited once, even if the parent ids form a cycle.
+	 */
+	List<Node> depthFirst() {
+		List<Node> nodes = new ArrayList<>(spans.size());
+		Set<SpanRecord> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		visit(roots, nodes, visited);
+		if (nodes.size() < spans.size()) {
+			// Only spans in a cycle remain, so start from the earliest of them
+			List<SpanRecord> remaining = new ArrayList<>();
+			for (SpanRecord span : spans) {
+				if (!visited.contains(span)) {
+					remaining.add(span);
+				}
+			}
+			visit(remaining, nodes, visited);
+		}
+		return nodes;
+	}
+
+	private void visit(List<SpanRecord> from, List<Node> nodes, Set<SpanRecord> visited) {
+		Deque<Node> stack = new ArrayDeque<>();
+		for (int i = from.size() - 1; i >= 0; i--) {
+			stack.push(new Node(from.get(i), 0));
+		}
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			if (!visited.add(node.span)) {
+				continue;
+			}
+			nodes.add(node);
+			List<SpanRecord> spanChildren = children.getOrDefault(node.span.spanId, Collections.emptyList());
+			for (int i = spanChildren.size() - 1; i >= 0; i--) {
+				stack.push(new Node(spanChildren.get(i), node.depth + 1));
+			}
+		}
+	}
+}
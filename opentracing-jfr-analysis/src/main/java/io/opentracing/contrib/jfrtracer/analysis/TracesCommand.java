@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prints the latency percentiles of every operation, and the timelines of the slowest traces, or
+ * of the traces asked for. The recordings are streamed twice if the slowest traces are wanted:
+ * first to find them, then to collect their spans, so only the spans of the printed traces are
+ * ever kept in memory.
+ */
+final class TracesCommand {
+	static final String USAGE = "traces [--slowest N] [--trace ID]... [--threads N] <recording.jfr>...";
+
+	private TracesCommand() {
+	}
+
+	static void run(Arguments arguments, PrintStream out) throws IOException {
+		arguments.checkOptions("slowest", "trace", "threads");
+		int slowest = arguments.intOption("slowest", 10);
+		Set<String> traceIds = new LinkedHashSet<>(arguments.options("trace"));
+		RecordingChunks reader = new RecordingChunks(
+				arguments.intOption("threads", Runtime.getRuntime().availableProcessors()));
+		List<RecordingChunks.Chunk> chunks = RecordingChunks.chunks(arguments.files());
+
+		TraceReport report;
+		if (traceIds.isEmpty()) {
+			report = read(reader, chunks, slowest, null, true);
+			traceIds.addAll(report.slowestTraceIds());
+			TraceReport spans = read(reader, chunks, 0, traceIds, false);
+			report.merge(spans);
+		} else {
+			report = read(reader, chunks, 0, traceIds, true);
+		}
+
+		printOperations(report.operations(), out);
+		for (String traceId : traceIds) {
+			out.println();
+			List<SpanRecord> spans = report.trace(traceId);
+			if (spans == null) {
+				out.println("Trace " + traceId + " not found");
+			} else {
+				printTrace(traceId, new TraceTree(spans), null, out);
+			}
+		}
+	}
+
+	private static TraceReport read(RecordingChunks reader, List<RecordingChunks.Chunk> chunks, int slowest,
+			Set<String> selected, boolean statistics) throws IOException {
+		return reader.process(chunks, chunk -> new TraceReport(slowest, selected, statistics), TraceReport::accept,
+				TraceReport::merge);
+	}
+
+	static void printOperations(Map<String, LatencyHistogram> operations, PrintStream out) {
+		List<String[]> rows = new ArrayList<>();
+		rows.add(new String[] {"Operation", "Count", "p50 ms", "p90 ms", "p99 ms", "Max ms"});
+		operations.forEach((op, histogram) -> rows.add(new String[] {op, String.valueOf(histogram.count()),
+				Format.millis(histogram.percentile(50)), Format.millis(histogram.percentile(90)),
+				Format.millis(histogram.percentile(99)), Format.millis(histogram.max())}));
+		Format.table(rows, out);
+	}
+
+	/**
+	 * @param hosts
+	 *            the names of the hosts, by the host index of the spans, to print next to the
+	 *            threads of spans from several processes, or null.
+	 */
+	static void printTrace(String traceId, TraceTree tree, List<String> hosts, PrintStream out) {
+		out.println("Trace " + traceId + ": " + tree.size() + " spans, " + Format.millis(tree.duration()) + " ms");
+		long start = tree.start();
+		for (TraceTree.Node node : tree.depthFirst()) {
+			SpanRecord span = node.span;
+			StringBuilder line = new StringBuilder();
+			line.append(String.format("%12s ms %12s ms  ", "+" + Format.millis(span.start - start),
+					Format.millis(span.duration)));
+			for (int i = 0; i < node.depth; i++) {
+				line.append("  ");
+			}
+			line.append(span.operationName);
+			if (hosts != null) {
+				line.append(" [").append(hosts.get(span.host)).append(span.thread != null ? ", " + span.thread : "")
+						.append(']');
+			} else if (span.thread != null) {
+				line.append(" [").append(span.thread).append(']');
+			}
+			out.println(line);
+		}
+	}
+}
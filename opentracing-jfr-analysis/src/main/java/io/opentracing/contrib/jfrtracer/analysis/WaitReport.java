@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+/**
+ * Attributes the lock, park and blocking I/O events of a chunk to the scopes active on their
+ * threads when they started, and sums their durations per operation.
+ */
+final class WaitReport {
+	/**
+	 * What a thread was waiting for.
+	 */
+	enum Kind {
+		LOCK("Lock"), PARK("Park"), SOCKET("Socket I/O"), FILE("File I/O");
+
+		private final String label;
+
+		Kind(String label) {
+			this.label = label;
+		}
+
+		String getLabel() {
+			return label;
+		}
+
+		/**
+		 * @return the kind of wait of an event, or null if the event is not a wait.
+		 */
+		static Kind of(String eventType) {
+			switch (eventType) {
+			case "jdk.JavaMonitorEnter":
+				return LOCK;
+			case "jdk.ThreadPark":
+				return PARK;
+			case "jdk.SocketRead":
+			case "jdk.SocketWrite":
+				return SOCKET;
+			case "jdk.FileRead":
+			case "jdk.FileWrite":
+				return FILE;
+			default:
+				return null;
+			}
+		}
+	}
+
+	private final ScopeIndex index;
+	private final Map<String, long[]> operations = new HashMap<>();
+	private final long[] unattributed = new long[Kind.values().length];
+
+	WaitReport(ScopeIndex index) {
+		this.index = index;
+	}
+
+	void accept(RecordedEvent event) {
+		Kind kind = Kind.of(event.getEventType().getName());
+		if (kind == null) {
+			return;
+		}
+		long start = SpanRecord.epochNanos(event.getStartTime());
+		long end = start + event.getDuration().toNanos();
+		ScopeInterval scope = index.find(event.getThread(), start);
+		if (scope == null) {
+			unattributed[kind.ordinal()] += end - start;
+			return;
+		}
+		// Only count the part of the wait within the scope
+		operations.computeIfAbsent(String.valueOf(scope.operationName), op -> new long[Kind.values().length])[kind
+				.ordinal()] += Math.min(end, scope.end) - start;
+	}
+
+	WaitReport merge(WaitReport other) {
+		other.operations.forEach((op, times) -> operations.merge(op, times, WaitReport::add));
+		add(unattributed, other.unattributed);
+		return this;
+	}
+
+	/**
+	 * @return the wait times in nanoseconds by operation name, indexed by {@link Kind#ordinal()}.
+	 */
+	Map<String, long[]> operations() {
+		return operations;
+	}
+
+	/**
+	 * @return the wait times in nanoseconds outside of any scope, indexed by {@link Kind#ordinal()}.
+	 */
+	long[] unattributed() {
+		return unattributed;
+	}
+
+	private static long[] add(long[] to, long[] from) {
+		for (int i = 0; i < to.length; i++) {
+			to[i] += from[i];
+		}
+		return to;
+	}
+}
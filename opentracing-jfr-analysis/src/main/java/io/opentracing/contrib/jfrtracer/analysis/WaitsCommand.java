@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Prints how much of the time spent in the scopes of every operation went to waiting for locks,
+ * parking and blocking socket and file I/O. The time of an operation is its self time, i.e. the
+ * time its scopes were active minus the time spent in nested scopes, since waits are attributed to
+ * the innermost scope only.
+ * <p>
+ * Like for the profile command, the scopes of every recording are indexed first, and the wait
+ * events then joined to them.
+ */
+final class WaitsCommand {
+	static final String USAGE = "waits [--threads N] <recording.jfr>...";
+
+	private WaitsCommand() {
+	}
+
+	static void run(Arguments arguments, PrintStream out) throws IOException {
+		arguments.checkOptions("threads");
+		RecordingChunks reader = new RecordingChunks(
+				arguments.intOption("threads", Runtime.getRuntime().availableProcessors()));
+
+		Map<String, Long> selfTimes = new HashMap<>();
+		WaitReport report = null;
+		for (Path file : arguments.files()) {
+			List<RecordingChunks.Chunk> chunks = RecordingChunks.chunks(file);
+			ScopeIndex index = ScopeIndex.read(reader, chunks);
+			index.addSelfTimes(selfTimes);
+			WaitReport fileReport = reader.process(chunks, chunk -> new WaitReport(index), WaitReport::accept,
+					WaitReport::merge);
+			report = report == null ? fileReport : report.merge(fileReport);
+		}
+
+		WaitReport.Kind[] kinds = WaitReport.Kind.values();
+		List<String[]> rows = new ArrayList<>();
+		String[] header = new String[kinds.length + 3];
+		header[0] = "Operation";
+		header[1] = "Self ms";
+		for (WaitReport.Kind kind : kinds) {
+			header[kind.ordinal() + 2] = kind.getLabel() + " ms";
+		}
+		header[kinds.length + 2] = "Other ms";
+		rows.add(header);
+		for (Map.Entry<String, Long> entry : new TreeMap<>(selfTimes).entrySet()) {
+			rows.add(row(entry.getKey(), entry.getValue(), report.operations().get(entry.getKey()), kinds.length));
+		}
+		Format.table(rows, out);
+
+		long[] unattributed = report.unattributed();
+		StringBuilder outside = new StringBuilder("Outside of scopes:");
+		for (WaitReport.Kind kind : kinds) {
+			outside.append(' ').append(kind.getLabel()).append(' ').append(Format.millis(unattributed[kind.ordinal()]))
+					.append(" ms").append(kind.ordinal() < kinds.length - 1 ? "," : "");
+		}
+		out.println();
+		out.println(outside);
+	}
+
+	private static String[] row(String operation, long selfTime, long[] waits, int kinds) {
+		String[] row = new String[kinds + 3];
+		row[0] = operation;
+		row[1] = Format.millis(selfTime);
+		long waited = 0;
+		for (int i = 0; i < kinds; i++) {
+			long time = waits == null ? 0 : waits[i];
+			row[i + 2] = Format.millis(time) + " (" + Format.percent(time, selfTime) + ")";
+			waited += time;
+		}
+		// Waits overlapping each other can add up to more than the self time
+		long other = Math.max(0, selfTime - waited);
+		row[kinds + 2] = Format.millis(other) + " (" + Format.percent(other, selfTime) + ")";
+		return row;
+	}
+}
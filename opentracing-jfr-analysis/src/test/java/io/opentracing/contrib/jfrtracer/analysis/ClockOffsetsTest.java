@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ClockOffsetsTest {
+	private static final long MS = 1_000_000;
+
+	@Test
+	public void offsetsChainedFromFirstHost() {
+		// Host 1 runs 500 ms ahead of host 0, and host 2 runs 200 ms behind host 1
+		long[] skew = {0, 500 * MS, 300 * MS};
+		ClockOffsets clocks = new ClockOffsets(3);
+		for (int i = 0; i < 100; i++) {
+			long start = i * 1000 * MS;
+			// Symmetric network delays of 1 ms
+			SpanRecord client = span(0, start, 100 * MS, skew);
+			SpanRecord server = span(1, start + MS, 98 * MS, skew);
+			SpanRecord downstream = span(2, start + 40 * MS, 20 * MS, skew);
+			clocks.add(client, server);
+			clocks.add(server, downstream);
+		}
+		assertArrayEquals(new long[] {0, -500 * MS, -300 * MS}, clocks.offsets());
+		assertEquals(100, clocks.pairs(0, 1));
+		assertEquals(100, clocks.pairs(2, 1));
+		assertEquals(0, clocks.pairs(0, 2));
+	}
+
+	@Test
+	public void boundsLimitTheMedian() {
+		ClockOffsets clocks = new ClockOffsets(2);
+		List<SpanRecord[]> pairs = new ArrayList<>();
+		// Asymmetric delays: requests take 9 ms more than responses, so the centered estimates are
+		// off by 4.5 ms, but one short request puts a tighter bound on the offset
+		for (int i = 0; i < 10; i++) {
+			pairs.add(new SpanRecord[] {span(0, 0, 20 * MS, null), span(1, 10 * MS, 9 * MS, null)});
+		}
+		pairs.add(new SpanRecord[] {span(0, 0, 20 * MS, null), span(1, 2 * MS, 17 * MS, null)});
+		for (SpanRecord[] pair : pairs) {
+			clocks.add(pair[0], pair[1]);
+		}
+		// The child starting 2 ms after its parent bounds the offset to at least -2 ms
+		assertEquals(-2 * MS, clocks.offsets()[1]);
+	}
+
+	@Test
+	public void unconnectedHosts() {
+		ClockOffsets clocks = new ClockOffsets(2);
+		assertArrayEquals(new long[] {0, 0}, clocks.offsets());
+	}
+
+	private static SpanRecord span(int host, long start, long duration, long[] skew) {
+		return new SpanRecord("trace", "span" + host, null, "op", start + (skew == null ? 0 : skew[host]), duration,
+				null, host);
+	}
+}
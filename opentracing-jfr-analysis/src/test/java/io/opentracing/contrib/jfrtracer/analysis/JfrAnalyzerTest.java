@@ -0,0 +1,295 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+
+public class JfrAnalyzerTest {
+	private static Path recording;
+
+	@BeforeAll
+	public static void record() throws IOException {
+		try (Recording jfr = TestRecordings.start()) {
+			TestRecordings.span("slow", "a", null, "request", 30, () -> {
+				TestRecordings.span("slow", "b", "a", "query", 20, () -> {
+					TestRecordings.span("slow", "c", "b", "parse", 1);
+				});
+				// The parent of this span was not recorded
+				TestRecordings.span("slow", "d", "x", "callback", 1);
+			});
+			for (int i = 0; i < 5; i++) {
+				TestRecordings.span("fast" + i, "a", null, "request", 1);
+			}
+			recording = TestRecordings.dump(jfr);
+		}
+	}
+
+	@AfterAll
+	public static void delete() throws IOException {
+		Files.delete(recording);
+	}
+
+	@Test
+	public void slowestTrace() {
+		String output = run(0, "traces", "--slowest", "1", recording.toString());
+		assertTrue(Pattern.compile("^request\\s+6\\s", Pattern.MULTILINE).matcher(output).find(), output);
+		assertTrue(Pattern.compile("^query\\s+1\\s", Pattern.MULTILINE).matcher(output).find(), output);
+		assertTrue(output.contains("Trace slow: 4 spans"), output);
+		assertTrue(!output.contains("Trace fast"), output);
+		// The tree is indented by depth, with the span of the unrecorded parent as a root
+		String thread = " [" + Thread.currentThread().getName() + "]";
+		assertTrue(output.contains("ms  request" + thread), output);
+		assertTrue(output.contains("ms    query" + thread), output);
+		assertTrue(output.contains("ms      parse" + thread), output);
+		assertTrue(output.contains("ms  callback" + thread), output);
+		Matcher offset = Pattern.compile("\\+(\\S+) ms +\\S+ ms  +query").matcher(output);
+		assertTrue(offset.find(), output);
+		assertTrue(Double.parseDouble(offset.group(1)) < 10, output);
+	}
+
+	@Test
+	public void selectedTraces() {
+		String output = run(0, "traces", "--trace", "fast3", "--trace", "missing", "--threads", "1",
+				recording.toString());
+		assertTrue(output.contains("Trace fast3: 1 spans"), output);
+		assertTrue(output.contains("Trace missing not found"), output);
+		assertTrue(!output.contains("Trace slow"), output);
+	}
+
+	@Test
+	public void profile() throws IOException {
+		Path output = Files.createTempDirectory("analysis-test");
+		Path profiled = null;
+		try {
+			try (Recording jfr = TestRecordings.start()) {
+				jfr.enable("jdk.ExecutionSample").withPeriod(Duration.ofMillis(10));
+				TestRecordings.scope("busy", "a", "compute", () -> spin(500));
+				profiled = TestRecordings.dump(jfr);
+			}
+			String result = run(0, "profile", "--output", output.toString(), profiled.toString());
+			assertTrue(result.contains(" compute  "), result);
+			assertTrue(result.contains(" busy  "), result);
+			List<String> operation = Files.readAllLines(output.resolve("operations").resolve("compute.collapsed"));
+			assertFalse(operation.isEmpty());
+			assertTrue(operation.stream().anyMatch(line -> line.contains("JfrAnalyzerTest.spin")), operation.toString());
+			List<String> trace = Files.readAllLines(output.resolve("traces").resolve("busy.collapsed"));
+			assertTrue(trace.stream().allMatch(line -> line.startsWith("compute;")), trace.toString());
+		} finally {
+			if (profiled != null) {
+				Files.delete(profiled);
+			}
+			try (Stream<Path> files = Files.walk(output)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	public void waits() throws IOException, InterruptedException {
+		Path waited = null;
+		Object lock = new Object();
+		CountDownLatch locked = new CountDownLatch(1);
+		Thread holder = new Thread(() -> {
+			synchronized (lock) {
+				locked.countDown();
+				spin(100);
+			}
+		});
+		try (Recording jfr = TestRecordings.start()) {
+			for (String event : new String[] {"jdk.JavaMonitorEnter", "jdk.ThreadPark"}) {
+				jfr.enable(event).withThreshold(Duration.ZERO);
+			}
+			TestRecordings.scope("waits", "a", "locking", () -> {
+				holder.start();
+				awaitUninterruptibly(locked);
+				synchronized (lock) {
+					spin(1);
+				}
+			});
+			TestRecordings.scope("waits", "b", "parking", () -> {
+				LockSupport.parkNanos(50_000_000);
+				TestRecordings.scope("waits", "c", "nested", () -> spin(20));
+			});
+			waited = TestRecordings.dump(jfr);
+		} finally {
+			holder.join();
+		}
+		try {
+			String result = run(0, "waits", waited.toString());
+			assertTrue(waitMillis(result, "locking", 2) > 50, result);
+			assertTrue(waitMillis(result, "parking", 3) >= 50, result);
+			// The self time of parking does not include the nested scope
+			assertTrue(waitMillis(result, "parking", 1) < 70, result);
+			assertTrue(waitMillis(result, "nested", 1) >= 20, result);
+			assertTrue(result.contains("Outside of scopes:"), result);
+		} finally {
+			Files.delete(waited);
+		}
+	}
+
+	@Test
+	public void merge() throws IOException {
+		Path client;
+		Path server;
+		try (Recording jfr = TestRecordings.start()) {
+			TestRecordings.span("remote", "a", null, "call", 5, () -> {
+				TestRecordings.span("remote", "b", "a", "handle", 10);
+			});
+			TestRecordings.span("local", "a", null, "call", 1);
+			client = TestRecordings.dump(jfr);
+		}
+		try (Recording jfr = TestRecordings.start()) {
+			// Only the server side of the remote call is in this recording
+			TestRecordings.span("remote", "b", "a", "handle", 10);
+			server = TestRecordings.dump(jfr);
+		}
+		try {
+			String result = run(0, "merge", "--slowest", "1", client.toString(), server.toString());
+			assertTrue(result.contains("2 traces, 1 across processes"), result);
+			assertTrue(result.contains("Trace remote: 3 spans"), result);
+			assertTrue(result.contains("ms  call [" + client.getFileName()), result);
+			assertTrue(result.contains("ms    handle [" + server.getFileName()), result);
+			result = run(0, "merge", "--trace", "local", "--window", "1", client.toString(), server.toString());
+			assertTrue(result.contains("Trace local: 1 spans"), result);
+		} finally {
+			Files.delete(client);
+			Files.delete(server);
+		}
+	}
+
+	@Test
+	public void indexAndQuery() throws IOException {
+		Path directory = Files.createTempDirectory("analysis-test");
+		try {
+			Path multiChunk = directory.resolve("multi.jfr");
+			Path single = directory.resolve("single.jfr");
+			for (String traceId : new String[] {"first", "second"}) {
+				try (Recording jfr = TestRecordings.start()) {
+					TestRecordings.span(traceId, "a", null, traceId + " request", 1, () -> {
+						TestRecordings.span(traceId, "b", "a", "query", 2);
+					});
+					Path chunk = TestRecordings.dump(jfr);
+					if (Files.exists(multiChunk)) {
+						TestRecordings.append(multiChunk, chunk);
+						Files.delete(chunk);
+					} else {
+						Files.move(chunk, multiChunk);
+					}
+				}
+			}
+			try (Recording jfr = TestRecordings.start()) {
+				TestRecordings.span("second", "c", "b", "remote", 1);
+				jfr.dump(single);
+			}
+
+			String result = run(0, "index", directory.toString());
+			assertTrue(result.contains("multi.jfr: 2 chunks, 2 traces, 3 operations"), result);
+			assertTrue(result.contains("single.jfr: 1 chunks, 1 traces, 1 operations"), result);
+			assertTrue(Files.exists(directory.resolve("multi.jfr.idx")));
+			assertTrue(run(0, "index", directory.toString()).contains("multi.jfr: up to date"));
+
+			result = run(0, "query", "--trace", "second", directory.toString());
+			assertTrue(result.contains("Read 2 of 3 chunks, in 2 of 2 recordings"), result);
+			assertTrue(result.contains("Trace second: 3 spans"), result);
+			assertTrue(result.contains("ms      remote [single.jfr"), result);
+
+			result = run(0, "query", "--trace", "first", "--trace", "missing", multiChunk.toString());
+			assertTrue(result.contains("Read 1 of 2 chunks, in 1 of 1 recordings"), result);
+			assertTrue(result.contains("Trace first: 2 spans"), result);
+			assertTrue(result.contains("Trace missing not found"), result);
+
+			result = run(0, "query", directory.toString());
+			assertTrue(Pattern.compile("^query\\s+2\\s", Pattern.MULTILINE).matcher(result).find(), result);
+			assertTrue(Pattern.compile("^remote\\s+1\\s", Pattern.MULTILINE).matcher(result).find(), result);
+
+			Files.write(single, new byte[] {0}, StandardOpenOption.APPEND);
+			result = run(0, "query", "--trace", "second", directory.toString());
+			assertTrue(result.contains("single.jfr has changed since it was indexed, skipped"), result);
+			assertTrue(result.contains("Read 1 of 2 chunks, in 1 of 2 recordings"), result);
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	public void usage() {
+		run(2, "traces", "--slowest", "none", recording.toString());
+		run(2, "traces", "--unknown", "1", recording.toString());
+		run(2, "traces");
+		run(2, "unknown");
+		run(2, "profile", recording.toString());
+		run(1, "traces", recording.resolveSibling("missing.jfr").toString());
+	}
+
+	private static long spin(long millis) {
+		long end = System.nanoTime() + millis * 1_000_000;
+		long value = 0;
+		while (System.nanoTime() < end) {
+			// Mostly stay in Java code, where the thread can be sampled
+			for (int i = 0; i < 100_000; i++) {
+				value += Long.numberOfTrailingZeros(value * 31 + i);
+			}
+		}
+		return value;
+	}
+
+	private static double waitMillis(String output, String operation, int column) {
+		Matcher row = Pattern.compile("^" + operation + "((\\s+\\S+( \\(\\S+\\))?)+)$", Pattern.MULTILINE).matcher(output);
+		assertTrue(row.find(), output);
+		return Double.parseDouble(row.group(1).trim().split("\\s+(\\(\\S+\\)\\s*)?")[column - 1]);
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String run(int expectedStatus, String... args) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		int status = JfrAnalyzer.run(args, new PrintStream(out, true), new PrintStream(err, true));
+		assertEquals(expectedStatus, status, err.toString());
+		return out.toString();
+	}
+}
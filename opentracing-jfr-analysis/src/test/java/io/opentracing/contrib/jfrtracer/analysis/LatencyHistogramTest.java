@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 50; i++) {
+			histogram.record(i);
+		}
+		assertEquals(50, histogram.count());
+		assertEquals(1, histogram.min());
+		assertEquals(50, histogram.max());
+		assertEquals(25, histogram.percentile(50));
+		assertEquals(45, histogram.percentile(90));
+		assertEquals(50, histogram.percentile(100));
+	}
+
+	@Test
+	public void bucketsCoverAllValues() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100_000; i++) {
+			long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+			int index = LatencyHistogram.index(value);
+			assertTrue(LatencyHistogram.highestValue(index) >= value);
+			assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < value);
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.index(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void percentilesWithinResolution() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1_000_000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertWithin(500_000_000, histogram.percentile(50));
+		assertWithin(990_000_000, histogram.percentile(99));
+		assertEquals(1_000_000_000, histogram.max());
+		assertEquals(1_000, histogram.min());
+	}
+
+	@Test
+	public void merge() {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++) {
+			(i % 2 == 0 ? first : second).record(i * 1_000_000);
+		}
+		LatencyHistogram merged = first.merge(second);
+		assertEquals(1000, merged.count());
+		assertEquals(1_000_000, merged.min());
+		assertEquals(1_000_000_000, merged.max());
+		assertWithin(500_000_000, merged.percentile(50));
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(Math.abs(actual - expected) <= expected / 64, "Expected about " + expected + ", was " + actual);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+
+public class RecordingChunksTest {
+
+	@Test
+	public void multipleChunks() throws IOException {
+		Path first;
+		Path second;
+		try (Recording recording = TestRecordings.start()) {
+			for (int i = 0; i < 100; i++) {
+				TestRecordings.span("first", Integer.toHexString(i), null, "op", 0);
+			}
+			first = TestRecordings.dump(recording);
+		}
+		try (Recording recording = TestRecordings.start()) {
+			for (int i = 0; i < 50; i++) {
+				TestRecordings.span("second", Integer.toHexString(i), null, "op", 0);
+			}
+			second = TestRecordings.dump(recording);
+		}
+		try {
+			TestRecordings.append(first, second);
+			List<RecordingChunks.Chunk> chunks = RecordingChunks.chunks(first);
+			assertTrue(chunks.size() >= 2, "Expected at least two chunks, got " + chunks.size());
+			for (RecordingChunks.Chunk chunk : chunks) {
+				assertFalse(chunk.whole);
+			}
+			assertEquals(Files.size(first), chunks.get(chunks.size() - 1).offset + chunks.get(chunks.size() - 1).size);
+
+			Set<String> spans = new RecordingChunks(4).process(chunks, chunk -> new HashSet<>(), (set, event) -> {
+				if (SpanRecord.isSpan(event)) {
+					set.add(event.getString("traceId") + "/" + event.getString("spanId"));
+				}
+			}, (a, b) -> {
+				a.addAll(b);
+				return a;
+			});
+			assertEquals(150, spans.size());
+		} finally {
+			Files.delete(first);
+			Files.delete(second);
+		}
+	}
+
+	@Test
+	public void singleChunkReadInPlace() throws IOException {
+		Path file;
+		try (Recording recording = TestRecordings.start()) {
+			TestRecordings.span("trace", "1", null, "op", 0);
+			file = TestRecordings.dump(recording);
+		}
+		try {
+			List<RecordingChunks.Chunk> chunks = RecordingChunks.chunks(file);
+			assertEquals(1, chunks.size());
+			assertTrue(chunks.get(0).whole);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void notARecording() throws IOException {
+		Path file = Files.createTempFile("analysis-test", ".jfr");
+		try {
+			Files.write(file, "Not a flight recording".getBytes("UTF-8"));
+			assertThrows(IOException.class, () -> RecordingChunks.chunks(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
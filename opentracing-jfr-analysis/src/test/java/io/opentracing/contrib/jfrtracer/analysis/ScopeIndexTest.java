@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ScopeIndexTest {
+
+	@Test
+	public void innermostScope() {
+		ScopeInterval outer = scope(100, 200);
+		ScopeInterval first = scope(110, 130);
+		ScopeInterval nested = scope(115, 120);
+		ScopeInterval second = scope(130, 150);
+		ScopeInterval later = scope(300, 400);
+		ScopeInterval other = scope(100, 400);
+		Map<Long, List<ScopeInterval>> byThread = new HashMap<>();
+		byThread.put(1L, new ArrayList<>(Arrays.asList(later, second, nested, first, outer)));
+		byThread.put(2L, new ArrayList<>(Arrays.asList(other)));
+		ScopeIndex index = ScopeIndex.of(byThread);
+
+		assertNull(index.find(1, 99));
+		assertSame(outer, index.find(1, 100));
+		assertSame(first, index.find(1, 110));
+		assertSame(nested, index.find(1, 119));
+		assertSame(first, index.find(1, 120));
+		assertSame(second, index.find(1, 130));
+		assertSame(outer, index.find(1, 150));
+		assertNull(index.find(1, 200));
+		assertSame(later, index.find(1, 350));
+		assertNull(index.find(1, 400));
+		assertSame(other, index.find(2, 150));
+		assertNull(index.find(3, 150));
+	}
+
+	@Test
+	public void sameStartInnermostWins() {
+		ScopeInterval outer = scope(100, 200);
+		ScopeInterval inner = scope(100, 150);
+		Map<Long, List<ScopeInterval>> byThread = new HashMap<>();
+		byThread.put(1L, new ArrayList<>(Arrays.asList(outer, inner)));
+		ScopeIndex index = ScopeIndex.of(byThread);
+
+		assertSame(inner, index.find(1, 100));
+		assertSame(outer, index.find(1, 150));
+	}
+
+	private static ScopeInterval scope(long start, long end) {
+		return new ScopeInterval(start, end, "op", "trace", "span");
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records span events shaped like the ones of the tracer, without depending on it.
+ */
+final class TestRecordings {
+	@Name(SpanRecord.SPAN_EVENT)
+	@StackTrace(false)
+	static class SpanEvent extends Event {
+		String operationName;
+		String traceId;
+		String spanId;
+		String parentId;
+		Thread startThread;
+		Thread endThread;
+	}
+
+	@Name(SpanRecord.SCOPE_EVENT)
+	@StackTrace(false)
+	static class ScopeEvent extends Event {
+		String operationName;
+		String traceId;
+		String spanId;
+		String parentId;
+	}
+
+	private TestRecordings() {
+	}
+
+	static Recording start() {
+		Recording recording = new Recording();
+		recording.enable(SpanEvent.class).withThreshold(Duration.ZERO);
+		recording.enable(ScopeEvent.class).withThreshold(Duration.ZERO);
+		recording.start();
+		return recording;
+	}
+
+	/**
+	 * Records a span lasting at least the given time, with the spans recorded by the body nested in
+	 * it.
+	 */
+	static void span(String traceId, String spanId, String parentId, String operationName, long millis,
+			Runnable body) {
+		SpanEvent event = new SpanEvent();
+		event.begin();
+		event.startThread = Thread.currentThread();
+		body.run();
+		sleep(millis);
+		event.end();
+		event.operationName = operationName;
+		event.traceId = traceId;
+		event.spanId = spanId;
+		event.parentId = parentId;
+		event.endThread = Thread.currentThread();
+		event.commit();
+	}
+
+	static void span(String traceId, String spanId, String parentId, String operationName, long millis) {
+		span(traceId, spanId, parentId, operationName, millis, () -> {
+		});
+	}
+
+	/**
+	 * Records a scope active while the body runs.
+	 */
+	static void scope(String traceId, String spanId, String operationName, Runnable body) {
+		ScopeEvent event = new ScopeEvent();
+		event.begin();
+		body.run();
+		event.end();
+		event.operationName = operationName;
+		event.traceId = traceId;
+		event.spanId = spanId;
+		event.commit();
+	}
+
+	static Path dump(Recording recording) throws IOException {
+		Path file = Files.createTempFile("analysis-test", ".jfr");
+		recording.dump(file);
+		return file;
+	}
+
+	/**
+	 * Appends the chunks of one recording file to another.
+	 */
+	static void append(Path to, Path from) throws IOException {
+		try (OutputStream out = Files.newOutputStream(to, StandardOpenOption.APPEND)) {
+			Files.copy(from, out);
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
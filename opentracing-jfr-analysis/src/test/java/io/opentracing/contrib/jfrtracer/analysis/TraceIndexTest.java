@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+
+public class TraceIndexTest {
+	private static final int TRACES = 2000;
+
+	@Test
+	public void findsTracesInFile() throws IOException {
+		Path recording;
+		try (Recording jfr = TestRecordings.start()) {
+			for (int i = 0; i < TRACES; i++) {
+				TestRecordings.span("trace " + i, "a", null, "request", 0);
+			}
+			recording = TestRecordings.dump(jfr);
+		}
+		Path sidecar = TraceIndex.sidecar(recording);
+		try {
+			TraceIndex.write(recording, new RecordingChunks(1), sidecar);
+			try (TraceIndex index = TraceIndex.open(sidecar)) {
+				assertTrue(index.isCurrent(recording));
+				assertEquals(TRACES, index.traceCount());
+				for (int i = 0; i < TRACES; i++) {
+					TraceIndex.TraceEntry trace = index.find("trace " + i);
+					assertNotNull(trace, "trace " + i);
+					assertEquals("trace " + i, trace.traceId);
+					assertTrue(trace.start <= trace.end);
+					assertEquals(0, trace.chunks.nextSetBit(0));
+				}
+				assertNull(index.find("trace " + TRACES));
+				assertNull(index.find(""));
+			}
+		} finally {
+			Files.deleteIfExists(sidecar);
+			Files.delete(recording);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TraceMergerTest {
+
+	@Test
+	public void tracesCompleteAfterWindow() {
+		List<List<SpanRecord>> completed = new ArrayList<>();
+		TraceMerger merger = new TraceMerger(100, completed::add);
+		merger.add(span("a", 0, 10));
+		merger.add(span("b", 5, 20));
+		merger.add(span("a", 0, 50));
+		assertEquals(0, completed.size());
+		// Moves past the end of b, but not past the last span of a
+		merger.add(span("c", 120, 125));
+		assertEquals(1, completed.size());
+		assertEquals("b", completed.get(0).get(0).traceId);
+		merger.add(span("c", 120, 151));
+		assertEquals(2, completed.size());
+		assertEquals(2, completed.get(1).size());
+		merger.finish();
+		assertEquals(3, completed.size());
+		assertEquals("c", completed.get(2).get(0).traceId);
+		assertEquals(2, merger.maxInFlight());
+	}
+
+	private static SpanRecord span(String traceId, long start, long end) {
+		return new SpanRecord(traceId, "span", null, "op", start, end - start, null, 0);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Starts and stops flight recordings using the DiagnosticCommand MBean, so that the benchmarks can
+ * be compiled against, and run on, both JDK 8 and JDK 11.
+ */
+final class BenchmarkRecording {
+	private static final String NAME = "opentracing-jfr-benchmark";
+
+	private BenchmarkRecording() {
+	}
+
+	static void start() throws IOException, JMException {
+		if (isJdk8()) {
+			invoke("vmUnlockCommercialFeatures");
+			Path settings = Files.createTempFile("opentracing", ".jfc");
+			try (InputStream in = BenchmarkRecording.class.getResourceAsStream("opentracing.jfc")) {
+				Files.copy(in, settings, StandardCopyOption.REPLACE_EXISTING);
+			}
+			invoke("jfrStart", "name=" + NAME, "settings=" + settings.toAbsolutePath());
+		} else {
+			invoke("jfrStart", "name=" + NAME);
+		}
+	}
+
+	static void stop() throws JMException {
+		invoke("jfrStop", "name=" + NAME);
+	}
+
+	private static boolean isJdk8() {
+		return System.getProperty("java.specification.version").startsWith("1.");
+	}
+
+	private static void invoke(String command, String ... arguments) throws JMException {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		ObjectName diagnosticCommand = new ObjectName("com.sun.management:type=DiagnosticCommand");
+		if (arguments.length == 0) {
+			mbs.invoke(diagnosticCommand, command, new Object[0], new String[0]);
+		} else {
+			mbs.invoke(diagnosticCommand, command, new Object[] {arguments}, new String[] {String[].class.getName()});
+		}
+	}
+}
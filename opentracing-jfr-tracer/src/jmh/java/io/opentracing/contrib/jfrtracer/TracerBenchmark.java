@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import brave.Tracing;
+import brave.opentracing.BraveTracer;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.reporters.NoopReporter;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import zipkin2.reporter.Reporter;
+
+/**
+ * Measures the overhead of the JFR tracer compared to the bare delegate tracer, with and without a
+ * flight recording running. Run with the GC profiler to get the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TracerBenchmark {
+
+	@Param({"mock", "jaeger", "brave"})
+	public String delegate;
+
+	@Param({"false", "true"})
+	public boolean wrapped;
+
+	@Param({"false", "true"})
+	public boolean recording;
+
+	private Tracer tracer;
+	private Span span;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, JMException {
+		tracer = createDelegate(delegate);
+		if (wrapped) {
+			tracer = JfrTracerFactory.create(tracer);
+		}
+		span = tracer.buildSpan("activated span").start();
+		if (recording) {
+			BenchmarkRecording.start();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws JMException {
+		if (recording) {
+			BenchmarkRecording.stop();
+		}
+		span.finish();
+		tracer.close();
+	}
+
+	@Benchmark
+	public void startFinish() {
+		tracer.buildSpan("benchmark span").start().finish();
+	}
+
+	@Benchmark
+	public void activateClose() {
+		tracer.scopeManager().activate(span).close();
+	}
+
+	@Benchmark
+	@SuppressWarnings("try")
+	public void nestedScopes() {
+		Span outer = tracer.buildSpan("outer span").start();
+		try (io.opentracing.Scope outerScope = tracer.scopeManager().activate(outer)) {
+			Span middle = tracer.buildSpan("middle span").start();
+			try (io.opentracing.Scope middleScope = tracer.scopeManager().activate(middle)) {
+				Span inner = tracer.buildSpan("inner span").start();
+				tracer.scopeManager().activate(inner).close();
+				inner.finish();
+			}
+			middle.finish();
+		}
+		outer.finish();
+	}
+
+	/**
+	 * Spans handed over from the starting thread to the finishing thread.
+	 */
+	@State(Scope.Group)
+	public static class Handover {
+		final BlockingQueue<Span> spans = new ArrayBlockingQueue<>(1024);
+
+		@TearDown(Level.Iteration)
+		public void drain() {
+			Span span;
+			while ((span = spans.poll()) != null) {
+				span.finish();
+			}
+		}
+	}
+
+	@Benchmark
+	@Group("crossThread")
+	@GroupThreads(1)
+	public void crossThreadStart(Handover handover) {
+		Span started = tracer.buildSpan("cross thread span").start();
+		if (!handover.spans.offer(started)) {
+			started.finish();
+		}
+	}
+
+	@Benchmark
+	@Group("crossThread")
+	@GroupThreads(1)
+	public void crossThreadFinish(Handover handover) {
+		Span started = handover.spans.poll();
+		if (started != null) {
+			started.finish();
+		}
+	}
+
+	private static Tracer createDelegate(String name) {
+		switch (name) {
+		case "mock":
+			return new MockTracer() {
+				@Override
+				protected void onSpanFinished(MockSpan mockSpan) {
+					// The mock tracer has already added the span to its list, don't keep it around
+					reset();
+				}
+			};
+		case "jaeger":
+			return new JaegerTracer.Builder("benchmark").withReporter(new NoopReporter())
+					.withSampler(new ConstSampler(true)).build();
+		case "brave":
+			return BraveTracer.create(Tracing.newBuilder().localServiceName("benchmark").spanReporter(Reporter.NOOP).build());
+		default:
+			throw new IllegalArgumentException("Unknown delegate " + name);
+		}
+	}
+}
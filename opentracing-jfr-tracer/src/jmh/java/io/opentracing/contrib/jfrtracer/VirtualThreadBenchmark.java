@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+
+/**
+ * Runs a million virtual threads, each of them activating three nested scopes, and measures how
+ * long it takes for all of them to complete. Run with the GC profiler to see how much the scope
+ * stacks of the threads cost. Requires JDK 21 or later, i.e. -PjmhJava=21.
+ * <p>
+ * The pooled scope stacks are found through a thread local entry of the virtual thread, set on its
+ * first activation and removed when its last scope is closed. The thread local benchmarks single
+ * out that cost: the same threads set and remove one entry, as the thread local scope manager of
+ * the delegate does, or two, adding the one of the wrapper. They do not depend on the parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+	private static final int THREADS = 1_000_000;
+	private static final ThreadLocal<Object> DELEGATE_ENTRY = new ThreadLocal<>();
+	private static final ThreadLocal<Object> WRAPPER_ENTRY = new ThreadLocal<>();
+
+	@Param({"false", "true"})
+	public boolean wrapped;
+
+	@Param({"false", "true"})
+	public boolean recording;
+
+	private Tracer tracer;
+	private ExecutorService executor;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, JMException {
+		tracer = new MockTracer() {
+			@Override
+			protected void onSpanFinished(MockSpan mockSpan) {
+				// The mock tracer has already added the span to its list, don't keep it around
+				reset();
+			}
+		};
+		if (wrapped) {
+			tracer = JfrTracerFactory.create(tracer);
+		}
+		if (recording) {
+			BenchmarkRecording.start();
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void createExecutor() throws ReflectiveOperationException {
+		try {
+			// Looked up reflectively, since the benchmarks are compiled for JDK 8
+			executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Virtual threads require JDK 21 or later, run with -PjmhJava=21", e);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws JMException {
+		if (recording) {
+			BenchmarkRecording.stop();
+		}
+		tracer.close();
+	}
+
+	@Benchmark
+	public void nestedScopes() throws InterruptedException {
+		run(this::nested);
+	}
+
+	@Benchmark
+	public void delegateThreadLocal() throws InterruptedException {
+		run(VirtualThreadBenchmark::delegateEntry);
+	}
+
+	@Benchmark
+	public void wrapperThreadLocal() throws InterruptedException {
+		run(VirtualThreadBenchmark::wrapperEntries);
+	}
+
+	private void run(Runnable task) throws InterruptedException {
+		for (int i = 0; i < THREADS; i++) {
+			executor.execute(task);
+		}
+		executor.shutdown();
+		if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			// Otherwise the score would only measure the time out
+			throw new IllegalStateException("The virtual threads did not finish within a minute");
+		}
+	}
+
+	private static void delegateEntry() {
+		DELEGATE_ENTRY.set(Boolean.TRUE);
+		DELEGATE_ENTRY.remove();
+	}
+
+	private static void wrapperEntries() {
+		DELEGATE_ENTRY.set(Boolean.TRUE);
+		WRAPPER_ENTRY.set(Boolean.TRUE);
+		WRAPPER_ENTRY.remove();
+		DELEGATE_ENTRY.remove();
+	}
+
+	@SuppressWarnings("try")
+	private void nested() {
+		Span outer = tracer.buildSpan("outer span").start();
+		try (io.opentracing.Scope outerScope = tracer.scopeManager().activate(outer)) {
+			Span middle = tracer.buildSpan("middle span").start();
+			try (io.opentracing.Scope middleScope = tracer.scopeManager().activate(middle)) {
+				Span inner = tracer.buildSpan("inner span").start();
+				tracer.scopeManager().activate(inner).close();
+				inner.finish();
+			}
+			middle.finish();
+		}
+		outer.finish();
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the sustained throughput and drop rate of the span event queue with 1, 8 and 64
+ * producer threads. The accepted and dropped secondary results are reported per second, so the
+ * drop rate is dropped / (accepted + dropped).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MpscRingBufferBenchmark {
+
+	/**
+	 * Simulated cost of emitting an event on the consumer thread, in {@link Blackhole#consumeCPU}
+	 * tokens.
+	 */
+	@Param({"0", "100"})
+	public int consumerTokens;
+
+	@Param({"1024"})
+	public int queueSize;
+
+	private MpscRingBuffer<Object> queue;
+	private final Object element = new Object();
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long accepted;
+		public long dropped;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		long tokens = consumerTokens;
+		queue = new MpscRingBuffer<>(queueSize, AbstractJfrSpanEmitter.BATCH_SIZE, "Benchmark Consumer",
+				e -> Blackhole.consumeCPU(tokens));
+		queue.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		queue.stop();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean producers1(Counters counters) {
+		return offer(counters);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public boolean producers8(Counters counters) {
+		return offer(counters);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public boolean producers64(Counters counters) {
+		return offer(counters);
+	}
+
+	private boolean offer(Counters counters) {
+		if (queue.offer(element)) {
+			counters.accepted++;
+			return true;
+		}
+		counters.dropped++;
+		return false;
+	}
+}
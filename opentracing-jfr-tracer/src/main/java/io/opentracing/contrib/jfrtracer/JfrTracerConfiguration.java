@@ -0,0 +1,623 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.opentracing.Tracer;
+
+/**
+ * Configuration of a JFR tracer. Create one with {@link #builder()}, and pass it to
+ * {@link JfrTracerFactory#create(Tracer, JfrTracerConfiguration)}.
+ * <p>
+ * Instances are immutable, and can be shared between tracers.
+ */
+public final class JfrTracerConfiguration {
+	/**
+	 * The configuration used when none is specified. Records every span and scope.
+	 */
+	public static final JfrTracerConfiguration DEFAULT = builder().build();
+
+	private final long defaultThresholdNanos;
+	private final Map<String, Long> thresholdNanos;
+	private final double defaultRateLimit;
+	private final Map<String, Double> rateLimits;
+	private final double samplingRate;
+	private final boolean followDelegateSampling;
+	private final List<SamplingInspector> samplingInspectors;
+	private final long defaultSlowSpanLimitNanos;
+	private final Map<String, Long> slowSpanLimitNanos;
+	private final Path slowSpanDumpDirectory;
+	private final Duration slowSpanDumpAge;
+	private final Duration slowSpanDumpInterval;
+	private final int slowSpanDumpCount;
+	private final Duration wallClockSamplingPeriod;
+	private final Duration openSpanLeakLimit;
+	private final boolean binaryIds;
+	private final boolean synchronousSpans;
+	private final boolean scopeThreadResources;
+	private final int scopeStackPoolSize;
+
+	private JfrTracerConfiguration(Builder builder) {
+		this.defaultThresholdNanos = builder.defaultThresholdNanos;
+		this.thresholdNanos = new HashMap<>(builder.thresholdNanos);
+		this.defaultRateLimit = builder.defaultRateLimit;
+		this.rateLimits = new HashMap<>(builder.rateLimits);
+		this.samplingRate = builder.samplingRate;
+		this.followDelegateSampling = builder.followDelegateSampling;
+		this.samplingInspectors = Collections.unmodifiableList(new ArrayList<>(builder.samplingInspectors));
+		this.defaultSlowSpanLimitNanos = builder.defaultSlowSpanLimitNanos;
+		this.slowSpanLimitNanos = new HashMap<>(builder.slowSpanLimitNanos);
+		this.slowSpanDumpDirectory = builder.slowSpanDumpDirectory;
+		this.slowSpanDumpAge = builder.slowSpanDumpAge;
+		this.slowSpanDumpInterval = builder.slowSpanDumpInterval;
+		this.slowSpanDumpCount = builder.slowSpanDumpCount;
+		this.wallClockSamplingPeriod = builder.wallClockSamplingPeriod;
+		this.openSpanLeakLimit = builder.openSpanLeakLimit;
+		this.binaryIds = builder.binaryIds;
+		this.synchronousSpans = builder.synchronousSpans;
+		this.scopeThreadResources = builder.scopeThreadResources;
+		this.scopeStackPoolSize = builder.scopeStackPoolSize;
+	}
+
+	/**
+	 * @return a new builder, initially holding the default configuration.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns the minimum duration of the span and scope events for an operation. Shorter spans
+	 * and activations are not recorded.
+	 *
+	 * @param operationName
+	 *            the operation name of the span.
+	 * @return the threshold in nanoseconds, 0 if all events are to be recorded.
+	 */
+	public long getThresholdNanos(String operationName) {
+		if (thresholdNanos.isEmpty() || operationName == null) {
+			return defaultThresholdNanos;
+		}
+		Long threshold = thresholdNanos.get(operationName);
+		return threshold != null ? threshold : defaultThresholdNanos;
+	}
+
+	/**
+	 * Returns the maximum number of span events per second recorded for an operation. Span events
+	 * exceeding the limit are suppressed.
+	 *
+	 * @param operationName
+	 *            the operation name of the span.
+	 * @return the limit in span events per second, 0 if there is no limit.
+	 */
+	public double getRateLimit(String operationName) {
+		if (rateLimits.isEmpty() || operationName == null) {
+			return defaultRateLimit;
+		}
+		Double rateLimit = rateLimits.get(operationName);
+		return rateLimit != null ? rateLimit : defaultRateLimit;
+	}
+
+	/**
+	 * @param operationName
+	 *            the operation name of the span.
+	 * @return true if a rate limit, possibly 0 for none, is set for the operation itself rather
+	 *         than taken from the default.
+	 */
+	public boolean hasRateLimit(String operationName) {
+		return operationName != null && rateLimits.containsKey(operationName);
+	}
+
+	/**
+	 * @return true if there is a rate limit for any operation.
+	 */
+	public boolean hasRateLimits() {
+		return defaultRateLimit > 0 || rateLimits.values().stream().anyMatch(limit -> limit > 0);
+	}
+
+	/**
+	 * @return the fraction of the traces for which events are recorded. Which traces are recorded
+	 *         is decided from a hash of the trace id, so that all nodes with the same rate record
+	 *         the same traces.
+	 */
+	public double getSamplingRate() {
+		return samplingRate;
+	}
+
+	/**
+	 * @return true if events are only recorded for the spans sampled by the delegate tracer.
+	 */
+	public boolean isFollowingDelegateSampling() {
+		return followDelegateSampling;
+	}
+
+	/**
+	 * @return the inspectors added to the configuration, in the order they were added.
+	 */
+	public List<SamplingInspector> getSamplingInspectors() {
+		return samplingInspectors;
+	}
+
+	/**
+	 * Returns the latency limit of an operation. A span lasting longer triggers a dump of the
+	 * flight recorder data.
+	 *
+	 * @param operationName
+	 *            the operation name of the span.
+	 * @return the limit in nanoseconds, 0 if the spans of the operation never trigger dumps.
+	 */
+	public long getSlowSpanLimitNanos(String operationName) {
+		if (slowSpanLimitNanos.isEmpty() || operationName == null) {
+			return defaultSlowSpanLimitNanos;
+		}
+		Long limit = slowSpanLimitNanos.get(operationName);
+		return limit != null ? limit : defaultSlowSpanLimitNanos;
+	}
+
+	/**
+	 * @return true if there is a slow span limit for any operation.
+	 */
+	public boolean hasSlowSpanLimits() {
+		return defaultSlowSpanLimitNanos > 0 || slowSpanLimitNanos.values().stream().anyMatch(limit -> limit > 0);
+	}
+
+	/**
+	 * @return the directory the slow span dumps are written to.
+	 */
+	public Path getSlowSpanDumpDirectory() {
+		return slowSpanDumpDirectory;
+	}
+
+	/**
+	 * @return how far back in time a slow span dump reaches.
+	 */
+	public Duration getSlowSpanDumpAge() {
+		return slowSpanDumpAge;
+	}
+
+	/**
+	 * @return the minimum time between two slow span dumps.
+	 */
+	public Duration getSlowSpanDumpInterval() {
+		return slowSpanDumpInterval;
+	}
+
+	/**
+	 * @return the number of slow span dumps kept in the dump directory.
+	 */
+	public int getSlowSpanDumpCount() {
+		return slowSpanDumpCount;
+	}
+
+	/**
+	 * @return the period between two wall clock samples of the threads in sampled scopes, or
+	 *         {@link Duration#ZERO} if they are not sampled.
+	 */
+	public Duration getWallClockSamplingPeriod() {
+		return wallClockSamplingPeriod;
+	}
+
+	/**
+	 * @return the time a span may be open before being flagged as a probable leak, or
+	 *         {@link Duration#ZERO} if open spans are not tracked.
+	 */
+	public Duration getOpenSpanLeakLimit() {
+		return openSpanLeakLimit;
+	}
+
+	/**
+	 * @return true if the ids are recorded in the binary id fields of the events, leaving the
+	 *         string id fields empty.
+	 */
+	public boolean isBinaryIds() {
+		return binaryIds;
+	}
+
+	/**
+	 * @return true if the span events are committed on the threads finishing the spans, rather than
+	 *         on the thread emitting the queued span events.
+	 */
+	public boolean isSynchronousSpans() {
+		return synchronousSpans;
+	}
+
+	/**
+	 * @return true if the CPU time and the allocated bytes of the thread are recorded in the scope
+	 *         events on JDK 8.
+	 */
+	public boolean isScopeThreadResources() {
+		return scopeThreadResources;
+	}
+
+	/**
+	 * @return the number of idle scope stacks kept for reuse by virtual threads.
+	 */
+	public int getScopeStackPoolSize() {
+		return scopeStackPoolSize;
+	}
+
+	@Override
+	public String toString() {
+		return "JfrTracerConfiguration [defaultThresholdNanos=" + defaultThresholdNanos + ", thresholdNanos="
+				+ thresholdNanos + ", defaultRateLimit=" + defaultRateLimit + ", rateLimits=" + rateLimits + ", samplingRate="
+				+ samplingRate + ", followDelegateSampling=" + followDelegateSampling + ", samplingInspectors="
+				+ samplingInspectors + ", defaultSlowSpanLimitNanos=" + defaultSlowSpanLimitNanos + ", slowSpanLimitNanos="
+				+ slowSpanLimitNanos + ", slowSpanDumpDirectory=" + slowSpanDumpDirectory + ", slowSpanDumpAge="
+				+ slowSpanDumpAge + ", slowSpanDumpInterval=" + slowSpanDumpInterval + ", slowSpanDumpCount="
+				+ slowSpanDumpCount + ", wallClockSamplingPeriod=" + wallClockSamplingPeriod
+				+ ", openSpanLeakLimit=" + openSpanLeakLimit + ", binaryIds=" + binaryIds + ", synchronousSpans="
+				+ synchronousSpans + ", scopeThreadResources=" + scopeThreadResources + ", scopeStackPoolSize="
+				+ scopeStackPoolSize + "]";
+	}
+
+	/**
+	 * Builder for {@link JfrTracerConfiguration}.
+	 */
+	public static final class Builder {
+		// Every wall clock sample stops all threads at a safepoint
+		private static final Duration MIN_WALL_CLOCK_SAMPLING_PERIOD = Duration.ofMillis(10);
+
+		private long defaultThresholdNanos;
+		private final Map<String, Long> thresholdNanos = new HashMap<>();
+		private double defaultRateLimit;
+		private final Map<String, Double> rateLimits = new HashMap<>();
+		private double samplingRate = 1;
+		private boolean followDelegateSampling;
+		private final List<SamplingInspector> samplingInspectors = new ArrayList<>();
+		private long defaultSlowSpanLimitNanos;
+		private final Map<String, Long> slowSpanLimitNanos = new HashMap<>();
+		private Path slowSpanDumpDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "jfr-slow-spans");
+		private Duration slowSpanDumpAge = Duration.ofMinutes(1);
+		private Duration slowSpanDumpInterval = Duration.ofMinutes(1);
+		private int slowSpanDumpCount = 10;
+		private Duration wallClockSamplingPeriod = Duration.ZERO;
+		private Duration openSpanLeakLimit = Duration.ZERO;
+		private boolean binaryIds;
+		private boolean synchronousSpans;
+		private boolean scopeThreadResources;
+		private int scopeStackPoolSize = 8 * Runtime.getRuntime().availableProcessors();
+
+		private Builder() {
+		}
+
+		/**
+		 * Sets the threshold for all operations that do not have a threshold of their own.
+		 *
+		 * @param threshold
+		 *            the minimum duration of a span or scope for it to be recorded.
+		 * @return this builder.
+		 */
+		public Builder threshold(Duration threshold) {
+			defaultThresholdNanos = toNanos(threshold, "threshold");
+			return this;
+		}
+
+		/**
+		 * Sets the threshold for a single operation.
+		 *
+		 * @param operationName
+		 *            the operation name of the spans the threshold applies to.
+		 * @param threshold
+		 *            the minimum duration of a span or scope for it to be recorded.
+		 * @return this builder.
+		 */
+		public Builder threshold(String operationName, Duration threshold) {
+			if (operationName == null) {
+				throw new IllegalArgumentException("The operation name must not be null");
+			}
+			thresholdNanos.put(operationName, toNanos(threshold, "threshold"));
+			return this;
+		}
+
+		/**
+		 * Sets the rate limit for all operations that do not have a limit of their own. Each
+		 * operation gets a limit of its own, it is not shared between the operations.
+		 *
+		 * @param spansPerSecond
+		 *            the maximum number of span events per second to record for an operation, 0
+		 *            for no limit.
+		 * @return this builder.
+		 */
+		public Builder rateLimit(double spansPerSecond) {
+			defaultRateLimit = checkRateLimit(spansPerSecond);
+			return this;
+		}
+
+		/**
+		 * Sets the rate limit for a single operation.
+		 *
+		 * @param operationName
+		 *            the operation name of the spans the limit applies to.
+		 * @param spansPerSecond
+		 *            the maximum number of span events per second to record for the operation, 0
+		 *            for no limit.
+		 * @return this builder.
+		 */
+		public Builder rateLimit(String operationName, double spansPerSecond) {
+			if (operationName == null) {
+				throw new IllegalArgumentException("The operation name must not be null");
+			}
+			rateLimits.put(operationName, checkRateLimit(spansPerSecond));
+			return this;
+		}
+
+		/**
+		 * Sets the fraction of the traces to record events for. The traces are picked from a hash
+		 * of the trace id, so all nodes using the same rate record events for the same traces.
+		 *
+		 * @param rate
+		 *            the fraction of the traces to record, between 0 and 1. The default is 1.
+		 * @return this builder.
+		 */
+		public Builder samplingRate(double rate) {
+			if (!(rate >= 0 && rate <= 1)) {
+				throw new IllegalArgumentException("The sampling rate must be between 0 and 1");
+			}
+			samplingRate = rate;
+			return this;
+		}
+
+		/**
+		 * Makes the events follow the sampling decisions of the delegate tracer, so that events are
+		 * only recorded for traces that the delegate records as well. Spans for which the decision
+		 * cannot be found out are recorded. Off by default.
+		 *
+		 * @param follow
+		 *            true to only record events for spans sampled by the delegate.
+		 * @return this builder.
+		 */
+		public Builder followDelegateSampling(boolean follow) {
+			followDelegateSampling = follow;
+			return this;
+		}
+
+		/**
+		 * Adds an inspector for reading the sampling decisions of the delegate tracer. Only used if
+		 * following the delegate sampling.
+		 *
+		 * @param inspector
+		 *            the inspector to add.
+		 * @return this builder.
+		 */
+		public Builder samplingInspector(SamplingInspector inspector) {
+			if (inspector == null) {
+				throw new IllegalArgumentException("The inspector must not be null");
+			}
+			samplingInspectors.add(inspector);
+			return this;
+		}
+
+		/**
+		 * Sets the latency limit for all operations that do not have a limit of their own. When a
+		 * span lasts longer, the flight recorder data of the last moments is dumped to the slow
+		 * span dump directory. JDK 11 or later only.
+		 *
+		 * @param limit
+		 *            the duration of a span triggering a dump, or {@link Duration#ZERO} for none.
+		 * @return this builder.
+		 */
+		public Builder slowSpanLimit(Duration limit) {
+			defaultSlowSpanLimitNanos = toNanos(limit, "slow span limit");
+			return this;
+		}
+
+		/**
+		 * Sets the latency limit for a single operation.
+		 *
+		 * @param operationName
+		 *            the operation name of the spans the limit applies to.
+		 * @param limit
+		 *            the duration of a span triggering a dump, or {@link Duration#ZERO} for none.
+		 * @return this builder.
+		 */
+		public Builder slowSpanLimit(String operationName, Duration limit) {
+			if (operationName == null) {
+				throw new IllegalArgumentException("The operation name must not be null");
+			}
+			slowSpanLimitNanos.put(operationName, toNanos(limit, "slow span limit"));
+			return this;
+		}
+
+		/**
+		 * Sets the directory the slow span dumps are written to. The default is
+		 * <code>jfr-slow-spans</code> in the temporary directory.
+		 *
+		 * @param directory
+		 *            the directory, created if it does not exist.
+		 * @return this builder.
+		 */
+		public Builder slowSpanDumpDirectory(Path directory) {
+			if (directory == null) {
+				throw new IllegalArgumentException("The slow span dump directory must not be null");
+			}
+			slowSpanDumpDirectory = directory;
+			return this;
+		}
+
+		/**
+		 * Sets how far back in time a slow span dump reaches. The recorded data is dropped a chunk
+		 * at a time, so a dump may reach further back. The default is one minute.
+		 *
+		 * @param age
+		 *            the age of the oldest data to dump.
+		 * @return this builder.
+		 */
+		public Builder slowSpanDumpAge(Duration age) {
+			toNanos(age, "slow span dump age");
+			slowSpanDumpAge = age;
+			return this;
+		}
+
+		/**
+		 * Sets the minimum time between two slow span dumps, so that a burst of slow spans does not
+		 * turn into a burst of dumps. The default is one minute.
+		 *
+		 * @param interval
+		 *            the minimum time between two dumps.
+		 * @return this builder.
+		 */
+		public Builder slowSpanDumpInterval(Duration interval) {
+			toNanos(interval, "slow span dump interval");
+			slowSpanDumpInterval = interval;
+			return this;
+		}
+
+		/**
+		 * Sets the number of slow span dumps kept. Once there are more, the oldest are deleted. The
+		 * default is 10.
+		 *
+		 * @param count
+		 *            the number of dumps to keep.
+		 * @return this builder.
+		 */
+		public Builder slowSpanDumpCount(int count) {
+			if (count < 1) {
+				throw new IllegalArgumentException("The slow span dump count must be positive");
+			}
+			slowSpanDumpCount = count;
+			return this;
+		}
+
+		/**
+		 * Samples the stack traces of the threads with an active scope of a sampled span, and
+		 * records them in <code>io.opentracing.WallClockSample</code> events tagged with the ids
+		 * of the span. Threads outside of scopes are not sampled, but every sample takes a
+		 * safepoint that briefly stops all threads in the JVM, so the period must be at least 10
+		 * ms.
+		 *
+		 * @param period
+		 *            the period between two samples, or {@link Duration#ZERO} for no sampling, the
+		 *            default.
+		 * @return this builder.
+		 */
+		public Builder wallClockSampling(Duration period) {
+			toNanos(period, "wall clock sampling period");
+			if (!period.isZero() && period.compareTo(MIN_WALL_CLOCK_SAMPLING_PERIOD) < 0) {
+				throw new IllegalArgumentException("The wall clock sampling period must be at least "
+						+ MIN_WALL_CLOCK_SAMPLING_PERIOD.toMillis() + " ms");
+			}
+			wallClockSamplingPeriod = period;
+			return this;
+		}
+
+		/**
+		 * Keeps track of the open spans of sampled traces, and lists them periodically in
+		 * <code>io.opentracing.OpenSpan</code> events, so that long running spans show up in
+		 * recordings dumped before they finish. The spans are weakly referenced, and spans
+		 * collected without having been finished are counted in the tracer health event. Spans are
+		 * only tracked while the open span event is enabled.
+		 *
+		 * @param leakLimit
+		 *            the time a span may be open before being flagged as a probable leak, or
+		 *            {@link Duration#ZERO} for not tracking open spans, the default.
+		 * @return this builder.
+		 */
+		public Builder trackOpenSpans(Duration leakLimit) {
+			toNanos(leakLimit, "open span leak limit");
+			openSpanLeakLimit = leakLimit;
+			return this;
+		}
+
+		/**
+		 * Records the trace, span and parent ids in the binary (<code>long</code>) id fields of
+		 * the events instead of the string fields. 128 bit trace ids are split into a high and a
+		 * low half. The native ids are used for Jaeger, Brave and the OpenTracing mock tracer; for
+		 * other tracers the id strings are parsed as hexadecimal numbers, and hashed if they are
+		 * not. Off by default.
+		 *
+		 * @param binary
+		 *            true to record binary ids.
+		 * @return this builder.
+		 */
+		public Builder binaryIds(boolean binary) {
+			binaryIds = binary;
+			return this;
+		}
+
+		/**
+		 * Commits the span events directly on the threads finishing the spans, bypassing the span
+		 * event queue. The span time stamps are always taken on the threads starting and
+		 * finishing the spans. Off by default. JDK 11 or later only.
+		 *
+		 * @param synchronous
+		 *            true to commit the span events synchronously.
+		 * @return this builder.
+		 */
+		public Builder synchronousSpans(boolean synchronous) {
+			synchronousSpans = synchronous;
+			return this;
+		}
+
+		/**
+		 * Records the CPU time and the allocated bytes of the thread in the scope events. Off by
+		 * default. JDK 8 only, on JDK 11 and later use the <code>threadResources</code> setting of
+		 * the <code>io.opentracing.Scope</code> event instead.
+		 *
+		 * @param record
+		 *            true to record the thread resources.
+		 * @return this builder.
+		 */
+		public Builder scopeThreadResources(boolean record) {
+			scopeThreadResources = record;
+			return this;
+		}
+
+		/**
+		 * Sets the number of idle scope stacks kept for reuse by virtual threads. The default is 8
+		 * per CPU. JDK 21 or later only.
+		 *
+		 * @param size
+		 *            the number of scope stacks to keep.
+		 * @return this builder.
+		 */
+		public Builder scopeStackPoolSize(int size) {
+			if (size < 1) {
+				throw new IllegalArgumentException("The scope stack pool size must be positive");
+			}
+			scopeStackPoolSize = size;
+			return this;
+		}
+
+		/**
+		 * @return a new configuration with the settings of this builder.
+		 */
+		public JfrTracerConfiguration build() {
+			return new JfrTracerConfiguration(this);
+		}
+
+		private static long toNanos(Duration duration, String name) {
+			if (duration == null || duration.isNegative()) {
+				throw new IllegalArgumentException("The " + name + " must not be null or negative");
+			}
+			return duration.toNanos();
+		}
+
+		private static double checkRateLimit(double spansPerSecond) {
+			if (!(spansPerSecond >= 0) || Double.isInfinite(spansPerSecond)) {
+				throw new IllegalArgumentException("The rate limit must be a finite, non-negative number");
+			}
+			return spansPerSecond;
+		}
+	}
+}
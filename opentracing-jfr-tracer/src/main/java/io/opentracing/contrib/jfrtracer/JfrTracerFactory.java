@@ -16,10 +16,14 @@
 package io.opentracing.contrib.jfrtracer;
 
 import io.opentracing.Tracer;
+import io.opentracing.contrib.jfrtracer.impl.jfr.JfrEmitterFactory;
 import io.opentracing.contrib.jfrtracer.impl.wrapper.TracerWrapper;
 
+import java.time.Duration;
 import java.util.logging.Logger;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * Factory responsible for creating the wrapper tracer used to emit the flight recorder events.
  * <p>
@@ -43,6 +47,20 @@ public final class JfrTracerFactory {
 	 *         tracer.
 	 */
 	public static Tracer create(Tracer delegate) {
+		return create(delegate, JfrTracerConfiguration.DEFAULT);
+	}
+
+	/**
+	 * Wraps a tracer in a tracer which will provide contextual JFR events, as specified by the
+	 * configuration.
+	 *
+	 * @param delegate
+	 *            the tracer responsible for the normal open tracing work.
+	 * @param configuration
+	 *            the configuration controlling which events are recorded.
+	 * @return the wrapped tracer to use.
+	 */
+	public static Tracer create(Tracer delegate, JfrTracerConfiguration configuration) {
 
 		LOG.info("Using DelegatingJfrTracer to capture contextual information into JFR.");
 
@@ -50,6 +68,19 @@ public final class JfrTracerFactory {
 			throw new IllegalArgumentException("You may not wrap a jfr tracer!");
 		}
 
-		return new TracerWrapper(delegate);
+		return new TracerWrapper(delegate, requireNonNull(configuration));
+	}
+
+	/**
+	 * Waits until the span events of the spans finished so far have been committed to the
+	 * recordings. Span events are committed by a background thread, so call this before dumping a
+	 * recording that should include the latest spans.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait.
+	 * @return true if the span events were committed, false on timeout.
+	 */
+	public static boolean flushSpanEvents(Duration timeout) {
+		return JfrEmitterFactory.flushSpanEvents(timeout.toNanos());
 	}
 }
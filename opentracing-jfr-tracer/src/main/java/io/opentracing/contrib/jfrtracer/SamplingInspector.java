@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer;
+
+import io.opentracing.SpanContext;
+
+/**
+ * Service provider interface for reading the sampling decision the delegate tracer has made for a
+ * span, so that the JFR events can follow it, see
+ * {@link JfrTracerConfiguration.Builder#followDelegateSampling(boolean)}.
+ * <p>
+ * The decisions of Jaeger and Brave, and of any span context with a public {@code isSampled()} or
+ * {@code sampled()} method, are read without any inspector. Inspectors for other tracers can be
+ * added to the configuration, or registered with the {@link java.util.ServiceLoader} in
+ * {@code META-INF/services/io.opentracing.contrib.jfrtracer.SamplingInspector}. Inspectors are asked
+ * before the built-in detection, in the order they were added, followed by the ones found by the
+ * service loader.
+ */
+public interface SamplingInspector {
+	/**
+	 * The sampling decision for a span.
+	 */
+	enum Decision {
+		SAMPLED, NOT_SAMPLED, UNKNOWN
+	}
+
+	/**
+	 * @param context
+	 *            the context of a span created by the delegate tracer.
+	 * @return the sampling decision of the delegate tracer, or {@link Decision#UNKNOWN} if the
+	 *         inspector does not know about this kind of context.
+	 */
+	Decision inspect(SpanContext context);
+}
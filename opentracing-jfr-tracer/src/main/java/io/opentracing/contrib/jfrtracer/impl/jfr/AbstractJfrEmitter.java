@@ -17,16 +17,9 @@ package io.opentracing.contrib.jfrtracer.impl.jfr;
 
 import java.util.logging.Logger;
 
-import io.opentracing.Span;
-
 /**
  * Abstract super class for emitters.
  */
-abstract class AbstractJfrEmitter implements JfrEmitter {
+abstract class AbstractJfrEmitter {
 	static final Logger LOGGER = Logger.getLogger(JfrScopeEmitterImpl.class.getName());
-	protected Span span;
-
-	AbstractJfrEmitter(Span span) {
-		this.span = span;
-	}
 }
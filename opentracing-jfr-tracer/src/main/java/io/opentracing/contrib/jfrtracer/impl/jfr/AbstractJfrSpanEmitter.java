@@ -15,28 +15,100 @@
  */
 package io.opentracing.contrib.jfrtracer.impl.jfr;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-
-import io.opentracing.Span;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
 
 /**
- * Abstract super class for span emitters.
+ * Abstract super class for span emitters. The span emitters keep no state of their own, all of it
+ * lives in the {@link JfrSpan}.
+ * <p>
+ * The event of a span is begun and ended on the threads starting and finishing the span, so that
+ * it carries the time stamps of both. Once finished, the span is queued once, and the thread
+ * emitting the events fills in the ids and commits the event.
  */
 abstract class AbstractJfrSpanEmitter extends AbstractJfrEmitter {
+	/**
+	 * Number of slots in the span event queue. Rounded up to the next power of two.
+	 */
+	static final int QUEUE_SIZE = Integer.getInteger("io.opentracing.contrib.jfrtracer.queueSize", 1024);
+
+	/**
+	 * Maximum number of span events the consumer thread processes in one go.
+	 */
+	static final int BATCH_SIZE = Integer.getInteger("io.opentracing.contrib.jfrtracer.batchSize", 64);
+
+	/**
+	 * What to do with span events when the queue is full.
+	 */
+	static final BackpressurePolicy POLICY = getPolicy("io.opentracing.contrib.jfrtracer.queuePolicy");
+
+	/**
+	 * How long to wait for room in the queue, in milliseconds, with the block policy.
+	 */
+	static final long BLOCK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(Long.getLong("io.opentracing.contrib.jfrtracer.queueBlockTimeout", 10));
+
+	/**
+	 * Maximum number of idle span events kept for reuse.
+	 */
+	static final int POOL_SIZE = QUEUE_SIZE;
+
+	private static final AtomicIntegerFieldUpdater<JfrSpan> STARTED = AtomicIntegerFieldUpdater
+			.newUpdater(JfrSpan.class, "started");
+
+	/**
+	 * Sets up the threshold of the span, if there is one to check against. The emitter marks the
+	 * span as started once its event has been begun.
+	 *
+	 * @param thresholdNanos
+	 *            the minimum duration of the span for its event to be recorded, 0 to record all.
+	 */
+	static void startTiming(JfrSpan span, long thresholdNanos) {
+		span.thresholdDeadline = thresholdNanos > 0 ? System.nanoTime() + thresholdNanos : 0;
+	}
+
+	/**
+	 * Marks the span as finished. Only one of the threads finishing the same span at once gets to
+	 * end its event, which is then released to the pool exactly once.
+	 *
+	 * @return false if the span was never started, or has already been finished.
+	 */
+	static boolean finishTiming(JfrSpan span) {
+		return STARTED.compareAndSet(span, 1, 0);
+	}
+
+	/**
+	 * @return true if the span was shorter than the threshold, and should not be recorded.
+	 */
+	static boolean isBelowThreshold(JfrSpan span) {
+		return span.thresholdDeadline != 0 && System.nanoTime() - span.thresholdDeadline < 0;
+	}
+
+	/**
+	 * Creates the queue used to hand span events over to the thread emitting them.
+	 *
+	 * @param commit
+	 *            receives the finished spans, with their ended events, on the thread emitting them.
+	 * @param discard
+	 *            receives the spans whose events were dropped, to release the events.
+	 * @return the queue.
+	 */
+	static SpanEventQueue createQueue(Consumer<JfrSpan> commit, Consumer<JfrSpan> discard) {
+		return new SpanEventQueue(QUEUE_SIZE, BATCH_SIZE, "JfrTracer Span Events", POLICY, BLOCK_TIMEOUT_NANOS, commit,
+				discard);
+	}
 
-	protected final static ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, Long.MAX_VALUE,
-			TimeUnit.NANOSECONDS, new ArrayBlockingQueue<Runnable>(50), (r) -> {
-				Thread thread = new Thread(r, "JfrTracer Span Events");
-				thread.setDaemon(true);
-				return thread;
-			}, (r, e) -> {
-				// Seems very unlikely to happen, but just to be sure...
-				LOGGER.warning("Span Event queue full - dropped span event");
-			});
-
-	AbstractJfrSpanEmitter(Span span) {
-		super(span);
+	private static BackpressurePolicy getPolicy(String property) {
+		String name = System.getProperty(property);
+		if (name == null) {
+			return BackpressurePolicy.DROP_NEWEST;
+		}
+		try {
+			return BackpressurePolicy.fromName(name);
+		} catch (IllegalArgumentException e) {
+			LOGGER.warning("Unknown span event queue policy " + name + " - using drop-newest");
+			return BackpressurePolicy.DROP_NEWEST;
+		}
 	}
 }
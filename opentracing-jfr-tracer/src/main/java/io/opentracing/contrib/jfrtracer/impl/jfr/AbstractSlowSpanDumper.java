@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+
+/**
+ * Dumps the recorded data of the last moments when a span lasts longer than the slow span limit
+ * of its operation.
+ * <p>
+ * Only one dump is in progress at a time, at most one dump is written per dump interval, and a
+ * trace is only dumped once, so that a burst of slow spans results in a single dump. The dumps are
+ * written by a daemon thread shared by all tracers, {@value #DELAY_MILLIS} ms after the slow span
+ * finished, so that the event of the span itself has been committed, and only the latest dumps
+ * are kept.
+ */
+abstract class AbstractSlowSpanDumper {
+	static final Logger LOGGER = AbstractJfrEmitter.LOGGER;
+	static final String FILE_PREFIX = "slow-span-";
+	static final String FILE_SUFFIX = ".jfr";
+
+	private static final long DELAY_MILLIS = 1000;
+	private static final int RECENT_TRACES = 16;
+	private static final int MAX_OPERATION_NAME_LENGTH = 64;
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+	private final JfrTracerConfiguration configuration;
+	private final long intervalNanos;
+	private final AtomicBoolean dumping = new AtomicBoolean();
+	// Only accessed by the thread that set dumping
+	private final String[] recentTraceIds = new String[RECENT_TRACES];
+	private int nextRecentTraceId;
+	private volatile long lastDump;
+
+	AbstractSlowSpanDumper(JfrTracerConfiguration configuration) {
+		this.configuration = configuration;
+		this.intervalNanos = configuration.getSlowSpanDumpInterval().toNanos();
+		this.lastDump = System.nanoTime() - intervalNanos;
+	}
+
+	/**
+	 * Holds the thread writing the dumps, created once the first dump is due.
+	 */
+	private static final class Executor {
+		static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "JfrTracer Slow Span Dumps");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @return true if anything is recorded that can be dumped.
+	 */
+	abstract boolean isRecording();
+
+	/**
+	 * Dumps the recorded data.
+	 *
+	 * @param file
+	 *            the file to dump to.
+	 * @param maxAge
+	 *            how far back in time the dump should reach.
+	 * @return true if the file was written, false if there was nothing to dump.
+	 */
+	abstract boolean dump(Path file, Duration maxAge) throws IOException;
+
+	/**
+	 * Starts timing a span, if a recording is running and its operation has a slow span limit.
+	 *
+	 * @param span
+	 *            the span being started.
+	 */
+	void startSpan(JfrSpan span) {
+		if (!isRecording()) {
+			return;
+		}
+		long limit = configuration.getSlowSpanLimitNanos(span.getOperationName());
+		if (limit > 0) {
+			span.slowSpanDeadline = System.nanoTime() + limit;
+		}
+	}
+
+	/**
+	 * Schedules a dump if the span lasted longer than its slow span limit, and no other dump is
+	 * due.
+	 *
+	 * @param span
+	 *            the span being finished.
+	 */
+	void finishSpan(JfrSpan span) {
+		long deadline = span.slowSpanDeadline;
+		if (deadline == 0) {
+			return;
+		}
+		span.slowSpanDeadline = 0;
+		long now = System.nanoTime();
+		if (now - deadline < 0 || now - lastDump < intervalNanos) {
+			return;
+		}
+		String traceId = span.getTraceId();
+		if (!dumping.compareAndSet(false, true)) {
+			// The dump in progress covers this span as well
+			return;
+		}
+		if (isRecent(traceId)) {
+			dumping.set(false);
+			return;
+		}
+		lastDump = now;
+		recentTraceIds[nextRecentTraceId] = traceId;
+		nextRecentTraceId = (nextRecentTraceId + 1) % RECENT_TRACES;
+		String operationName = span.getOperationName();
+		long durationNanos = now - deadline + configuration.getSlowSpanLimitNanos(operationName);
+		Executor.INSTANCE.schedule(() -> write(operationName, traceId, durationNanos), DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private boolean isRecent(String traceId) {
+		for (String recent : recentTraceIds) {
+			if (traceId.equals(recent)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void write(String operationName, String traceId, long durationNanos) {
+		try {
+			Path directory = configuration.getSlowSpanDumpDirectory();
+			Files.createDirectories(directory);
+			Path file = directory.resolve(fileName(operationName, traceId));
+			if (dump(file, configuration.getSlowSpanDumpAge())) {
+				LOGGER.info(String.format("Span %s of trace %s took %d ms, dumped the recording to %s", operationName,
+						traceId, TimeUnit.NANOSECONDS.toMillis(durationNanos), file));
+				deleteOldDumps(directory);
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Failed to dump the recording for a slow span", e);
+		} finally {
+			dumping.set(false);
+		}
+	}
+
+	private static String fileName(String operationName, String traceId) {
+		StringBuilder name = new StringBuilder(FILE_PREFIX);
+		name.append(LocalDateTime.now(ZoneOffset.UTC).format(TIMESTAMP)).append('-');
+		int length = Math.min(operationName.length(), MAX_OPERATION_NAME_LENGTH);
+		for (int i = 0; i < length; i++) {
+			char c = operationName.charAt(i);
+			name.append(Character.isLetterOrDigit(c) || c == '.' || c == '_' ? c : '_');
+		}
+		return name.append('-').append(traceId).append(FILE_SUFFIX).toString();
+	}
+
+	/**
+	 * Deletes the oldest dumps beyond the dump count. The file names start with the time stamp, so
+	 * they sort from the oldest to the newest.
+	 */
+	private void deleteOldDumps(Path directory) throws IOException {
+		List<Path> dumps = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+			for (Path file : files) {
+				dumps.add(file);
+			}
+		}
+		Collections.sort(dumps);
+		for (int i = 0; i < dumps.size() - configuration.getSlowSpanDumpCount(); i++) {
+			Files.deleteIfExists(dumps.get(i));
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Samples the stack traces of the threads with an active scope of a sampled span, so that only the
+ * traced work is profiled, however short the sampling period.
+ * <p>
+ * The scope stacks keep track of the span of their innermost active scope in a
+ * {@link SampledThread}, which is registered with the sampler while the samples are recorded. A
+ * daemon thread then takes the stack traces of all registered threads with a sampled span once per
+ * period, at a single safepoint, and emits a sample for every thread that is still in the same
+ * span. Virtual threads are sampled one at a time. Threads that died in a scope are pruned every
+ * period, whether the samples are recorded or not. The tracers sampling at the same period share
+ * one sampler.
+ * <p>
+ * The safepoint stops every thread in the JVM, not only the sampled ones, which is why the
+ * configuration enforces a minimum period. The samples only carry the id of their stack trace.
+ * The text of a stack trace is emitted in an event of its own the first time it is sampled, and
+ * again every {@value #STACK_TRACE_REFRESH_SECONDS} seconds, so that a dump of the last part of a
+ * recording still holds it. The stack traces are also emitted again once a recording is started.
+ */
+abstract class AbstractWallClockSampler {
+	static final int MAX_STACK_DEPTH = 64;
+	static final int STACK_TRACE_REFRESH_SECONDS = 10;
+	private static final long STACK_TRACE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(STACK_TRACE_REFRESH_SECONDS);
+	// Bounds the memory of the emitted stack traces, which are all emitted again when exceeded
+	private static final int MAX_EMITTED_STACK_TRACES = 4096;
+
+	private final long periodNanos;
+	private final Set<SampledThread> threads = ConcurrentHashMap.newKeySet();
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	// Only used by the sampling thread
+	private final List<SampledThread> sampled = new ArrayList<>();
+	private final List<Thread> sampledThreads = new ArrayList<>();
+	private final List<SpanInfo> sampledSpans = new ArrayList<>();
+	private final Set<Long> emittedStackTraces = new HashSet<>();
+	private long emittedSince;
+	private long emittedRecordings;
+
+	AbstractWallClockSampler(long periodNanos) {
+		this.periodNanos = periodNanos;
+		this.emittedSince = System.nanoTime();
+	}
+
+	/**
+	 * @return true if the samples are currently being recorded.
+	 */
+	abstract boolean isEventEnabled();
+
+	/**
+	 * Emits a sample.
+	 *
+	 * @param thread
+	 *            the sampled thread.
+	 * @param span
+	 *            the span of the innermost active scope of the thread.
+	 * @param state
+	 *            the state of the thread when sampled.
+	 * @param stackTraceId
+	 *            the id of the stack trace of the thread, see {@link #emitStackTrace}.
+	 * @param binaryIds
+	 *            true if the ids of the span are to be recorded in binary form.
+	 */
+	abstract void emit(Thread thread, SpanInfo span, Thread.State state, long stackTraceId, boolean binaryIds);
+
+	/**
+	 * Emits the text of a stack trace, for the samples referring to it by its id.
+	 *
+	 * @param stackTraceId
+	 *            the id of the stack trace.
+	 * @param stackTrace
+	 *            the stack trace, at most {@value #MAX_STACK_DEPTH} frames deep.
+	 */
+	abstract void emitStackTrace(long stackTraceId, StackTraceElement[] stackTrace);
+
+	/**
+	 * @return the number of recordings started so far, or 0 if not known.
+	 */
+	long startedRecordings() {
+		return 0;
+	}
+
+	/**
+	 * Starts the sampling thread.
+	 */
+	void start() {
+		Thread thread = new Thread(this::run, "JfrTracer Wall Clock Sampler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @param binaryIds
+	 *            true if the ids of the sampled spans are to be recorded in binary form.
+	 * @return a new sampling state for a scope stack.
+	 */
+	SampledThread createSampledThread(boolean binaryIds) {
+		return new SampledThread(this, binaryIds);
+	}
+
+	void register(SampledThread thread) {
+		threads.add(thread);
+	}
+
+	void unregister(SampledThread thread) {
+		threads.remove(thread);
+	}
+
+	/**
+	 * @return the number of threads registered for sampling.
+	 */
+	int registeredThreads() {
+		return threads.size();
+	}
+
+	private void run() {
+		long next = System.nanoTime();
+		for (;;) {
+			next += periodNanos;
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			} else {
+				// Fell behind, so skip the missed samples rather than catching up
+				next = System.nanoTime();
+			}
+			if (Thread.interrupted()) {
+				return;
+			}
+			try {
+				sample(isEventEnabled());
+			} catch (RuntimeException e) {
+				AbstractJfrEmitter.LOGGER.log(Level.WARNING, "Failed to sample the threads in scopes", e);
+			}
+		}
+	}
+
+	/**
+	 * Prunes the threads that died in a scope, and samples the others if enabled.
+	 */
+	@SuppressWarnings("deprecation")
+	void sample(boolean enabled) {
+		for (Iterator<SampledThread> iterator = threads.iterator(); iterator.hasNext();) {
+			SampledThread sampledThread = iterator.next();
+			// Read the span first, the thread may be replaced by the next owner of a pooled stack
+			SpanInfo span = sampledThread.span;
+			Thread thread = sampledThread.thread;
+			if (!thread.isAlive()) {
+				iterator.remove();
+			} else if (enabled && span != null) {
+				sampled.add(sampledThread);
+				sampledThreads.add(thread);
+				sampledSpans.add(span);
+			}
+		}
+		if (!enabled) {
+			emittedStackTraces.clear();
+		}
+		if (sampled.isEmpty()) {
+			return;
+		}
+		expireEmittedStackTraces();
+		long[] ids = new long[sampled.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = sampledThreads.get(i).getId();
+		}
+		ThreadInfo[] infos = threadBean.getThreadInfo(ids, MAX_STACK_DEPTH);
+		for (int i = 0; i < ids.length; i++) {
+			Thread thread = sampledThreads.get(i);
+			StackTraceElement[] stackTrace;
+			Thread.State state;
+			if (infos[i] != null) {
+				stackTrace = infos[i].getStackTrace();
+				state = infos[i].getThreadState();
+			} else {
+				// Virtual threads are not known to the thread bean
+				stackTrace = thread.getStackTrace();
+				state = thread.getState();
+			}
+			SpanInfo span = sampledSpans.get(i);
+			// Skip threads that left the span while being sampled
+			if (sampled.get(i).span == span && sampled.get(i).thread == thread && stackTrace.length > 0) {
+				long stackTraceId = stackTraceId(stackTrace);
+				if (emittedStackTraces.add(stackTraceId)) {
+					emitStackTrace(stackTraceId, stackTrace);
+				}
+				emit(thread, span, state, stackTraceId, sampled.get(i).binaryIds);
+			}
+		}
+		sampled.clear();
+		sampledThreads.clear();
+		sampledSpans.clear();
+	}
+
+	private void expireEmittedStackTraces() {
+		long now = System.nanoTime();
+		long recordings = startedRecordings();
+		if (now - emittedSince > STACK_TRACE_REFRESH_NANOS || recordings != emittedRecordings
+				|| emittedStackTraces.size() > MAX_EMITTED_STACK_TRACES) {
+			emittedStackTraces.clear();
+			emittedSince = now;
+			emittedRecordings = recordings;
+		}
+	}
+
+	/**
+	 * @return a 64 bit hash of the frames of a stack trace, at most {@value #MAX_STACK_DEPTH} deep.
+	 */
+	static long stackTraceId(StackTraceElement[] stackTrace) {
+		int depth = Math.min(stackTrace.length, MAX_STACK_DEPTH);
+		long hash = depth;
+		for (int i = 0; i < depth; i++) {
+			hash = TraceIdHash.mix(hash + stackTrace[i].hashCode());
+		}
+		return hash;
+	}
+
+	/**
+	 * Formats a stack trace, with the top frame first and one frame per line.
+	 */
+	static String format(StackTraceElement[] stackTrace) {
+		int depth = Math.min(stackTrace.length, MAX_STACK_DEPTH);
+		StringBuilder builder = new StringBuilder(depth * 64);
+		for (int i = 0; i < depth; i++) {
+			if (i > 0) {
+				builder.append('\n');
+			}
+			builder.append(stackTrace[i]);
+		}
+		return builder.toString();
+	}
+}
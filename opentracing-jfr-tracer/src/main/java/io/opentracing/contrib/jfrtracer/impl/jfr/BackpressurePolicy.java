@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.Locale;
+
+/**
+ * What to do with a span event when the span event queue is full.
+ */
+enum BackpressurePolicy {
+	/**
+	 * Drop the event being queued. Never blocks.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Drop the oldest event in the queue to make room. Never blocks.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Wait for room in the queue, up to a timeout, and then drop the event being queued.
+	 */
+	BLOCK,
+
+	/**
+	 * Once the queue is more than half full, only keep the events of a shrinking fraction of the
+	 * traces, picked from a hash of the trace id so that the kept traces stay complete. Never
+	 * blocks.
+	 */
+	SAMPLE;
+
+	/**
+	 * @param name
+	 *            the name of the policy, e.g. drop-oldest.
+	 * @return the policy.
+	 * @throws IllegalArgumentException
+	 *             if there is no policy by that name.
+	 */
+	static BackpressurePolicy fromName(String name) {
+		return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return the name of the policy, as used in the configuration.
+	 */
+	String getName() {
+		return name().replace('_', '-').toLowerCase(Locale.ROOT);
+	}
+}
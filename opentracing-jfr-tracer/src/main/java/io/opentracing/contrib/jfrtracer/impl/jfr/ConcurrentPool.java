@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free pool of reusable objects, which may be taken by one thread and returned by
+ * another. Taking and returning an object probes a few random slots. If no object, or no free
+ * slot, is found the caller simply creates a new object, or lets the returned one be collected.
+ * Since objects that could not be pooled are created anew, the pool fills up until most of the
+ * probes succeed.
+ *
+ * @param <T>
+ *            the type of the pooled objects.
+ */
+public final class ConcurrentPool<T> {
+	private static final int PROBES = 8;
+
+	private final AtomicReferenceArray<T> slots;
+	private final int mask;
+
+	/**
+	 * @param capacity
+	 *            the requested number of pooled objects. Will be rounded up to the next power of
+	 *            two.
+	 */
+	public ConcurrentPool(int capacity) {
+		int size = 1;
+		while (size < capacity && size < 1 << 30) {
+			size <<= 1;
+		}
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * @return a pooled object, or null if none was found.
+	 */
+	public T take() {
+		int index = ThreadLocalRandom.current().nextInt();
+		for (int i = 0; i < PROBES; i++) {
+			int slot = (index + i) & mask;
+			if (slots.get(slot) != null) {
+				T element = slots.getAndSet(slot, null);
+				if (element != null) {
+					return element;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns an object to the pool.
+	 *
+	 * @param element
+	 *            the object, which must not be used by the caller anymore.
+	 * @return true if the object was pooled, false if the pool was full.
+	 */
+	public boolean offer(T element) {
+		int index = ThreadLocalRandom.current().nextInt();
+		for (int i = 0; i < PROBES; i++) {
+			int slot = (index + i) & mask;
+			if (slots.get(slot) == null && slots.compareAndSet(slot, null, element)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
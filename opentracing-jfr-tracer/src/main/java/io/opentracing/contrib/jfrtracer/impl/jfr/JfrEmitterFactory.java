@@ -15,34 +15,136 @@
  */
 package io.opentracing.contrib.jfrtracer.impl.jfr;
 
-import io.opentracing.Span;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
 
 /**
- * For creating JfrEmitters.
+ * For creating scope emitters and emitting span events. While span events are not being recorded,
+ * starting and finishing a span leaves its {@link JfrSpan} state untouched, and the reusable scope
+ * emitters skip the event altogether, so that an idle tracer adds next to nothing to the traced
+ * code. Spans that are not to be recorded, and span events exceeding the rate limits of the
+ * configuration, are skipped the same way.
+ * <p>
+ * Open spans are only tracked while the open span event is enabled, and slow spans are only timed
+ * while a recording is running, so that these opt-in features cost an idle tracer a volatile read
+ * per span.
  */
 public class JfrEmitterFactory {
+	// The sampling threads, shared by the tracers sampling at the same period
+	private static final Map<Long, AbstractWallClockSampler> WALL_CLOCK_SAMPLERS = new ConcurrentHashMap<>();
+
+	private final JfrTracerConfiguration configuration;
+	private final OperationRateLimiter rateLimiter;
+	private final AbstractSlowSpanDumper slowSpanDumper;
+	private final AbstractWallClockSampler wallClockSampler;
+	private final long openSpanLeakLimitNanos;
+
+	public JfrEmitterFactory() {
+		this(JfrTracerConfiguration.DEFAULT);
+	}
+
+	/**
+	 * @param configuration
+	 *            the configuration of the tracer the emitters are created for.
+	 */
+	public JfrEmitterFactory(JfrTracerConfiguration configuration) {
+		this.configuration = configuration;
+		this.rateLimiter = configuration.hasRateLimits() ? new OperationRateLimiter(configuration) : null;
+		this.slowSpanDumper = configuration.hasSlowSpanLimits() ? new SlowSpanDumperImpl(configuration) : null;
+		this.wallClockSampler = configuration.getWallClockSamplingPeriod().isZero() ? null
+				: WALL_CLOCK_SAMPLERS.computeIfAbsent(configuration.getWallClockSamplingPeriod().toNanos(),
+						WallClockSamplerImpl::start);
+		this.openSpanLeakLimitNanos = configuration.getOpenSpanLeakLimit().toNanos();
+		if (openSpanLeakLimitNanos > 0) {
+			OpenSpanEmitterImpl.register();
+		}
+		JfrHealthEmitterImpl.register();
+	}
+
 	/**
 	 * Thread locally emitted events for scopes. Note that the calls to
-	 * {@link JfrEmitter#start(String)} and {@link JfrEmitter#close()} must be started and closed in
-	 * the same thread.
-	 * 
+	 * {@link JfrScopeEmitter#start(SpanInfo)} and {@link JfrScopeEmitter#close()} must
+	 * be made in the thread owning the emitter.
+	 *
+	 * @return a reusable emitter that can be used to emit the scope information to JFR
+	 */
+	public JfrScopeEmitter createScopeEmitter() {
+		return new JfrScopeEmitterImpl(configuration);
+	}
+
+	/**
+	 * @return the state through which a scope stack tells the wall clock sampler about the span of
+	 *         its innermost active scope, or null if the threads in scopes are not sampled.
+	 */
+	public SampledThread createSampledThread() {
+		return wallClockSampler == null ? null : wallClockSampler.createSampledThread(configuration.isBinaryIds());
+	}
+
+	/**
+	 * Starts the event for a span. Note that span events are posted to a separate thread, and can
+	 * be started/finished in different threads.
+	 *
 	 * @param span
 	 *            the span containing the information to be recorded.
-	 * @return an emitter that can be used to emit the information to JFR
 	 */
-	public JfrEmitter createScopeEmitter(Span span) {
-		return new JfrScopeEmitterImpl(span);
+	public void startSpan(JfrSpan span) {
+		if (slowSpanDumper != null) {
+			slowSpanDumper.startSpan(span);
+		}
+		if (openSpanLeakLimitNanos > 0 && span.isRecorded() && OpenSpanEmitterImpl.isEventEnabled()) {
+			OpenSpanRegistry.INSTANCE.register(span, openSpanLeakLimitNanos, configuration.isBinaryIds());
+		}
+		if (!JfrSpanEmitterImpl.isEventEnabled()) {
+			return;
+		}
+		if (!span.isRecorded()) {
+			TracerStatistics.SPANS_SAMPLED_OUT.increment();
+			return;
+		}
+		if (rateLimiter != null && !rateLimiter.tryAcquire(span.getOperationName())) {
+			TracerStatistics.SPANS_FILTERED.increment();
+			return;
+		}
+		span.binaryIds = configuration.isBinaryIds();
+		span.synchronous = configuration.isSynchronousSpans();
+		JfrSpanEmitterImpl.start(span, configuration.getThresholdNanos(span.getOperationName()));
 	}
 
 	/**
-	 * Events emitted for spans. Note that these are posted to a separate thread, and can be
-	 * started/ended in different threads.
-	 * 
+	 * Finishes the event for a span, if one was started.
+	 *
 	 * @param span
-	 *            the span containing the information to be recorded.
-	 * @return an emitter that can be used to emit the information
+	 *            the span that was finished.
+	 */
+	public void finishSpan(JfrSpan span) {
+		JfrSpanEmitterImpl.finish(span);
+		OpenSpanRegistry.INSTANCE.unregister(span);
+		if (slowSpanDumper != null) {
+			slowSpanDumper.finishSpan(span);
+		}
+	}
+
+	/**
+	 * Waits until the events of the spans finished before the call have been committed to the
+	 * recordings.
+	 *
+	 * @param timeoutNanos
+	 *            the maximum time to wait.
+	 * @return true if the events were committed, false on timeout.
+	 */
+	public static boolean flushSpanEvents(long timeoutNanos) {
+		SpanEventQueue queue = JfrSpanEmitterImpl.getQueue();
+		return queue == null || queue.flush(timeoutNanos);
+	}
+
+	/**
+	 * @return the number of span events suppressed by the rate limits so far, per operation name.
+	 *         Only operations that have had events suppressed are included.
 	 */
-	public JfrEmitter createSpanEmitter(Span span) {
-		return new JfrSpanEmitterImpl(span);
+	public Map<String, Long> getSuppressedSpanEvents() {
+		return rateLimiter == null ? Collections.emptyMap() : rateLimiter.getSuppressed();
 	}
 }
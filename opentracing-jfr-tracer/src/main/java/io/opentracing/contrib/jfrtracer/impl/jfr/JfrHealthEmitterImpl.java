@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.TimeUnit;
+
+import com.oracle.jrockit.jfr.ContentType;
+import com.oracle.jrockit.jfr.EventDefinition;
+import com.oracle.jrockit.jfr.EventToken;
+import com.oracle.jrockit.jfr.InstantEvent;
+import com.oracle.jrockit.jfr.ValueDefinition;
+
+/**
+ * This is the JDK 8 implementation of the tracer health event. For the JDK 11 and later
+ * implementation, see src/main/java11.
+ * <p>
+ * JDK 8 has no supported way of registering periodic events, so a daemon thread commits the event
+ * once every {@value #PERIOD_MILLIS} ms, while it is enabled.
+ */
+@SuppressWarnings("deprecation")
+final class JfrHealthEmitterImpl {
+	private static final long PERIOD_MILLIS = 1000;
+	private static final EventToken HEALTH_EVENT_TOKEN;
+
+	static {
+		HEALTH_EVENT_TOKEN = JfrScopeEmitterImpl.register(HealthEvent.class);
+		if (HEALTH_EVENT_TOKEN != null) {
+			Thread thread = new Thread(JfrHealthEmitterImpl::run, "JfrTracer Health");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private JfrHealthEmitterImpl() {
+	}
+
+	/**
+	 * Registers the health event, if not already done.
+	 */
+	static void register() {
+		// Done by the class initializer
+	}
+
+	private static void run() {
+		HealthEvent event = new HealthEvent(HEALTH_EVENT_TOKEN);
+		for (;;) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(PERIOD_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (HEALTH_EVENT_TOKEN.isEnabled()) {
+				emit(event);
+			}
+		}
+	}
+
+	private static void emit(HealthEvent event) {
+		SpanEventQueue queue = JfrSpanEmitterImpl.getQueue();
+		event.spansEmitted = TracerStatistics.SPANS_EMITTED.sum();
+		event.spansDropped = queue.dropped();
+		event.spansSampledOut = TracerStatistics.SPANS_SAMPLED_OUT.sum() + queue.sampledOut();
+		event.spansFiltered = TracerStatistics.SPANS_FILTERED.sum();
+		event.openSpans = TracerStatistics.OPEN_SPANS.sum();
+		event.spansLeaked = TracerStatistics.SPANS_LEAKED.sum();
+		event.scopesEmitted = TracerStatistics.SCOPES_EMITTED.sum();
+		event.scopesSampledOut = TracerStatistics.SCOPES_SAMPLED_OUT.sum();
+		event.scopesFiltered = TracerStatistics.SCOPES_FILTERED.sum();
+		event.queueDepth = queue.size();
+		event.queueCapacity = queue.capacity();
+		event.consumerLag = queue.lagNanos();
+		if (event.shouldWrite()) {
+			event.commit();
+		}
+	}
+
+	@EventDefinition(path = "opentracing/tracerhealth", name = "Tracer Health", description = "Statistics of the JFR tracer itself. The counts are totals since the start of the JVM", stacktrace = false, thread = false)
+	public static class HealthEvent extends InstantEvent {
+
+		@ValueDefinition(name = "Spans Emitted", description = "The number of span events committed")
+		private long spansEmitted;
+
+		@ValueDefinition(name = "Spans Dropped", description = "The number of span events dropped because the span event queue was full")
+		private long spansDropped;
+
+		@ValueDefinition(name = "Spans Sampled Out", description = "The number of span events not recorded because their traces were not sampled, or were sampled out while the queue was filling up")
+		private long spansSampledOut;
+
+		@ValueDefinition(name = "Spans Filtered", description = "The number of span events skipped by the thresholds or the rate limits")
+		private long spansFiltered;
+
+		@ValueDefinition(name = "Open Spans", description = "The number of recorded spans started, but not yet finished")
+		private long openSpans;
+
+		@ValueDefinition(name = "Spans Leaked", description = "The number of spans collected without having been finished, if open spans are tracked")
+		private long spansLeaked;
+
+		@ValueDefinition(name = "Scopes Emitted", description = "The number of scope events committed")
+		private long scopesEmitted;
+
+		@ValueDefinition(name = "Scopes Sampled Out", description = "The number of scope events not recorded because their traces were not sampled")
+		private long scopesSampledOut;
+
+		@ValueDefinition(name = "Scopes Filtered", description = "The number of scope events skipped by the thresholds")
+		private long scopesFiltered;
+
+		@ValueDefinition(name = "Queue Depth", description = "The number of span events waiting in the span event queue")
+		private int queueDepth;
+
+		@ValueDefinition(name = "Queue Capacity", description = "The number of slots in the span event queue")
+		private int queueCapacity;
+
+		@ValueDefinition(name = "Consumer Lag", description = "The time since the thread committing the span events last caught up with the queue", contentType = ContentType.Nanos)
+		private long consumerLag;
+
+		HealthEvent(EventToken eventToken) {
+			super(eventToken);
+		}
+
+		@SuppressWarnings("unused")
+		public long getSpansEmitted() {
+			return spansEmitted;
+		}
+
+		@SuppressWarnings("unused")
+		public long getSpansDropped() {
+			return spansDropped;
+		}
+
+		@SuppressWarnings("unused")
+		public long getSpansSampledOut() {
+			return spansSampledOut;
+		}
+
+		@SuppressWarnings("unused")
+		public long getSpansFiltered() {
+			return spansFiltered;
+		}
+
+		@SuppressWarnings("unused")
+		public long getOpenSpans() {
+			return openSpans;
+		}
+
+		@SuppressWarnings("unused")
+		public long getSpansLeaked() {
+			return spansLeaked;
+		}
+
+		@SuppressWarnings("unused")
+		public long getScopesEmitted() {
+			return scopesEmitted;
+		}
+
+		@SuppressWarnings("unused")
+		public long getScopesSampledOut() {
+			return scopesSampledOut;
+		}
+
+		@SuppressWarnings("unused")
+		public long getScopesFiltered() {
+			return scopesFiltered;
+		}
+
+		@SuppressWarnings("unused")
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		@SuppressWarnings("unused")
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		@SuppressWarnings("unused")
+		public long getConsumerLag() {
+			return consumerLag;
+		}
+	}
+}
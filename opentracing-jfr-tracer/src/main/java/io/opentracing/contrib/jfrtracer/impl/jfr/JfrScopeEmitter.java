@@ -16,21 +16,20 @@
 package io.opentracing.contrib.jfrtracer.impl.jfr;
 
 /**
- * Interface for something capable of emitting a JFR event.
+ * Interface for something capable of emitting the thread local JFR event for a scope. An instance
+ * belongs to a single thread, and is reused for any number of scope activations on that thread.
  */
-public interface JfrEmitter extends AutoCloseable {
+public interface JfrScopeEmitter extends AutoCloseable {
 	/**
-	 * Emits an event with the associated operation name.
-	 * 
-	 * @param parentId
-	 *            the id of the parent span.
-	 * @param operationName
-	 *            the operation to emit.
+	 * Starts the event for a scope activation.
+	 *
+	 * @param span
+	 *            the span being activated.
 	 */
-	void start(String parentId, String operationName);
+	void start(SpanInfo span);
 
 	/**
-	 * Finishes the event.
+	 * Finishes the event started by the last call to {@link #start(SpanInfo)}.
 	 */
 	@Override
 	public void close();
@@ -18,6 +18,7 @@ package io.opentracing.contrib.jfrtracer.impl.jfr;
 import java.net.URI;
 import java.util.logging.Level;
 
+import com.oracle.jrockit.jfr.ContentType;
 import com.oracle.jrockit.jfr.EventDefinition;
 import com.oracle.jrockit.jfr.EventToken;
 import com.oracle.jrockit.jfr.InstantEvent;
@@ -27,13 +28,17 @@ import com.oracle.jrockit.jfr.Producer;
 import com.oracle.jrockit.jfr.TimedEvent;
 import com.oracle.jrockit.jfr.ValueDefinition;
 
-import io.opentracing.Span;
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
 
 /**
  * This is the JDK 8 implementation. For the JDK 11 and later implementation, see src/main/java11.
+ * The event object is reused between activations.
+ * <p>
+ * The JDK 8 events have no custom settings, so recording the CPU time and the allocated bytes of
+ * the thread is switched on in the configuration of the tracer.
  */
 @SuppressWarnings({"deprecation"})
-final class JfrScopeEmitterImpl extends AbstractJfrEmitter {
+final class JfrScopeEmitterImpl implements JfrScopeEmitter {
 
 	private static final Producer PRODUCER;
 	private static final EventToken SCOPE_EVENT_TOKEN;
@@ -45,31 +50,82 @@ final class JfrScopeEmitterImpl extends AbstractJfrEmitter {
 		SCOPE_EVENT_TOKEN = register(ScopeEvent.class);
 	}
 
-	private ScopeEvent currentEvent;
-
-	JfrScopeEmitterImpl(Span span) {
-		super(span);
+	private final JfrTracerConfiguration configuration;
+	private final boolean threadResources;
+	private ScopeEvent event;
+	private boolean started;
+	private long thresholdNanos;
+	private long startNanos;
+	private long startCpuTime;
+	private long startAllocatedBytes;
+
+	JfrScopeEmitterImpl(JfrTracerConfiguration configuration) {
+		this.configuration = configuration;
+		this.threadResources = configuration.isScopeThreadResources() && ThreadResources.isAvailable();
 	}
 
 	@Override
 	public void close() {
-		if (currentEvent != null) {
-			if (currentEvent.shouldWrite()) {
-				currentEvent.end();
-				currentEvent.commit();
+		if (started) {
+			started = false;
+			if (thresholdNanos > 0 && System.nanoTime() - startNanos < thresholdNanos) {
+				TracerStatistics.SCOPES_FILTERED.increment();
+				return;
+			}
+			if (event.shouldWrite()) {
+				if (threadResources) {
+					event.cpuTime = ThreadResources.delta(startCpuTime, ThreadResources.cpuTime());
+					event.allocated = ThreadResources.delta(startAllocatedBytes, ThreadResources.allocatedBytes());
+				}
+				event.end();
+				event.commit();
+				TracerStatistics.SCOPES_EMITTED.increment();
+			} else {
+				TracerStatistics.SCOPES_FILTERED.increment();
 			}
-			currentEvent = null;
 		}
 	}
 
+	/**
+	 * @return true if scope events are currently being recorded.
+	 */
+	static boolean isEventEnabled() {
+		return SCOPE_EVENT_TOKEN != null && SCOPE_EVENT_TOKEN.isEnabled();
+	}
+
 	@Override
-	public void start(String parentId, String operationName) {
-		currentEvent = new ScopeEvent(SCOPE_EVENT_TOKEN);
-		currentEvent.operationName = operationName;
-		currentEvent.parentId = parentId;
-		currentEvent.traceId = span.context().toTraceId();
-		currentEvent.spanId = span.context().toSpanId();
-		currentEvent.begin();
+	public void start(SpanInfo span) {
+		if (!isEventEnabled()) {
+			return;
+		}
+		if (!span.isRecorded()) {
+			TracerStatistics.SCOPES_SAMPLED_OUT.increment();
+			return;
+		}
+		if (event == null) {
+			event = new ScopeEvent(SCOPE_EVENT_TOKEN);
+		}
+		event.operationName = span.getOperationName();
+		if (configuration.isBinaryIds()) {
+			event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+			event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+			event.binarySpanId = span.getBinarySpanId();
+			event.binaryParentId = span.getBinaryParentId();
+		} else {
+			event.parentId = span.getParentId();
+			event.traceId = span.getTraceId();
+			event.spanId = span.getSpanId();
+		}
+		thresholdNanos = configuration.getThresholdNanos(event.operationName);
+		if (thresholdNanos > 0) {
+			startNanos = System.nanoTime();
+		}
+		if (threadResources) {
+			startCpuTime = ThreadResources.cpuTime();
+			startAllocatedBytes = ThreadResources.allocatedBytes();
+		}
+		event.begin();
+		started = true;
 	}
 
 	@Override
@@ -87,10 +143,10 @@ final class JfrScopeEmitterImpl extends AbstractJfrEmitter {
 	static EventToken register(Class<? extends InstantEvent> clazz) {
 		try {
 			EventToken token = PRODUCER.addEvent(clazz);
-			LOGGER.fine("Registered EventType " + clazz.getName());
+			AbstractJfrEmitter.LOGGER.fine("Registered EventType " + clazz.getName());
 			return token;
 		} catch (InvalidEventDefinitionException | InvalidValueException e) {
-			LOGGER.log(Level.SEVERE, "Failed to register the event class " + clazz.getName()
+			AbstractJfrEmitter.LOGGER.log(Level.SEVERE, "Failed to register the event class " + clazz.getName()
 					+ ". Event will not be available. Please check your configuration.", e);
 		}
 		return null;
@@ -111,6 +167,24 @@ final class JfrScopeEmitterImpl extends AbstractJfrEmitter {
 		@ValueDefinition(name = "Parent Id")
 		private String parentId;
 
+		@ValueDefinition(name = "Binary Trace Id High", description = "The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@ValueDefinition(name = "Binary Trace Id Low", description = "The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@ValueDefinition(name = "Binary Span Id", description = "The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@ValueDefinition(name = "Binary Parent Id", description = "The parent span id, if ids are recorded in binary form")
+		private long binaryParentId;
+
+		@ValueDefinition(name = "CPU Time", description = "The CPU time of the thread while the scope was active, including nested scopes, if enabled", contentType = ContentType.Nanos)
+		private long cpuTime;
+
+		@ValueDefinition(name = "Allocated", description = "The bytes allocated by the thread while the scope was active, including nested scopes, if enabled", contentType = ContentType.Bytes)
+		private long allocated;
+
 		ScopeEvent(EventToken eventToken) {
 			super(eventToken);
 		}
@@ -134,5 +208,35 @@ final class JfrScopeEmitterImpl extends AbstractJfrEmitter {
 		public String getParentId() {
 			return parentId;
 		}
+
+		@SuppressWarnings("unused")
+		public long getBinaryTraceIdHigh() {
+			return binaryTraceIdHigh;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinaryTraceIdLow() {
+			return binaryTraceIdLow;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinarySpanId() {
+			return binarySpanId;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinaryParentId() {
+			return binaryParentId;
+		}
+
+		@SuppressWarnings("unused")
+		public long getCpuTime() {
+			return cpuTime;
+		}
+
+		@SuppressWarnings("unused")
+		public long getAllocated() {
+			return allocated;
+		}
 	}
 }
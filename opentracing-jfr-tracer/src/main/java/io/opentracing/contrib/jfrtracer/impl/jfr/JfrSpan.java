@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+/**
+ * A span as seen by the JFR layer, together with the state needed to emit its event. The span
+ * wrapper extends this class, so that the wrapper and the emitter state of a span are one and the
+ * same object. The state is only accessed by the {@link JfrEmitterFactory} and the span emitter.
+ */
+public abstract class JfrSpan implements SpanInfo {
+	// The System.nanoTime() the span must last until to be recorded, or 0 if there is no threshold
+	long thresholdDeadline;
+	// The System.nanoTime() after which the span triggers a slow span dump, or 0 if it does not
+	long slowSpanDeadline;
+	// The entry of the span in the open span registry, or null if not tracked
+	OpenSpanRegistry.OpenSpan openSpan;
+	// Whether the ids are recorded in binary form, as configured for the tracer of the span
+	boolean binaryIds;
+	// Whether the event is committed on the thread finishing the span, rather than queued
+	boolean synchronous;
+	// 1 once the event has been begun, atomically cleared by the one thread finishing the span
+	volatile int started;
+	// The event being recorded, begun and ended by the threads starting and finishing the span
+	Object event;
+}
@@ -20,52 +20,110 @@ import com.oracle.jrockit.jfr.EventToken;
 import com.oracle.jrockit.jfr.TimedEvent;
 import com.oracle.jrockit.jfr.ValueDefinition;
 
-import io.opentracing.Span;
-
 /**
  * This is the JDK 8 implementation for emitting Span events. For the JDK 11 and later
  * implementation, see src/main/java11.
+ * <p>
+ * The events are committed on a separate thread, and then returned to a pool shared by all
+ * threads.
  */
 @SuppressWarnings("deprecation")
 final class JfrSpanEmitterImpl extends AbstractJfrSpanEmitter {
 
 	private static final EventToken SPAN_EVENT_TOKEN;
+	private static final SpanEventQueue QUEUE;
+	private static final ConcurrentPool<SpanEvent> POOL = new ConcurrentPool<>(POOL_SIZE);
 
 	static {
 		SPAN_EVENT_TOKEN = JfrScopeEmitterImpl.register(SpanEvent.class);
+		QUEUE = createQueue(JfrSpanEmitterImpl::commit, JfrSpanEmitterImpl::discard);
 	}
 
-	private SpanEvent currentEvent;
+	private JfrSpanEmitterImpl() {
+	}
 
-	JfrSpanEmitterImpl(Span span) {
-		super(span);
+	/**
+	 * @return true if span events are currently being recorded.
+	 */
+	static boolean isEventEnabled() {
+		return SPAN_EVENT_TOKEN != null && SPAN_EVENT_TOKEN.isEnabled();
+	}
+
+	static void start(JfrSpan span, long thresholdNanos) {
+		SpanEvent event = POOL.take();
+		if (event == null) {
+			event = new SpanEvent(SPAN_EVENT_TOKEN);
+		}
+		event.startThread = Thread.currentThread();
+		startTiming(span, thresholdNanos);
+		event.begin();
+		span.event = event;
+		span.started = 1;
+		TracerStatistics.OPEN_SPANS.increment();
 	}
 
-	@Override
-	public void start(String parentId, String operationName) {
-		currentEvent = new SpanEvent(SPAN_EVENT_TOKEN);
-		if (currentEvent.getEventInfo().isEnabled()) {
-			currentEvent.operationName = operationName;
-			currentEvent.traceId = span.context().toTraceId();
-			currentEvent.spanId = span.context().toSpanId();
-			currentEvent.parentId = parentId;
-			currentEvent.startThread = Thread.currentThread();
-		}
-		EXECUTOR.execute(new BeginEventCommand(currentEvent));
+	static void finish(JfrSpan span) {
+		if (!finishTiming(span)) {
+			return;
+		}
+		TracerStatistics.OPEN_SPANS.decrement();
+		SpanEvent event = (SpanEvent) span.event;
+		event.end();
+		if (isBelowThreshold(span)) {
+			TracerStatistics.SPANS_FILTERED.increment();
+			release(span, event);
+			return;
+		}
+		event.endThread = Thread.currentThread();
+		QUEUE.offer(span);
 	}
 
-	@Override
-	public void close() {
-		if (currentEvent != null) {
-			currentEvent.endThread = Thread.currentThread();
-			EXECUTOR.execute(new EndEventCommand(currentEvent));
-			currentEvent = null;
+	private static void commit(JfrSpan span) {
+		SpanEvent event = (SpanEvent) span.event;
+		event.operationName = span.getOperationName();
+		// The event is reused, so the fields of the other id format are cleared
+		if (span.binaryIds) {
+			event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+			event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+			event.binarySpanId = span.getBinarySpanId();
+			event.binaryParentId = span.getBinaryParentId();
+			event.traceId = null;
+			event.spanId = null;
+			event.parentId = null;
+		} else {
+			event.traceId = span.getTraceId();
+			event.spanId = span.getSpanId();
+			event.parentId = span.getParentId();
+			event.binaryTraceIdHigh = 0;
+			event.binaryTraceIdLow = 0;
+			event.binarySpanId = 0;
+			event.binaryParentId = 0;
+		}
+		if (event.shouldWrite()) {
+			event.commit();
+			TracerStatistics.SPANS_EMITTED.increment();
+		} else {
+			TracerStatistics.SPANS_FILTERED.increment();
 		}
+		release(span, event);
+	}
+
+	/**
+	 * @return the queue handing the span events over to the thread committing them.
+	 */
+	static SpanEventQueue getQueue() {
+		return QUEUE;
 	}
 
-	@Override
-	public String toString() {
-		return "JDK 8 JFR Span Emitter";
+	private static void discard(JfrSpan span) {
+		release(span, (SpanEvent) span.event);
+	}
+
+	private static void release(JfrSpan span, SpanEvent event) {
+		span.event = null;
+		event.startThread = null;
+		event.endThread = null;
+		POOL.offer(event);
 	}
 
 	// Must be public for JFR to access it
@@ -84,6 +142,18 @@ final class JfrSpanEmitterImpl extends AbstractJfrSpanEmitter {
 		@ValueDefinition(name = "Parent Id")
 		private String parentId;
 
+		@ValueDefinition(name = "Binary Trace Id High", description = "The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@ValueDefinition(name = "Binary Trace Id Low", description = "The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@ValueDefinition(name = "Binary Span Id", description = "The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@ValueDefinition(name = "Binary Parent Id", description = "The parent span id, if ids are recorded in binary form")
+		private long binaryParentId;
+
 		@ValueDefinition(name = "Start Thread", description = "The thread initiating the span")
 		private Thread startThread;
 
@@ -110,49 +180,38 @@ final class JfrSpanEmitterImpl extends AbstractJfrSpanEmitter {
 		}
 
 		@SuppressWarnings("unused")
-		public Thread getStartThread() {
-			return startThread;
+		public long getBinaryTraceIdHigh() {
+			return binaryTraceIdHigh;
 		}
 
 		@SuppressWarnings("unused")
-		public Thread getEndThread() {
-			return endThread;
+		public long getBinaryTraceIdLow() {
+			return binaryTraceIdLow;
 		}
 
 		@SuppressWarnings("unused")
-		public String getOperationName() {
-			return operationName;
+		public long getBinarySpanId() {
+			return binarySpanId;
 		}
-	}
-
-	private static class EndEventCommand implements Runnable {
 
-		private final SpanEvent event;
-
-		EndEventCommand(SpanEvent event) {
-			this.event = event;
+		@SuppressWarnings("unused")
+		public long getBinaryParentId() {
+			return binaryParentId;
 		}
 
-		@Override
-		public void run() {
-			if (event.shouldWrite()) {
-				event.end();
-				event.commit();
-			}
+		@SuppressWarnings("unused")
+		public Thread getStartThread() {
+			return startThread;
 		}
-	}
-
-	private static class BeginEventCommand implements Runnable {
-
-		private final SpanEvent event;
 
-		BeginEventCommand(SpanEvent event) {
-			this.event = event;
+		@SuppressWarnings("unused")
+		public Thread getEndThread() {
+			return endThread;
 		}
 
-		@Override
-		public void run() {
-			event.begin();
+		@SuppressWarnings("unused")
+		public String getOperationName() {
+			return operationName;
 		}
 	}
 }
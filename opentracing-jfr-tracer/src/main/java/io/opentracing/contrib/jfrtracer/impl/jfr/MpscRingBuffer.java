@@ -0,0 +1,275 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded, lock-free, multi-producer/single-consumer ring buffer of preallocated slots. Producers
+ * claim a slot with a single CAS and never block; when the buffer is full the element is rejected.
+ * A dedicated daemon thread drains the buffer in batches and hands the elements to the
+ * {@link Handler}. Producers may also {@link #poll()} the oldest element, to make room for a newer
+ * one.
+ * <p>
+ * The slot sequencing follows Dmitry Vyukov's bounded queue, which means that a slow producer can
+ * only delay the consumer, never corrupt the queue.
+ *
+ * @param <E>
+ *            the type of the elements in the buffer.
+ */
+final class MpscRingBuffer<E> {
+	private static final Logger LOGGER = Logger.getLogger(MpscRingBuffer.class.getName());
+	private static final int SPINS_BEFORE_PARK = 100;
+	private static final long MAX_PARK_NANOS = 10_000_000;
+	private static final long FLUSH_PARK_NANOS = 100_000;
+
+	/**
+	 * Receives the elements drained by the consumer thread.
+	 */
+	interface Handler<E> {
+		/**
+		 * Called on the consumer thread for each drained element, in order.
+		 *
+		 * @param element
+		 *            the element.
+		 */
+		void onElement(E element);
+
+		/**
+		 * Called on the consumer thread between batches, and at least every 10 ms while the buffer
+		 * is empty.
+		 */
+		default void onTick() {
+		}
+	}
+
+	private static final class Slot<E> {
+		volatile long sequence;
+		E element;
+
+		Slot(long sequence) {
+			this.sequence = sequence;
+		}
+	}
+
+	private final Slot<E>[] slots;
+	private final int mask;
+	private final int batchSize;
+	private final Handler<E> handler;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+	private final Thread consumer;
+	// The position up to which all elements have been handled or evicted
+	private volatile long completed;
+	private volatile boolean waiting;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a new ring buffer. The consumer thread is started by {@link #start()}.
+	 *
+	 * @param capacity
+	 *            the requested number of slots. Will be rounded up to the next power of two.
+	 * @param batchSize
+	 *            the maximum number of elements the consumer will process before checking for
+	 *            new work again.
+	 * @param threadName
+	 *            the name of the consumer thread.
+	 * @param handler
+	 *            the handler that will process the elements on the consumer thread.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	MpscRingBuffer(int capacity, int batchSize, String threadName, Handler<E> handler) {
+		if (capacity < 1 || batchSize < 1) {
+			throw new IllegalArgumentException("Capacity and batch size must be positive");
+		}
+		int size = 1;
+		while (size < capacity && size < 1 << 30) {
+			size <<= 1;
+		}
+		this.slots = new Slot[size];
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot<>(i);
+		}
+		this.mask = size - 1;
+		this.batchSize = batchSize;
+		this.handler = handler;
+		this.consumer = new Thread(this::consume, threadName);
+		consumer.setDaemon(true);
+	}
+
+	/**
+	 * Starts the consumer thread. Kept out of the constructor, so that the handler has been fully
+	 * constructed before the consumer thread calls it back.
+	 */
+	void start() {
+		consumer.start();
+	}
+
+	/**
+	 * Offers an element to the buffer. Never blocks.
+	 *
+	 * @param element
+	 *            the element to add.
+	 * @return true if the element was added, false if the buffer was full.
+	 */
+	boolean offer(E element) {
+		long pos = tail.get();
+		for (;;) {
+			Slot<E> slot = slots[(int) pos & mask];
+			long diff = slot.sequence - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					slot.element = element;
+					slot.sequence = pos + 1;
+					if (waiting) {
+						LockSupport.unpark(consumer);
+					}
+					return true;
+				}
+				pos = tail.get();
+			} else if (diff < 0) {
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest element from the buffer, without handing it to the handler.
+	 *
+	 * @return the removed element, or null if the buffer was empty.
+	 */
+	E poll() {
+		long pos = head.get();
+		for (;;) {
+			Slot<E> slot = slots[(int) pos & mask];
+			long diff = slot.sequence - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					E element = slot.element;
+					slot.element = null;
+					slot.sequence = pos + slots.length;
+					return element;
+				}
+				pos = head.get();
+			} else if (diff < 0) {
+				return null;
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the consumer thread has handled all elements offered before the call, or until
+	 * the timeout.
+	 *
+	 * @param timeoutNanos
+	 *            the maximum time to wait.
+	 * @return true if the elements were handled, false on timeout, or if the consumer thread was
+	 *         stopped.
+	 */
+	boolean flush(long timeoutNanos) {
+		long target = tail.get();
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (completed - target < 0) {
+			if (!running || deadline - System.nanoTime() <= 0) {
+				return false;
+			}
+			LockSupport.unpark(consumer);
+			LockSupport.parkNanos(FLUSH_PARK_NANOS);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of slots in the buffer.
+	 */
+	int capacity() {
+		return slots.length;
+	}
+
+	/**
+	 * @return the approximate number of elements in the buffer.
+	 */
+	int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, slots.length));
+	}
+
+	/**
+	 * Stops the consumer thread. Elements still in the buffer are not processed. Only intended for
+	 * tests and benchmarks, the buffers used by the tracer live as long as the JVM.
+	 */
+	void stop() {
+		running = false;
+		LockSupport.unpark(consumer);
+	}
+
+	private void consume() {
+		int idle = 0;
+		while (running) {
+			tick();
+			int drained = drain();
+			completed = head.get();
+			if (drained > 0) {
+				idle = 0;
+			} else if (++idle < SPINS_BEFORE_PARK) {
+				Thread.yield();
+			} else {
+				waiting = true;
+				if (!hasElement()) {
+					LockSupport.parkNanos(this, MAX_PARK_NANOS);
+				}
+				waiting = false;
+			}
+		}
+	}
+
+	private boolean hasElement() {
+		long pos = head.get();
+		return slots[(int) pos & mask].sequence == pos + 1;
+	}
+
+	private int drain() {
+		int count = 0;
+		while (count < batchSize) {
+			E element = poll();
+			if (element == null) {
+				break;
+			}
+			count++;
+			try {
+				handler.onElement(element);
+			} catch (Throwable t) {
+				LOGGER.log(Level.WARNING, "Failed to process event", t);
+			}
+		}
+		return count;
+	}
+
+	private void tick() {
+		try {
+			handler.onTick();
+		} catch (Throwable t) {
+			LOGGER.log(Level.WARNING, "Failed to process event", t);
+		}
+	}
+}
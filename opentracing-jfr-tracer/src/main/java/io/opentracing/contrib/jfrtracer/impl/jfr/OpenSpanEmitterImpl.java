@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.TimeUnit;
+
+import com.oracle.jrockit.jfr.ContentType;
+import com.oracle.jrockit.jfr.EventDefinition;
+import com.oracle.jrockit.jfr.EventToken;
+import com.oracle.jrockit.jfr.InstantEvent;
+import com.oracle.jrockit.jfr.ValueDefinition;
+
+/**
+ * This is the JDK 8 implementation of the open span event. For the JDK 11 and later implementation,
+ * see src/main/java11. The JDK 8 events cannot be periodic, so the open spans are listed by a
+ * daemon thread every {@value #PERIOD_MILLIS} ms, while the event is enabled.
+ */
+@SuppressWarnings("deprecation")
+final class OpenSpanEmitterImpl {
+	private static final long PERIOD_MILLIS = 10000;
+	private static final EventToken OPEN_SPAN_EVENT_TOKEN;
+
+	static {
+		OPEN_SPAN_EVENT_TOKEN = JfrScopeEmitterImpl.register(OpenSpanEvent.class);
+		if (OPEN_SPAN_EVENT_TOKEN != null) {
+			Thread thread = new Thread(OpenSpanEmitterImpl::run, "JfrTracer Open Spans");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private OpenSpanEmitterImpl() {
+	}
+
+	/**
+	 * Registers the open span event, if not already done.
+	 */
+	static void register() {
+		// Done by the class initializer
+	}
+
+	/**
+	 * @return true if the open spans are currently being listed.
+	 */
+	static boolean isEventEnabled() {
+		return OPEN_SPAN_EVENT_TOKEN != null && OPEN_SPAN_EVENT_TOKEN.isEnabled();
+	}
+
+	private static void run() {
+		OpenSpanEvent event = new OpenSpanEvent(OPEN_SPAN_EVENT_TOKEN);
+		for (;;) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(PERIOD_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (isEventEnabled()) {
+				emit(event);
+			}
+		}
+	}
+
+	private static void emit(OpenSpanEvent event) {
+		long now = System.nanoTime();
+		OpenSpanRegistry.INSTANCE.forEach((span, openSpan) -> {
+			if (!event.shouldWrite()) {
+				return;
+			}
+			event.operationName = span.getOperationName();
+			// The event is reused, so the fields of the other id format are cleared
+			if (openSpan.binaryIds) {
+				event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+				event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+				event.binarySpanId = span.getBinarySpanId();
+				event.binaryParentId = span.getBinaryParentId();
+				event.traceId = null;
+				event.spanId = null;
+				event.parentId = null;
+			} else {
+				event.traceId = span.getTraceId();
+				event.spanId = span.getSpanId();
+				event.parentId = span.getParentId();
+				event.binaryTraceIdHigh = 0;
+				event.binaryTraceIdLow = 0;
+				event.binarySpanId = 0;
+				event.binaryParentId = 0;
+			}
+			event.age = now - openSpan.startNanos;
+			event.startThread = openSpan.startThread;
+			event.probableLeak = openSpan.isProbableLeak(now);
+			event.commit();
+		});
+	}
+
+	@EventDefinition(path = "opentracing/openspan", name = "Open Span", description = "A span started, but not yet finished, when the open spans were listed", stacktrace = false, thread = false)
+	public static class OpenSpanEvent extends InstantEvent {
+
+		@ValueDefinition(name = "Operation Name")
+		private String operationName;
+
+		@ValueDefinition(name = "Trace Id")
+		private String traceId;
+
+		@ValueDefinition(name = "Span Id")
+		private String spanId;
+
+		@ValueDefinition(name = "Parent Id")
+		private String parentId;
+
+		@ValueDefinition(name = "Binary Trace Id High", description = "The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@ValueDefinition(name = "Binary Trace Id Low", description = "The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@ValueDefinition(name = "Binary Span Id", description = "The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@ValueDefinition(name = "Binary Parent Id", description = "The parent span id, if ids are recorded in binary form")
+		private long binaryParentId;
+
+		@ValueDefinition(name = "Age", description = "The time since the span was started", contentType = ContentType.Nanos)
+		private long age;
+
+		@ValueDefinition(name = "Start Thread", description = "The thread starting the span")
+		private Thread startThread;
+
+		@ValueDefinition(name = "Probable Leak", description = "The span has been open for longer than the leak limit of the tracer")
+		private boolean probableLeak;
+
+		OpenSpanEvent(EventToken eventToken) {
+			super(eventToken);
+		}
+
+		@SuppressWarnings("unused")
+		public String getOperationName() {
+			return operationName;
+		}
+
+		@SuppressWarnings("unused")
+		public String getTraceId() {
+			return traceId;
+		}
+
+		@SuppressWarnings("unused")
+		public String getSpanId() {
+			return spanId;
+		}
+
+		@SuppressWarnings("unused")
+		public String getParentId() {
+			return parentId;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinaryTraceIdHigh() {
+			return binaryTraceIdHigh;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinaryTraceIdLow() {
+			return binaryTraceIdLow;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinarySpanId() {
+			return binarySpanId;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinaryParentId() {
+			return binaryParentId;
+		}
+
+		@SuppressWarnings("unused")
+		public long getAge() {
+			return age;
+		}
+
+		@SuppressWarnings("unused")
+		public Thread getStartThread() {
+			return startThread;
+		}
+
+		@SuppressWarnings("unused")
+		public boolean isProbableLeak() {
+			return probableLeak;
+		}
+	}
+}
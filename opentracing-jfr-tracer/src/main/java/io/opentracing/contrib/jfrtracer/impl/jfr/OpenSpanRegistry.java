@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The spans started, but not yet finished, by the tracers tracking open spans.
+ * <p>
+ * The spans are spread over a number of stripes, picked from the id of the thread starting the
+ * span, each a linked list guarded by its own lock, so that threads starting and finishing spans
+ * rarely contend. The spans are only weakly referenced, so a span that is never finished can still
+ * be collected, and is then counted as leaked.
+ */
+final class OpenSpanRegistry {
+	static final OpenSpanRegistry INSTANCE = new OpenSpanRegistry(
+			Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+
+	private final Stripe[] stripes;
+	private final ReferenceQueue<JfrSpan> collected = new ReferenceQueue<>();
+
+	/**
+	 * An open span.
+	 */
+	static final class OpenSpan extends WeakReference<JfrSpan> {
+		final long startNanos;
+		final long leakLimitNanos;
+		final boolean binaryIds;
+		final Thread startThread;
+		private final Stripe stripe;
+		// Guarded by the lock of the stripe
+		private OpenSpan previous;
+		private OpenSpan next;
+		private boolean linked;
+
+		private OpenSpan(JfrSpan span, long leakLimitNanos, boolean binaryIds, Stripe stripe,
+				ReferenceQueue<JfrSpan> queue) {
+			super(span, queue);
+			this.startNanos = System.nanoTime();
+			this.leakLimitNanos = leakLimitNanos;
+			this.binaryIds = binaryIds;
+			this.startThread = Thread.currentThread();
+			this.stripe = stripe;
+		}
+
+		/**
+		 * @return true if the span has been open for longer than the leak limit.
+		 */
+		boolean isProbableLeak(long nowNanos) {
+			return nowNanos - startNanos > leakLimitNanos;
+		}
+	}
+
+	private static final class Stripe {
+		private OpenSpan first;
+
+		synchronized void link(OpenSpan span) {
+			span.next = first;
+			if (first != null) {
+				first.previous = span;
+			}
+			first = span;
+			span.linked = true;
+		}
+
+		synchronized boolean unlink(OpenSpan span) {
+			if (!span.linked) {
+				return false;
+			}
+			if (span.previous != null) {
+				span.previous.next = span.next;
+			} else {
+				first = span.next;
+			}
+			if (span.next != null) {
+				span.next.previous = span.previous;
+			}
+			span.previous = null;
+			span.next = null;
+			span.linked = false;
+			return true;
+		}
+
+		synchronized void copyTo(List<OpenSpan> spans) {
+			for (OpenSpan span = first; span != null; span = span.next) {
+				spans.add(span);
+			}
+		}
+	}
+
+	/**
+	 * A consumer of open spans.
+	 */
+	interface Visitor {
+		/**
+		 * @param span
+		 *            the span.
+		 * @param openSpan
+		 *            the start time, start thread and leak limit of the span.
+		 */
+		void visit(JfrSpan span, OpenSpan openSpan);
+	}
+
+	OpenSpanRegistry(int stripeCount) {
+		stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Adds a span being started by the current thread.
+	 *
+	 * @param span
+	 *            the span.
+	 * @param leakLimitNanos
+	 *            the time the span may be open before being considered leaked.
+	 * @param binaryIds
+	 *            true if the ids of the span are to be listed in binary form.
+	 */
+	@SuppressWarnings("deprecation")
+	void register(JfrSpan span, long leakLimitNanos, boolean binaryIds) {
+		expungeCollected();
+		Stripe stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+		OpenSpan openSpan = new OpenSpan(span, leakLimitNanos, binaryIds, stripe, collected);
+		stripe.link(openSpan);
+		span.openSpan = openSpan;
+	}
+
+	/**
+	 * Removes a span being finished, if it was added.
+	 *
+	 * @param span
+	 *            the span.
+	 */
+	void unregister(JfrSpan span) {
+		OpenSpan openSpan = span.openSpan;
+		if (openSpan == null) {
+			return;
+		}
+		span.openSpan = null;
+		openSpan.stripe.unlink(openSpan);
+		openSpan.clear();
+	}
+
+	/**
+	 * Visits the spans that are open, and have not been collected.
+	 *
+	 * @param visitor
+	 *            the visitor, called without holding any lock.
+	 */
+	void forEach(Visitor visitor) {
+		expungeCollected();
+		List<OpenSpan> openSpans = new ArrayList<>();
+		for (Stripe stripe : stripes) {
+			stripe.copyTo(openSpans);
+		}
+		for (OpenSpan openSpan : openSpans) {
+			JfrSpan span = openSpan.get();
+			if (span != null) {
+				visitor.visit(span, openSpan);
+			}
+		}
+	}
+
+	/**
+	 * Removes the spans collected without having been finished, and counts them as leaked.
+	 */
+	private void expungeCollected() {
+		for (Reference<? extends JfrSpan> reference = collected.poll(); reference != null; reference = collected
+				.poll()) {
+			OpenSpan openSpan = (OpenSpan) reference;
+			if (openSpan.stripe.unlink(openSpan)) {
+				TracerStatistics.SPANS_LEAKED.increment();
+			}
+		}
+	}
+}
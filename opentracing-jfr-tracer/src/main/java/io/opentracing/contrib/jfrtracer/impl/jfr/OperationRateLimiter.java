@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+
+/**
+ * Rate limits the span events per operation name, as specified by a
+ * {@link JfrTracerConfiguration}. The limiters are created on demand, one per operation name. To
+ * protect against operation names with unbounded cardinality, operations seen after the first
+ * {@value #MAX_OPERATIONS} share a single limiter, reported as {@value #OTHER_OPERATIONS}, unless
+ * they have a limit of their own in the configuration.
+ */
+final class OperationRateLimiter {
+	static final int MAX_OPERATIONS = 1024;
+	static final String OTHER_OPERATIONS = "<other>";
+
+	// Marks the operations without limit, never asked for permits
+	private static final RateLimiter UNLIMITED = new RateLimiter(1);
+
+	private final JfrTracerConfiguration configuration;
+	private final ConcurrentHashMap<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+	private final RateLimiter other;
+
+	OperationRateLimiter(JfrTracerConfiguration configuration) {
+		this.configuration = configuration;
+		this.other = createLimiter(null);
+	}
+
+	/**
+	 * @param operationName
+	 *            the operation name of the span.
+	 * @return true if an event may be emitted for the span.
+	 */
+	boolean tryAcquire(String operationName) {
+		String key = operationName == null ? "" : operationName;
+		RateLimiter limiter = limiters.get(key);
+		if (limiter == null) {
+			// The configured operations are bounded by the configuration, and keep their own limits
+			if (limiters.size() < MAX_OPERATIONS || configuration.hasRateLimit(key)) {
+				limiter = limiters.computeIfAbsent(key, this::createLimiter);
+			} else {
+				limiter = other;
+			}
+		}
+		return limiter == UNLIMITED || limiter.tryAcquire();
+	}
+
+	/**
+	 * @return the number of suppressed span events per operation name, for the operations that
+	 *         have had events suppressed.
+	 */
+	Map<String, Long> getSuppressed() {
+		Map<String, Long> suppressed = new TreeMap<>();
+		limiters.forEach((operationName, limiter) -> addSuppressed(suppressed, operationName, limiter));
+		addSuppressed(suppressed, OTHER_OPERATIONS, other);
+		return suppressed;
+	}
+
+	private RateLimiter createLimiter(String operationName) {
+		double permitsPerSecond = configuration.getRateLimit(operationName);
+		return permitsPerSecond > 0 ? new RateLimiter(permitsPerSecond) : UNLIMITED;
+	}
+
+	private static void addSuppressed(Map<String, Long> suppressed, String operationName, RateLimiter limiter) {
+		long count = limiter.suppressed();
+		if (count > 0) {
+			suppressed.put(operationName, count);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free token bucket. To keep threads running on different cores from contending for the
+ * same cache line, the bucket is split into stripes, each holding its share of the rate. A thread
+ * takes its permits from the stripe its id maps to, and only borrows from the other stripes when
+ * its own is empty, so that a single thread still gets the whole rate.
+ * <p>
+ * Each stripe is a single long holding the theoretical arrival time of the next permit (the
+ * generic cell rate algorithm), so acquiring a permit is one time stamp and one CAS. A bucket
+ * holds up to a second's worth of permits.
+ */
+final class RateLimiter {
+	// 128 bytes between stripes, enough to keep them on separate cache lines
+	private static final int PADDING = 16;
+	private static final int MAX_STRIPES = stripesFor(Runtime.getRuntime().availableProcessors());
+
+	private final AtomicLongArray stripes;
+	private final int mask;
+	private final long origin = System.nanoTime();
+	private final long intervalNanos;
+	private final long toleranceNanos;
+	private final LongAdder suppressed = new LongAdder();
+
+	/**
+	 * @param permitsPerSecond
+	 *            the sustained number of permits per second, must be positive.
+	 */
+	RateLimiter(double permitsPerSecond) {
+		this(permitsPerSecond, MAX_STRIPES);
+	}
+
+	/**
+	 * @param permitsPerSecond
+	 *            the sustained number of permits per second, must be positive.
+	 * @param maxStripes
+	 *            the maximum number of stripes, a power of two.
+	 */
+	RateLimiter(double permitsPerSecond, int maxStripes) {
+		if (!(permitsPerSecond > 0)) {
+			throw new IllegalArgumentException("The rate must be positive");
+		}
+		// Low rates get fewer stripes, so that each stripe still gets at least a permit per second
+		int stripeCount = Math.min(maxStripes, Integer.highestOneBit(Math.max(1, (int) Math.min(permitsPerSecond, 1 << 30))));
+		this.stripes = new AtomicLongArray(stripeCount * PADDING);
+		this.mask = stripeCount - 1;
+		this.intervalNanos = Math.max(1, (long) (stripeCount * 1_000_000_000d / permitsPerSecond));
+		this.toleranceNanos = Math.max(0, 1_000_000_000L - intervalNanos);
+	}
+
+	/**
+	 * Takes a permit, if one is available. Never blocks.
+	 *
+	 * @return true if a permit was taken, false if the rate was exceeded.
+	 */
+	boolean tryAcquire() {
+		long now = System.nanoTime() - origin;
+		int first = stripe();
+		for (int i = 0; i <= mask; i++) {
+			if (tryAcquire(((first + i) & mask) * PADDING, now)) {
+				return true;
+			}
+		}
+		suppressed.increment();
+		return false;
+	}
+
+	/**
+	 * @return the number of times a permit was refused.
+	 */
+	long suppressed() {
+		return suppressed.sum();
+	}
+
+	private boolean tryAcquire(int index, long now) {
+		for (;;) {
+			long next = stripes.get(index);
+			long start = Math.max(next, now);
+			if (start - now > toleranceNanos) {
+				return false;
+			}
+			if (stripes.compareAndSet(index, next, start + intervalNanos)) {
+				return true;
+			}
+		}
+	}
+
+	private int stripe() {
+		return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+
+	private static int stripesFor(int count) {
+		return count <= 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+/**
+ * The span of the innermost active scope of a scope stack, for the wall clock sampler. Only the
+ * thread owning the stack calls {@link #activated(SpanInfo)} and {@link #emptied()}.
+ * <p>
+ * The thread is only registered with the sampler while the samples are recorded, from the first
+ * activation on an empty stack until the stack is empty again, so threads outside of scopes, and
+ * all threads while nothing is recorded, cost the sampler nothing.
+ */
+public final class SampledThread {
+	private final AbstractWallClockSampler sampler;
+	final boolean binaryIds;
+	// Only accessed by the owning thread
+	private boolean registered;
+	volatile Thread thread;
+	volatile SpanInfo span;
+
+	SampledThread(AbstractWallClockSampler sampler, boolean binaryIds) {
+		this.sampler = sampler;
+		this.binaryIds = binaryIds;
+	}
+
+	/**
+	 * Called when the innermost active scope of the stack has changed.
+	 *
+	 * @param activeSpan
+	 *            the span of the innermost active scope.
+	 */
+	public void activated(SpanInfo activeSpan) {
+		if (!registered) {
+			if (!sampler.isEventEnabled()) {
+				return;
+			}
+			thread = Thread.currentThread();
+			registered = true;
+			sampler.register(this);
+		}
+		// Spans that are not sampled hide the spans of the scopes they are nested in
+		span = activeSpan.isRecorded() ? activeSpan : null;
+	}
+
+	/**
+	 * Called when the last scope of the stack has been closed.
+	 */
+	public void emptied() {
+		if (registered) {
+			span = null;
+			registered = false;
+			sampler.unregister(this);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+
+/**
+ * JDK 8 has no supported way of dumping the data of a running recording, so slow spans are not
+ * dumped.
+ */
+final class SlowSpanDumperImpl extends AbstractSlowSpanDumper {
+
+	SlowSpanDumperImpl(JfrTracerConfiguration configuration) {
+		super(configuration);
+		LOGGER.warning("Slow span dumps require JDK 11 or later, and are disabled");
+	}
+
+	@Override
+	boolean isRecording() {
+		return false;
+	}
+
+	@Override
+	boolean dump(Path file, Duration maxAge) {
+		return false;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * The queue handing finished spans over to the thread committing their events. Spans that do not
+ * fit are handled according to the {@link BackpressurePolicy}, and their events handed back to the
+ * discard callback.
+ * <p>
+ * Dropped events are only counted on the traced threads. The consumer thread logs a single summary
+ * of the drops at most once per summary interval, rather than a line per dropped event, which
+ * would only add to the load.
+ */
+final class SpanEventQueue implements MpscRingBuffer.Handler<JfrSpan> {
+	private static final Logger LOGGER = Logger.getLogger(SpanEventQueue.class.getName());
+	private static final long SUMMARY_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	// Drop oldest gives up after this many evictions, if other producers keep taking the slots
+	private static final int MAX_EVICTIONS = 4;
+
+	private final BackpressurePolicy policy;
+	private final long blockTimeoutNanos;
+	private final Consumer<JfrSpan> commit;
+	private final Consumer<JfrSpan> discard;
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder sampledOut = new LongAdder();
+	private final MpscRingBuffer<JfrSpan> buffer;
+	// Only ever touched by the consumer thread
+	private long reportedDropped;
+	private long reportedSampledOut;
+	private long lastSummary = System.nanoTime() - SUMMARY_INTERVAL_NANOS;
+	// When the consumer thread last found the queue empty
+	private volatile long caughtUp = System.nanoTime();
+
+	/**
+	 * Creates the queue and starts its consumer thread.
+	 *
+	 * @param capacity
+	 *            the requested number of slots. Will be rounded up to the next power of two.
+	 * @param batchSize
+	 *            the maximum number of spans committed in one go.
+	 * @param threadName
+	 *            the name of the consumer thread.
+	 * @param policy
+	 *            what to do when the queue is full.
+	 * @param blockTimeoutNanos
+	 *            how long to wait for room in the queue, for {@link BackpressurePolicy#BLOCK}.
+	 * @param commit
+	 *            called on the consumer thread to commit the event of each queued span.
+	 * @param discard
+	 *            called with each span that was not queued, or was evicted, to release its event.
+	 */
+	SpanEventQueue(int capacity, int batchSize, String threadName, BackpressurePolicy policy, long blockTimeoutNanos,
+			Consumer<JfrSpan> commit, Consumer<JfrSpan> discard) {
+		this.policy = policy;
+		this.blockTimeoutNanos = blockTimeoutNanos;
+		this.commit = commit;
+		this.discard = discard;
+		this.buffer = new MpscRingBuffer<>(capacity, batchSize, threadName, this);
+		buffer.start();
+	}
+
+	/**
+	 * Queues the span for committing its event, or drops it according to the policy.
+	 *
+	 * @return true if the span was queued, false if it was dropped and its event discarded.
+	 */
+	boolean offer(JfrSpan span) {
+		if (policy == BackpressurePolicy.SAMPLE && !isSampledUnderLoad(span)) {
+			sampledOut.increment();
+			discard.accept(span);
+			return false;
+		}
+		if (buffer.offer(span)) {
+			return true;
+		}
+		if (policy == BackpressurePolicy.DROP_OLDEST) {
+			for (int i = 0; i < MAX_EVICTIONS; i++) {
+				JfrSpan oldest = buffer.poll();
+				if (oldest != null) {
+					dropped.increment();
+					discard.accept(oldest);
+				}
+				if (buffer.offer(span)) {
+					return true;
+				}
+			}
+		} else if (policy == BackpressurePolicy.BLOCK && offerBlocking(span)) {
+			return true;
+		}
+		dropped.increment();
+		discard.accept(span);
+		return false;
+	}
+
+	/**
+	 * @return the number of span events dropped because the queue was full.
+	 */
+	long dropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the number of span events dropped by {@link BackpressurePolicy#SAMPLE} while the
+	 *         queue was filling up.
+	 */
+	long sampledOut() {
+		return sampledOut.sum();
+	}
+
+	/**
+	 * @return the approximate number of spans waiting in the queue.
+	 */
+	int size() {
+		return buffer.size();
+	}
+
+	/**
+	 * @return how long the consumer thread has been behind, that is the time since it last found
+	 *         the queue empty, or 0 if the queue is empty. An upper bound of how long the oldest
+	 *         span in the queue has been waiting.
+	 */
+	long lagNanos() {
+		if (buffer.size() == 0) {
+			return 0;
+		}
+		return Math.max(0, System.nanoTime() - caughtUp);
+	}
+
+	/**
+	 * @return the number of slots in the queue.
+	 */
+	int capacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Waits until the events of the spans queued before the call have been committed.
+	 *
+	 * @param timeoutNanos
+	 *            the maximum time to wait.
+	 * @return true if the events were committed, false on timeout.
+	 */
+	boolean flush(long timeoutNanos) {
+		return buffer.flush(timeoutNanos);
+	}
+
+	/**
+	 * Stops the consumer thread. Only intended for tests.
+	 */
+	void stop() {
+		buffer.stop();
+	}
+
+	@Override
+	public void onElement(JfrSpan span) {
+		commit.accept(span);
+	}
+
+	@Override
+	public void onTick() {
+		long now = System.nanoTime();
+		if (buffer.size() == 0) {
+			caughtUp = now;
+		}
+		if (now - lastSummary >= SUMMARY_INTERVAL_NANOS) {
+			lastSummary = now;
+			logSummary();
+		}
+	}
+
+	/**
+	 * Logs the drops since the last summary, if there were any. Only to be called on the consumer
+	 * thread.
+	 */
+	void logSummary() {
+		long totalDropped = dropped.sum();
+		long totalSampledOut = sampledOut.sum();
+		long newDropped = totalDropped - reportedDropped;
+		long newSampledOut = totalSampledOut - reportedSampledOut;
+		if (newDropped == 0 && newSampledOut == 0) {
+			return;
+		}
+		reportedDropped = totalDropped;
+		reportedSampledOut = totalSampledOut;
+		LOGGER.warning("Span event queue full (" + policy.getName() + " policy) - dropped " + newDropped
+				+ " span events, and sampled out " + newSampledOut + ", since the last report. " + totalDropped
+				+ " dropped, and " + totalSampledOut + " sampled out in total");
+	}
+
+	/**
+	 * Keeps all spans while the queue is at most half full, and from there on a fraction of the
+	 * traces shrinking linearly to none when the queue is full.
+	 */
+	private boolean isSampledUnderLoad(JfrSpan span) {
+		int capacity = buffer.capacity();
+		int free = capacity - buffer.size();
+		if (free * 2 >= capacity) {
+			return true;
+		}
+		double keep = 2.0 * free / capacity;
+		return TraceIdHash.fraction(span.getBinaryTraceIdHigh(), span.getBinaryTraceIdLow()) < keep;
+	}
+
+	private boolean offerBlocking(JfrSpan span) {
+		long deadline = System.nanoTime() + blockTimeoutNanos;
+		while (deadline - System.nanoTime() > 0) {
+			LockSupport.parkNanos(BLOCK_PARK_NANOS);
+			if (buffer.offer(span)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
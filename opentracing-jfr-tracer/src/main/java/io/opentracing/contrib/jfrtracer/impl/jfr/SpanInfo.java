@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+/**
+ * The information about a span that is recorded in the span and scope events. Implementations are
+ * expected to compute the ids lazily and cache them, so that they are formatted at most once per
+ * span, and not at all while the events are not being recorded.
+ */
+public interface SpanInfo {
+	/**
+	 * @return false if no events are to be recorded for the span, for example because its trace
+	 *         was not sampled.
+	 */
+	boolean isRecorded();
+
+	/**
+	 * @return the trace id of the span.
+	 */
+	String getTraceId();
+
+	/**
+	 * @return the id of the span.
+	 */
+	String getSpanId();
+
+	/**
+	 * @return the id of the parent span, or null if the span has no known parent.
+	 */
+	String getParentId();
+
+	/**
+	 * @return the upper 64 bits of the binary trace id, 0 for 64 bit trace ids.
+	 */
+	long getBinaryTraceIdHigh();
+
+	/**
+	 * @return the lower 64 bits of the binary trace id.
+	 */
+	long getBinaryTraceIdLow();
+
+	/**
+	 * @return the binary id of the span.
+	 */
+	long getBinarySpanId();
+
+	/**
+	 * @return the binary id of the parent span, or 0 if the span has no known parent.
+	 */
+	long getBinaryParentId();
+
+	/**
+	 * @return the current operation name of the span.
+	 */
+	String getOperationName();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+
+/**
+ * Reads the CPU time and the allocated bytes of the current thread, for the scope events. This is
+ * the JDK 8 implementation, also used on JDK 11. For the JDK 21 and later implementation, see
+ * src/main/java21.
+ */
+final class ThreadResources {
+	private static final com.sun.management.ThreadMXBean THREADS = getThreadMXBean();
+
+	private ThreadResources() {
+	}
+
+	/**
+	 * @return true if the CPU time and the allocated bytes of the current thread can be read.
+	 */
+	static boolean isAvailable() {
+		return THREADS != null;
+	}
+
+	/**
+	 * @return the CPU time of the current thread in nanoseconds, or a negative value if it is not
+	 *         available.
+	 */
+	static long cpuTime() {
+		return THREADS.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * @return the number of bytes allocated by the current thread, or a negative value if it is
+	 *         not available.
+	 */
+	static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return the difference between the readings, or 0 if either of them was not available.
+	 */
+	static long delta(long start, long end) {
+		return start < 0 || end < 0 ? 0 : end - start;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadMXBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean && bean.isCurrentThreadCpuTimeSupported()
+					&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+				return (com.sun.management.ThreadMXBean) bean;
+			}
+			AbstractJfrEmitter.LOGGER.fine("Thread CPU time or allocation measurement not supported by this JVM");
+		} catch (RuntimeException | LinkageError e) {
+			AbstractJfrEmitter.LOGGER.log(Level.FINE, "Thread CPU time and allocation measurement not available", e);
+		}
+		return null;
+	}
+}
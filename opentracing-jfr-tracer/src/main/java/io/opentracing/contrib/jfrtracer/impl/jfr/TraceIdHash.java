@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+/**
+ * Maps trace ids to evenly spread fractions, so that sampling decisions made from them only depend
+ * on the trace id, and are the same on all nodes.
+ */
+public final class TraceIdHash {
+	private TraceIdHash() {
+	}
+
+	/**
+	 * @param traceIdHigh
+	 *            the upper 64 bits of the trace id, 0 for 64 bit trace ids.
+	 * @param traceIdLow
+	 *            the lower 64 bits of the trace id.
+	 * @return the hash of the trace id, as a fraction in [0, 1).
+	 */
+	public static double fraction(long traceIdHigh, long traceIdLow) {
+		long hash = mix(traceIdLow ^ mix(traceIdHigh));
+		// The upper 53 bits as a fraction in [0, 1), exactly
+		return (hash >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * The SplitMix64 finalizer, so that sequential or otherwise skewed ids are spread evenly.
+	 */
+	static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of what became of the span and scope events, reported by the tracer health event. The
+ * counters are totals since the start of the JVM, and only count events while they were being
+ * recorded. The drops of the span event queue are counted by the {@link SpanEventQueue} itself.
+ */
+final class TracerStatistics {
+	/**
+	 * Span events committed to the recording.
+	 */
+	static final LongAdder SPANS_EMITTED = new LongAdder();
+
+	/**
+	 * Spans not recorded because their traces were not sampled.
+	 */
+	static final LongAdder SPANS_SAMPLED_OUT = new LongAdder();
+
+	/**
+	 * Span events skipped by the thresholds or the rate limits.
+	 */
+	static final LongAdder SPANS_FILTERED = new LongAdder();
+
+	/**
+	 * Spans with a started span event, that have not been finished yet.
+	 */
+	static final LongAdder OPEN_SPANS = new LongAdder();
+
+	/**
+	 * Tracked open spans collected without having been finished.
+	 */
+	static final LongAdder SPANS_LEAKED = new LongAdder();
+
+	/**
+	 * Scope events committed to the recording.
+	 */
+	static final LongAdder SCOPES_EMITTED = new LongAdder();
+
+	/**
+	 * Scopes not recorded because the traces of their spans were not sampled.
+	 */
+	static final LongAdder SCOPES_SAMPLED_OUT = new LongAdder();
+
+	/**
+	 * Scope events skipped by the thresholds.
+	 */
+	static final LongAdder SCOPES_FILTERED = new LongAdder();
+
+	private TracerStatistics() {
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import com.oracle.jrockit.jfr.EventDefinition;
+import com.oracle.jrockit.jfr.EventToken;
+import com.oracle.jrockit.jfr.InstantEvent;
+import com.oracle.jrockit.jfr.ValueDefinition;
+
+/**
+ * This is the JDK 8 implementation of the wall clock sampler. For the JDK 11 and later
+ * implementation, see src/main/java11. The samples and stack traces are emitted on the sampling
+ * thread only, so the event objects are reused.
+ */
+@SuppressWarnings("deprecation")
+final class WallClockSamplerImpl extends AbstractWallClockSampler {
+	private static final EventToken SAMPLE_EVENT_TOKEN = JfrScopeEmitterImpl.register(WallClockSampleEvent.class);
+	private static final EventToken STACK_TRACE_EVENT_TOKEN = JfrScopeEmitterImpl
+			.register(WallClockStackTraceEvent.class);
+
+	private WallClockSampleEvent event;
+	private WallClockStackTraceEvent stackTraceEvent;
+
+	private WallClockSamplerImpl(long periodNanos) {
+		super(periodNanos);
+	}
+
+	/**
+	 * @param periodNanos
+	 *            the sampling period.
+	 * @return the started sampler, or null if the event could not be registered.
+	 */
+	static AbstractWallClockSampler start(long periodNanos) {
+		if (SAMPLE_EVENT_TOKEN == null || STACK_TRACE_EVENT_TOKEN == null) {
+			return null;
+		}
+		WallClockSamplerImpl sampler = new WallClockSamplerImpl(periodNanos);
+		sampler.start();
+		return sampler;
+	}
+
+	@Override
+	boolean isEventEnabled() {
+		return SAMPLE_EVENT_TOKEN.isEnabled();
+	}
+
+	@Override
+	void emit(Thread thread, SpanInfo span, Thread.State state, long stackTraceId, boolean binaryIds) {
+		if (event == null) {
+			event = new WallClockSampleEvent(SAMPLE_EVENT_TOKEN);
+		}
+		if (!event.shouldWrite()) {
+			return;
+		}
+		event.operationName = span.getOperationName();
+		// The event is reused, so the fields of the other id format are cleared
+		if (binaryIds) {
+			event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+			event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+			event.binarySpanId = span.getBinarySpanId();
+			event.traceId = null;
+			event.spanId = null;
+		} else {
+			event.traceId = span.getTraceId();
+			event.spanId = span.getSpanId();
+			event.binaryTraceIdHigh = 0;
+			event.binaryTraceIdLow = 0;
+			event.binarySpanId = 0;
+		}
+		event.sampledThread = thread;
+		event.threadState = state.name();
+		event.stackTraceId = stackTraceId;
+		event.commit();
+	}
+
+	@Override
+	void emitStackTrace(long stackTraceId, StackTraceElement[] stackTrace) {
+		if (stackTraceEvent == null) {
+			stackTraceEvent = new WallClockStackTraceEvent(STACK_TRACE_EVENT_TOKEN);
+		}
+		if (!stackTraceEvent.shouldWrite()) {
+			return;
+		}
+		stackTraceEvent.stackTraceId = stackTraceId;
+		stackTraceEvent.frames = format(stackTrace);
+		stackTraceEvent.commit();
+	}
+
+	@EventDefinition(path = "opentracing/wallclocksample", name = "Wall Clock Sample", description = "The stack trace of a thread with an active scope of a sampled span", stacktrace = false, thread = false)
+	public static class WallClockSampleEvent extends InstantEvent {
+
+		@ValueDefinition(name = "Operation Name")
+		private String operationName;
+
+		@ValueDefinition(name = "Trace Id")
+		private String traceId;
+
+		@ValueDefinition(name = "Span Id")
+		private String spanId;
+
+		@ValueDefinition(name = "Binary Trace Id High", description = "The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@ValueDefinition(name = "Binary Trace Id Low", description = "The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@ValueDefinition(name = "Binary Span Id", description = "The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@ValueDefinition(name = "Sampled Thread")
+		private Thread sampledThread;
+
+		@ValueDefinition(name = "Thread State")
+		private String threadState;
+
+		@ValueDefinition(name = "Stack Trace Id", description = "The id of the stack trace of the sampled thread, see the Wall Clock Stack Trace events")
+		private long stackTraceId;
+
+		WallClockSampleEvent(EventToken eventToken) {
+			super(eventToken);
+		}
+
+		@SuppressWarnings("unused")
+		public String getOperationName() {
+			return operationName;
+		}
+
+		@SuppressWarnings("unused")
+		public String getTraceId() {
+			return traceId;
+		}
+
+		@SuppressWarnings("unused")
+		public String getSpanId() {
+			return spanId;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinaryTraceIdHigh() {
+			return binaryTraceIdHigh;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinaryTraceIdLow() {
+			return binaryTraceIdLow;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBinarySpanId() {
+			return binarySpanId;
+		}
+
+		@SuppressWarnings("unused")
+		public Thread getSampledThread() {
+			return sampledThread;
+		}
+
+		@SuppressWarnings("unused")
+		public String getThreadState() {
+			return threadState;
+		}
+
+		@SuppressWarnings("unused")
+		public long getStackTraceId() {
+			return stackTraceId;
+		}
+	}
+
+	@EventDefinition(path = "opentracing/wallclockstacktrace", name = "Wall Clock Stack Trace", description = "The text of a stack trace of the wall clock samples", stacktrace = false, thread = false)
+	public static class WallClockStackTraceEvent extends InstantEvent {
+
+		@ValueDefinition(name = "Stack Trace Id", description = "The id the wall clock samples refer to the stack trace with")
+		private long stackTraceId;
+
+		@ValueDefinition(name = "Frames", description = "The frames of the stack trace, top frame first, one frame per line")
+		private String frames;
+
+		WallClockStackTraceEvent(EventToken eventToken) {
+			super(eventToken);
+		}
+
+		@SuppressWarnings("unused")
+		public long getStackTraceId() {
+			return stackTraceId;
+		}
+
+		@SuppressWarnings("unused")
+		public String getFrames() {
+			return frames;
+		}
+	}
+}
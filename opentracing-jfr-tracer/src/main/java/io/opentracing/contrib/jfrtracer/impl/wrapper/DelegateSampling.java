@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.opentracing.SpanContext;
+import io.opentracing.contrib.jfrtracer.SamplingInspector;
+import io.opentracing.contrib.jfrtracer.SamplingInspector.Decision;
+
+/**
+ * Finds out the sampling decision of the delegate tracer. The configured and service loaded
+ * {@link SamplingInspector}s are asked first. After that, the decision is read through a method
+ * handle: for Jaeger from {@code JaegerSpanContext.isSampled()}, for Brave from
+ * {@code TraceContext.sampled()}, and for any other context from a public {@code isSampled()} or
+ * {@code sampled()} method, if it has one. The handles are looked up once per context class.
+ */
+final class DelegateSampling {
+	private static final Logger LOGGER = Logger.getLogger(DelegateSampling.class.getName());
+	private static final MethodType DECISION_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final List<SamplingInspector> SERVICE_INSPECTORS = loadInspectors();
+
+	private static final ClassValue<MethodHandle> FOR_CLASS = new ClassValue<MethodHandle>() {
+		@Override
+		protected MethodHandle computeValue(Class<?> type) {
+			return lookup(type);
+		}
+	};
+
+	private final SamplingInspector[] inspectors;
+
+	/**
+	 * @param configured
+	 *            the inspectors of the configuration, asked before the service loaded ones.
+	 */
+	DelegateSampling(List<SamplingInspector> configured) {
+		List<SamplingInspector> all = new ArrayList<>(configured);
+		all.addAll(SERVICE_INSPECTORS);
+		this.inspectors = all.toArray(new SamplingInspector[0]);
+	}
+
+	/**
+	 * @param context
+	 *            the context of a span created by the delegate.
+	 * @return the sampling decision of the delegate.
+	 */
+	Decision inspect(SpanContext context) {
+		for (SamplingInspector inspector : inspectors) {
+			Decision decision = inspector.inspect(context);
+			if (decision != null && decision != Decision.UNKNOWN) {
+				return decision;
+			}
+		}
+		MethodHandle handle = FOR_CLASS.get(context.getClass());
+		if (handle == null) {
+			return Decision.UNKNOWN;
+		}
+		Object sampled;
+		try {
+			sampled = handle.invokeExact((Object) context);
+		} catch (Throwable t) {
+			LOGGER.log(Level.FINE, "Failed to read the sampling decision of " + context.getClass().getName(), t);
+			return Decision.UNKNOWN;
+		}
+		if (sampled == null) {
+			// Brave leaves the decision open until a sampler has been asked
+			return Decision.UNKNOWN;
+		}
+		return (Boolean) sampled ? Decision.SAMPLED : Decision.NOT_SAMPLED;
+	}
+
+	private static MethodHandle lookup(Class<?> type) {
+		try {
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				switch (c.getName()) {
+				case "io.jaegertracing.internal.JaegerSpanContext":
+					return handle(c, "isSampled", boolean.class);
+				case "brave.opentracing.BraveSpanContext":
+					Class<?> traceContext = c.getMethod("unwrap").getReturnType();
+					return MethodHandles.filterReturnValue(handle(c, "unwrap", traceContext),
+							handle(traceContext, "sampled", Boolean.class));
+				default:
+					break;
+				}
+			}
+			for (String name : new String[] {"isSampled", "sampled"}) {
+				Method method = findMethod(type, name);
+				if (method != null) {
+					return MethodHandles.publicLookup().unreflect(method).asType(DECISION_TYPE);
+				}
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.log(Level.FINE, "Cannot read the sampling decision of " + type.getName(), e);
+		}
+		return null;
+	}
+
+	private static MethodHandle handle(Class<?> type, String name, Class<?> returnType)
+			throws ReflectiveOperationException {
+		return MethodHandles.publicLookup().findVirtual(type, name, MethodType.methodType(returnType))
+				.asType(DECISION_TYPE);
+	}
+
+	private static Method findMethod(Class<?> type, String name) {
+		try {
+			Method method = type.getMethod(name);
+			Class<?> returnType = method.getReturnType();
+			return returnType == boolean.class || returnType == Boolean.class ? method : null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static List<SamplingInspector> loadInspectors() {
+		List<SamplingInspector> inspectors = new ArrayList<>();
+		try {
+			for (SamplingInspector inspector : ServiceLoader.load(SamplingInspector.class)) {
+				inspectors.add(inspector);
+			}
+		} catch (ServiceConfigurationError e) {
+			LOGGER.log(Level.WARNING, "Failed to load the sampling inspectors", e);
+		}
+		return inspectors;
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.opentracing.SpanContext;
+
+/**
+ * Reads the binary trace and span ids of span contexts. The native ids of the Jaeger, Brave and
+ * OpenTracing mock contexts are read through method handles, so that there is no compile time
+ * dependency on any tracer. For any other context, the id strings are parsed as hexadecimal
+ * numbers, and ids that are not hexadecimal are hashed. Contexts whose native ids cannot be read,
+ * such as the incomplete Brave contexts extracted from sampling flags only, fall back to the parsed
+ * ids, and missing ids are 0.
+ */
+abstract class NativeIds {
+	private static final Logger LOGGER = Logger.getLogger(NativeIds.class.getName());
+	private static final MethodType ID_TYPE = MethodType.methodType(long.class, Object.class);
+
+	private static final NativeIds PARSED = new ParsedIds();
+	private static final ClassValue<NativeIds> FOR_CLASS = new ClassValue<NativeIds>() {
+		@Override
+		protected NativeIds computeValue(Class<?> type) {
+			return lookup(type);
+		}
+	};
+
+	/**
+	 * @return the id reader to use for the context.
+	 */
+	static NativeIds forContext(SpanContext context) {
+		return FOR_CLASS.get(context.getClass());
+	}
+
+	/**
+	 * @return the upper 64 bits of the trace id, 0 for 64 bit trace ids.
+	 */
+	abstract long traceIdHigh(SpanContext context);
+
+	/**
+	 * @return the lower 64 bits of the trace id.
+	 */
+	abstract long traceIdLow(SpanContext context);
+
+	/**
+	 * @return the span id.
+	 */
+	abstract long spanId(SpanContext context);
+
+	private static NativeIds lookup(Class<?> type) {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			try {
+				switch (c.getName()) {
+				case "io.jaegertracing.internal.JaegerSpanContext":
+					return new HandleIds(handle(c, "getTraceIdHigh"), handle(c, "getTraceIdLow"), handle(c, "getSpanId"));
+				case "brave.opentracing.BraveSpanContext":
+					Class<?> traceContext = c.getMethod("unwrap").getReturnType();
+					MethodHandle unwrap = handle(c, "unwrap", traceContext).asType(MethodType.methodType(Object.class,
+							Object.class));
+					return new HandleIds(MethodHandles.filterReturnValue(unwrap, handle(traceContext, "traceIdHigh")),
+							MethodHandles.filterReturnValue(unwrap, handle(traceContext, "traceId")),
+							MethodHandles.filterReturnValue(unwrap, handle(traceContext, "spanId")));
+				case "io.opentracing.mock.MockSpan$MockContext":
+					return new HandleIds(null, handle(c, "traceId"), handle(c, "spanId"));
+				default:
+					break;
+				}
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				LOGGER.log(Level.FINE, "Could not read the native ids of " + type.getName() + ", will parse the id strings", e);
+				return PARSED;
+			}
+		}
+		return PARSED;
+	}
+
+	private static MethodHandle handle(Class<?> type, String name) throws ReflectiveOperationException {
+		return handle(type, name, long.class).asType(ID_TYPE);
+	}
+
+	private static MethodHandle handle(Class<?> type, String name, Class<?> returnType)
+			throws ReflectiveOperationException {
+		return MethodHandles.publicLookup().findVirtual(type, name, MethodType.methodType(returnType));
+	}
+
+	/**
+	 * @return the upper 64 bits of a hexadecimal trace id, 0 if there are none or the id is not
+	 *         hexadecimal.
+	 */
+	static long parseTraceIdHigh(String id) {
+		return id != null && id.length() > 16 && isHex(id) ? parseHex(id, 0, id.length() - 16) : 0;
+	}
+
+	/**
+	 * @return the lower 64 bits of a hexadecimal id, a hash of the id if it is not hexadecimal, or
+	 *         0 if there is none.
+	 */
+	static long parseId(String id) {
+		if (id == null) {
+			return 0;
+		}
+		return isHex(id) ? parseHex(id, Math.max(0, id.length() - 16), id.length()) : hash(id);
+	}
+
+	private static boolean isHex(String id) {
+		if (id.isEmpty() || id.length() > 32) {
+			return false;
+		}
+		for (int i = 0; i < id.length(); i++) {
+			if (Character.digit(id.charAt(i), 16) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long parseHex(String id, int start, int end) {
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			value = value << 4 | Character.digit(id.charAt(i), 16);
+		}
+		return value;
+	}
+
+	/**
+	 * 64 bit FNV-1a.
+	 */
+	private static long hash(String id) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < id.length(); i++) {
+			hash ^= id.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static final class HandleIds extends NativeIds {
+		private final MethodHandle traceIdHigh;
+		private final MethodHandle traceIdLow;
+		private final MethodHandle spanId;
+
+		HandleIds(MethodHandle traceIdHigh, MethodHandle traceIdLow, MethodHandle spanId) {
+			this.traceIdHigh = traceIdHigh;
+			this.traceIdLow = traceIdLow;
+			this.spanId = spanId;
+		}
+
+		@Override
+		long traceIdHigh(SpanContext context) {
+			if (traceIdHigh == null) {
+				return 0;
+			}
+			try {
+				return invoke(traceIdHigh, context);
+			} catch (RuntimeException e) {
+				return PARSED.traceIdHigh(context);
+			}
+		}
+
+		@Override
+		long traceIdLow(SpanContext context) {
+			try {
+				return invoke(traceIdLow, context);
+			} catch (RuntimeException e) {
+				return PARSED.traceIdLow(context);
+			}
+		}
+
+		@Override
+		long spanId(SpanContext context) {
+			try {
+				return invoke(spanId, context);
+			} catch (RuntimeException e) {
+				return PARSED.spanId(context);
+			}
+		}
+
+		private static long invoke(MethodHandle handle, SpanContext context) {
+			try {
+				return (long) handle.invokeExact((Object) context);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+
+	private static final class ParsedIds extends NativeIds {
+		@Override
+		long traceIdHigh(SpanContext context) {
+			return parseTraceIdHigh(context.toTraceId());
+		}
+
+		@Override
+		long traceIdLow(SpanContext context) {
+			return parseId(context.toTraceId());
+		}
+
+		@Override
+		long spanId(SpanContext context) {
+			return parseId(context.toSpanId());
+		}
+	}
+}
@@ -24,38 +24,33 @@ import io.opentracing.Span;
  */
 final class ScopeManagerWrapper implements ScopeManager {
 	private final ScopeManager delegate;
-	private final ThreadLocal<ScopeWrapper> activeScope = new ThreadLocal<>();
+	private final TracerWrapper owner;
+	private final ThreadLocal<ScopeStack> scopeStack;
 
-	ScopeManagerWrapper(ScopeManager delegate) {
+	ScopeManagerWrapper(ScopeManager delegate, TracerWrapper owner) {
 		this.delegate = delegate;
+		this.owner = owner;
+		this.scopeStack = ThreadLocal.withInitial(() -> new ScopeStack(owner.getEmitterFactory()));
 	}
 
 	@Override
 	@Deprecated
 	public Scope activate(Span span, boolean finishSpanOnClose) {
-		ScopeWrapper wrapper;
+		ScopeStack stack = scopeStack.get();
 		if (!(span instanceof SpanWrapper)) {
 			// This should be rather unlikely...
-			SpanWrapper spanWrapper = new SpanWrapper("", span, "");
-			wrapper = new ScopeWrapper(this, spanWrapper, delegate.activate(span, finishSpanOnClose),
-					finishSpanOnClose);
-		} else {
-			SpanWrapper spanWrapper = (SpanWrapper) span;
-			wrapper = new ScopeWrapper(this, spanWrapper,
-					delegate.activate(spanWrapper.getDelegate(), finishSpanOnClose), finishSpanOnClose);
+			SpanWrapper spanWrapper = new SpanWrapper(owner, null, null, span, "");
+			return stack.push(spanWrapper, delegate.activate(span, finishSpanOnClose), finishSpanOnClose);
 		}
-		activeScope.set(wrapper);
-		return wrapper;
+		SpanWrapper spanWrapper = (SpanWrapper) span;
+		return stack.push(spanWrapper, delegate.activate(spanWrapper.getDelegate(), finishSpanOnClose),
+				finishSpanOnClose);
 	}
 
 	@Override
-        @Deprecated
+	@Deprecated
 	public Scope active() {
-		return activeScope.get();
-	}
-
-	void setActive(ScopeWrapper scope) {
-		activeScope.set(scope);
+		return scopeStack.get().active();
 	}
 
 	@Override
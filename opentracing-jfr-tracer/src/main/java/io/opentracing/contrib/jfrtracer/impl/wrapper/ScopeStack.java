@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import io.opentracing.Scope;
+import io.opentracing.contrib.jfrtracer.impl.jfr.JfrEmitterFactory;
+import io.opentracing.contrib.jfrtracer.impl.jfr.SampledThread;
+
+/**
+ * The scopes of a single thread. The {@link ScopeWrapper}s, and the emitters they own, are created
+ * the first time a certain nesting depth is reached, and are then reused for every following
+ * activation at that depth. In steady state, activating and closing a scope therefore does not
+ * allocate anything in the JFR layer.
+ * <p>
+ * A stack can optionally be handed over to another thread once it is empty, see
+ * {@link #ScopeStack(JfrEmitterFactory, Consumer)}.
+ */
+final class ScopeStack {
+	private static final int INITIAL_DEPTH = 8;
+
+	private final JfrEmitterFactory emitterFactory;
+	private final Consumer<ScopeStack> emptied;
+	private final SampledThread sampledThread;
+	private ScopeWrapper[] scopes = new ScopeWrapper[INITIAL_DEPTH];
+	private int depth;
+	private Thread owner;
+
+	ScopeStack(JfrEmitterFactory emitterFactory) {
+		this(emitterFactory, null);
+	}
+
+	/**
+	 * @param emitterFactory
+	 *            the factory creating the scope emitters.
+	 * @param emptied
+	 *            called on the owning thread whenever the last scope on the stack has been closed,
+	 *            or null. Once called, the stack may be {@link #adopt() adopted} by another thread,
+	 *            and scopes closed by the previous owner after that are ignored.
+	 */
+	ScopeStack(JfrEmitterFactory emitterFactory, Consumer<ScopeStack> emptied) {
+		this.emitterFactory = emitterFactory;
+		this.emptied = emptied;
+		this.sampledThread = emitterFactory.createSampledThread();
+		this.owner = Thread.currentThread();
+	}
+
+	/**
+	 * Makes the current thread the owner of this, empty, stack.
+	 */
+	void adopt() {
+		owner = Thread.currentThread();
+	}
+
+	/**
+	 * @return true if the scopes of this stack may be closed by the current thread.
+	 */
+	boolean isOwnedByCurrentThread() {
+		return emptied == null || owner == Thread.currentThread();
+	}
+
+	/**
+	 * Pushes a new activation on the stack.
+	 *
+	 * @return the scope representing the activation.
+	 */
+	ScopeWrapper push(SpanWrapper spanWrapper, Scope delegate, boolean finishSpanOnClose) {
+		if (depth == scopes.length) {
+			scopes = Arrays.copyOf(scopes, depth * 2);
+		}
+		ScopeWrapper scope = scopes[depth];
+		if (scope == null) {
+			scope = new ScopeWrapper(this, depth, emitterFactory.createScopeEmitter());
+			scopes[depth] = scope;
+		}
+		depth++;
+		scope.activate(spanWrapper, delegate, finishSpanOnClose);
+		if (sampledThread != null) {
+			sampledThread.activated(spanWrapper);
+		}
+		return scope;
+	}
+
+	/**
+	 * Makes the parent of the closed scope the active one again.
+	 *
+	 * @param scope
+	 *            the closed scope, which must be the active one.
+	 */
+	void closed(ScopeWrapper scope) {
+		depth = scope.depth();
+		if (sampledThread != null) {
+			if (depth == 0) {
+				sampledThread.emptied();
+			} else {
+				sampledThread.activated(scopes[depth - 1].spanWrapper());
+			}
+		}
+		if (depth == 0 && emptied != null) {
+			emptied.accept(this);
+		}
+	}
+
+	/**
+	 * @return the active scope, or null if there is none.
+	 */
+	ScopeWrapper active() {
+		return depth == 0 ? null : scopes[depth - 1];
+	}
+}
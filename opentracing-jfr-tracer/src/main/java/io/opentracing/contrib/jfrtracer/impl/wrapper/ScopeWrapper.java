@@ -17,44 +17,65 @@ package io.opentracing.contrib.jfrtracer.impl.wrapper;
 
 import io.opentracing.Scope;
 import io.opentracing.Span;
-import io.opentracing.contrib.jfrtracer.impl.jfr.JfrEmitter;
+import io.opentracing.contrib.jfrtracer.impl.jfr.JfrScopeEmitter;
 
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
 /**
  * Wrapper for {@link Scope}.
+ * <p>
+ * Instances are owned by a {@link ScopeStack} and reused for later activations at the same depth
+ * once closed, so a scope must not be used after it has been closed. As with the
+ * ThreadLocalScopeManager, only the active scope can be closed, and closing any other scope is
+ * ignored. A stale scope therefore only affects a later activation if it is the active one again.
  */
 final class ScopeWrapper implements Scope {
 
 	private static final Logger LOG = Logger.getLogger(ScopeWrapper.class.getName());
 
-	private final ScopeManagerWrapper scopeManagerWrapper;
-	private final Scope delegate;
-	private final JfrEmitter emitter;
-	private final SpanWrapper spanWrapper;
-	private final boolean finishSpanOnClose;
-	private final ScopeWrapper parentScope;
+	private final ScopeStack stack;
+	private final int depth;
+	private final JfrScopeEmitter emitter;
+	private Scope delegate;
+	private SpanWrapper spanWrapper;
+	private boolean finishSpanOnClose;
 
-	ScopeWrapper(ScopeManagerWrapper scopeManagerWrapper, SpanWrapper spanWrapper, Scope delegate,
-			boolean finishSpanOnClose) {
-		this.scopeManagerWrapper = scopeManagerWrapper;
-		this.parentScope = (ScopeWrapper) scopeManagerWrapper.active();
+	ScopeWrapper(ScopeStack stack, int depth, JfrScopeEmitter emitter) {
+		this.stack = stack;
+		this.depth = depth;
+		this.emitter = emitter;
+	}
+
+	void activate(SpanWrapper spanWrapper, Scope delegate, boolean finishSpanOnClose) {
 		this.spanWrapper = spanWrapper;
 		this.delegate = delegate;
-		emitter = SpanWrapper.EMITTER_FACTORY.createScopeEmitter(spanWrapper);
-		emitter.start(spanWrapper.getParentId(), spanWrapper.getOperationName());
 		this.finishSpanOnClose = finishSpanOnClose;
+		emitter.start(spanWrapper);
 	}
 
 	@Override
 	public void close() {
+		if (delegate == null) {
+			// Already closed
+			return;
+		}
+		if (!stack.isOwnedByCurrentThread()) {
+			LOG.warning("Ignoring close of a scope that was handed over to another thread");
+			return;
+		}
+		if (stack.active() != this) {
+			LOG.warning("Ignoring close of a scope that is not the active one");
+			return;
+		}
 		delegate.close();
 		closeEmitter();
 		if (finishSpanOnClose) {
 			spanWrapper.closeEmitter();
 		}
-		scopeManagerWrapper.setActive(parentScope);
+		delegate = null;
+		spanWrapper = null;
+		stack.closed(this);
 	}
 
 	@Override
@@ -63,6 +84,14 @@ final class ScopeWrapper implements Scope {
 		return spanWrapper;
 	}
 
+	int depth() {
+		return depth;
+	}
+
+	SpanWrapper spanWrapper() {
+		return spanWrapper;
+	}
+
 	private void closeEmitter() {
 		try {
 			emitter.close();
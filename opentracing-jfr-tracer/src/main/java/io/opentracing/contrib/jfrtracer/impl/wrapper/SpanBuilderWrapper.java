@@ -31,7 +31,11 @@ final class SpanBuilderWrapper implements SpanBuilder {
 	private final String operationName;
 	// Not sure how likely it is that these builders get passed around,
 	// but assumption is the mother of all...
-	private volatile String parentId;
+	// The parent is kept rather than its id, so that the id is only formatted
+	// if an event actually needs it.
+	private volatile SpanWrapper parent;
+	private volatile SpanContext parentContext;
+	private volatile boolean ignoreActiveSpan;
 
 	SpanBuilderWrapper(TracerWrapper owner, String operationName, SpanBuilder delegate) {
 		this.owner = owner;
@@ -45,7 +49,7 @@ final class SpanBuilderWrapper implements SpanBuilder {
 		if (parent == null) {
 			return this;
 		}
-		parentId = parent.toSpanId();
+		setParent(null, parent);
 		return this;
 	}
 
@@ -55,7 +59,11 @@ final class SpanBuilderWrapper implements SpanBuilder {
 		if (parent == null) {
 			return this;
 		}
-		parentId = parent.context().toSpanId();
+		if (parent instanceof SpanWrapper) {
+			setParent((SpanWrapper) parent, null);
+		} else {
+			setParent(null, parent.context());
+		}
 		return this;
 	}
 
@@ -65,13 +73,14 @@ final class SpanBuilderWrapper implements SpanBuilder {
 		if (referencedContext == null) {
 			return this;
 		}
-		parentId = referencedContext.toSpanId();
+		setParent(null, referencedContext);
 		return this;
 	}
 
 	@Override
 	public SpanBuilder ignoreActiveSpan() {
 		delegate.ignoreActiveSpan();
+		ignoreActiveSpan = true;
 		return this;
 	}
 
@@ -114,25 +123,41 @@ final class SpanBuilderWrapper implements SpanBuilder {
 	@Override
 	@Deprecated
 	public Span startManual() {
-		return new SpanWrapper(getParentSpanId(), delegate.startManual(), operationName);
+		return createWrapper(delegate.startManual());
 	}
 
 	@Override
 	public Span start() {
-		SpanWrapper spanWrapper = new SpanWrapper(getParentSpanId(), delegate.start(), operationName);
+		SpanWrapper spanWrapper = createWrapper(delegate.start());
 		spanWrapper.start();
 		return spanWrapper;
 	}
 
-	private String getParentSpanId() {
-		Span activeSpan = owner.scopeManager().activeSpan();
-		return parentId != null ? parentId : activeSpan != null ? activeSpan.context().toSpanId() : null;
+	private SpanWrapper createWrapper(Span span) {
+		SpanWrapper parent = this.parent;
+		SpanContext parentContext = this.parentContext;
+		if (parent == null && parentContext == null && !ignoreActiveSpan) {
+			Span activeSpan = owner.scopeManager().activeSpan();
+			if (activeSpan instanceof SpanWrapper) {
+				parent = (SpanWrapper) activeSpan;
+			} else if (activeSpan != null) {
+				parentContext = activeSpan.context();
+			}
+		}
+		return new SpanWrapper(owner, parent, parentContext, span, operationName);
+	}
+
+	private void setParent(SpanWrapper parent, SpanContext parentContext) {
+		this.parent = parent;
+		this.parentContext = parentContext;
 	}
 
 	/**
 	 * hook for unit test
 	 */
 	String parentId() {
-		return parentId;
+		SpanWrapper parent = this.parent;
+		SpanContext parentContext = this.parentContext;
+		return parent != null ? parent.getSpanId() : parentContext != null ? parentContext.toSpanId() : null;
 	}
 }
@@ -19,30 +19,65 @@ import java.util.Map;
 
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
-import io.opentracing.contrib.jfrtracer.impl.jfr.JfrEmitter;
-import io.opentracing.contrib.jfrtracer.impl.jfr.JfrEmitterFactory;
+import io.opentracing.contrib.jfrtracer.impl.jfr.JfrSpan;
 import io.opentracing.tag.Tag;
 
 /**
  * Wrapper for {@link Span}.
+ * <p>
+ * The ids are only formatted when an emitter first asks for them, and are then cached for all
+ * later span and scope events. The parent id is taken from the parent wrapper when there is one,
+ * so that it is not formatted once more for every child. The caching of the string ids is racy on
+ * purpose; since the ids never change, the worst case is that an id is formatted more than once.
+ * The binary ids are read together, see {@link NativeIds}, and published through a volatile flag.
+ * Whether the span is recorded at all is decided the first time an emitter asks, as well.
+ * <p>
+ * The state of the span event lives in the {@link JfrSpan} super class, so that recording a span
+ * does not need any objects of its own besides this wrapper.
  */
-final class SpanWrapper implements Span {
-	static JfrEmitterFactory EMITTER_FACTORY = new JfrEmitterFactory();
+final class SpanWrapper extends JfrSpan implements Span {
+	private static final byte UNDECIDED = 0;
+	private static final byte SAMPLED = 1;
+	private static final byte NOT_SAMPLED = 2;
 
-	private final String parentId;
+	private final TracerWrapper owner;
+	private final SpanWrapper parent;
+	private final SpanContext parentContext;
 	private final Span delegate;
-	private final JfrEmitter spanEmitter;
 	// If we don't want to support updates of the operation name, this could be
 	// final too...
 	// If we want to ignore the fact that this could be updated in a separate
 	// thread, we could make it non-volatile...
 	private volatile String operationName;
+	private String traceId;
+	private String spanId;
+	private String parentId;
+	private long binaryTraceIdHigh;
+	private long binaryTraceIdLow;
+	private long binarySpanId;
+	private long binaryParentId;
+	private volatile boolean binaryIdsRead;
+	private byte sampled;
 
-	SpanWrapper(String parentId, Span delegate, String operationName) {
+	/**
+	 * @param owner
+	 *            the tracer creating the span.
+	 * @param parent
+	 *            the wrapper of the parent span, if known.
+	 * @param parentContext
+	 *            the context of the parent span, used if the parent wrapper is not known.
+	 * @param delegate
+	 *            the span to wrap.
+	 * @param operationName
+	 *            the operation name of the span.
+	 */
+	SpanWrapper(TracerWrapper owner, SpanWrapper parent, SpanContext parentContext, Span delegate,
+			String operationName) {
+		this.owner = owner;
 		this.delegate = delegate;
-		this.parentId = parentId;
+		this.parent = parent;
+		this.parentContext = parentContext;
 		this.operationName = operationName;
-		spanEmitter = EMITTER_FACTORY.createSpanEmitter(delegate);
 	}
 
 	@Override
@@ -133,20 +168,114 @@ final class SpanWrapper implements Span {
 	}
 
 	void start() {
-		spanEmitter.start(parentId, operationName);
+		owner.getEmitterFactory().startSpan(this);
 	}
 
-	String getOperationName() {
+	@Override
+	public String getOperationName() {
 		return operationName;
 	}
 
-	String getParentId() {
-		return parentId;
+	@Override
+	public String getTraceId() {
+		String id = traceId;
+		if (id == null) {
+			id = delegate.context().toTraceId();
+			traceId = id;
+		}
+		return id;
+	}
+
+	@Override
+	public String getSpanId() {
+		String id = spanId;
+		if (id == null) {
+			id = delegate.context().toSpanId();
+			spanId = id;
+		}
+		return id;
+	}
+
+	/**
+	 * The sampling decision, including the one of the delegate if followed, is made once per trace.
+	 * Children of a wrapped parent are in the same trace, and take the decision of the parent.
+	 */
+	@Override
+	public boolean isRecorded() {
+		byte decision = sampled;
+		if (decision == UNDECIDED) {
+			boolean recorded;
+			if (parent != null) {
+				recorded = parent.isRecorded();
+			} else {
+				TraceIdSampler sampler = owner.getSampler();
+				recorded = (sampler.isSamplingAll() || sampler.isSampled(getBinaryTraceIdHigh(), getBinaryTraceIdLow()))
+						&& owner.isSampledByDelegate(delegate);
+			}
+			decision = recorded ? SAMPLED : NOT_SAMPLED;
+			sampled = decision;
+		}
+		return decision == SAMPLED;
+	}
+
+	@Override
+	public long getBinaryTraceIdHigh() {
+		readBinaryIds();
+		return binaryTraceIdHigh;
+	}
+
+	@Override
+	public long getBinaryTraceIdLow() {
+		readBinaryIds();
+		return binaryTraceIdLow;
+	}
+
+	@Override
+	public long getBinarySpanId() {
+		readBinaryIds();
+		return binarySpanId;
+	}
+
+	@Override
+	public long getBinaryParentId() {
+		readBinaryIds();
+		return binaryParentId;
+	}
+
+	private void readBinaryIds() {
+		if (binaryIdsRead) {
+			return;
+		}
+		SpanContext context = delegate.context();
+		NativeIds ids = NativeIds.forContext(context);
+		binaryTraceIdHigh = ids.traceIdHigh(context);
+		binaryTraceIdLow = ids.traceIdLow(context);
+		binarySpanId = ids.spanId(context);
+		if (parent != null) {
+			binaryParentId = parent.getBinarySpanId();
+		} else if (parentContext != null) {
+			binaryParentId = NativeIds.forContext(parentContext).spanId(parentContext);
+		}
+		binaryIdsRead = true;
+	}
+
+	@Override
+	public String getParentId() {
+		String id = parentId;
+		if (id == null) {
+			if (parent != null) {
+				id = parent.getSpanId();
+			} else if (parentContext != null) {
+				id = parentContext.toSpanId();
+			}
+			parentId = id;
+		}
+		return id;
 	}
 
 	void closeEmitter() {
 		try {
-			spanEmitter.close();
+			owner.getEmitterFactory().finishSpan(this);
 		} catch (Exception e) {
 			// Ignore any JFR related problems at this point
 		}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import io.opentracing.contrib.jfrtracer.impl.jfr.TraceIdHash;
+
+/**
+ * Decides whether to record the events of a trace from a hash of its trace id. Since the decision
+ * only depends on the trace id and the rate, all nodes configured with the same rate record the
+ * same traces.
+ */
+final class TraceIdSampler {
+	private final double rate;
+
+	/**
+	 * @param rate
+	 *            the fraction of the traces to record, between 0 and 1.
+	 */
+	TraceIdSampler(double rate) {
+		this.rate = rate;
+	}
+
+	/**
+	 * @return true if all traces are recorded, and there is no need to ask.
+	 */
+	boolean isSamplingAll() {
+		return rate >= 1;
+	}
+
+	/**
+	 * @param traceIdHigh
+	 *            the upper 64 bits of the trace id, 0 for 64 bit trace ids.
+	 * @param traceIdLow
+	 *            the lower 64 bits of the trace id.
+	 * @return true if the events of the trace are to be recorded.
+	 */
+	boolean isSampled(long traceIdHigh, long traceIdLow) {
+		if (isSamplingAll()) {
+			return true;
+		}
+		return TraceIdHash.fraction(traceIdHigh, traceIdLow) < rate;
+	}
+}
@@ -15,11 +15,16 @@
  */
 package io.opentracing.contrib.jfrtracer.impl.wrapper;
 
+import java.util.Map;
+
 import io.opentracing.Scope;
 import io.opentracing.ScopeManager;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+import io.opentracing.contrib.jfrtracer.SamplingInspector;
+import io.opentracing.contrib.jfrtracer.impl.jfr.JfrEmitterFactory;
 import io.opentracing.propagation.Format;
 
 import static java.util.Objects.isNull;
@@ -40,11 +45,25 @@ import static java.util.Objects.requireNonNull;
 public final class TracerWrapper implements Tracer {
 
 	private final Tracer delegate;
+	private final JfrTracerConfiguration configuration;
+	private final JfrEmitterFactory emitterFactory;
+	private final TraceIdSampler sampler;
+	private final DelegateSampling delegateSampling;
 	private final ScopeManagerWrapper scopeManager;
 
 	public TracerWrapper(Tracer delegate) {
+		this(delegate, JfrTracerConfiguration.DEFAULT);
+	}
+
+	public TracerWrapper(Tracer delegate, JfrTracerConfiguration configuration) {
 		this.delegate = requireNonNull(delegate);
-		this.scopeManager = new ScopeManagerWrapper(delegate.scopeManager());
+		this.configuration = configuration;
+		this.emitterFactory = new JfrEmitterFactory(configuration);
+		this.sampler = new TraceIdSampler(configuration.getSamplingRate());
+		this.delegateSampling = configuration.isFollowingDelegateSampling()
+				? new DelegateSampling(configuration.getSamplingInspectors())
+				: null;
+		this.scopeManager = new ScopeManagerWrapper(delegate.scopeManager(), this);
 	}
 
 	@Override
@@ -80,6 +99,35 @@ public final class TracerWrapper implements Tracer {
 		return scopeManager.activate(span, true);
 	}
 
+	JfrTracerConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	JfrEmitterFactory getEmitterFactory() {
+		return emitterFactory;
+	}
+
+	TraceIdSampler getSampler() {
+		return sampler;
+	}
+
+	/**
+	 * @return false if following the sampling of the delegate, and the delegate did not sample the
+	 *         span.
+	 */
+	boolean isSampledByDelegate(Span span) {
+		return delegateSampling == null
+				|| delegateSampling.inspect(span.context()) != SamplingInspector.Decision.NOT_SAMPLED;
+	}
+
+	/**
+	 * @return the number of span events suppressed by the rate limits of the configuration so
+	 *         far, per operation name.
+	 */
+	public Map<String, Long> getSuppressedSpanEvents() {
+		return emitterFactory.getSuppressedSpanEvents();
+	}
+
 	@Override
 	public void close() {
 		delegate.close();
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.logging.Level;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This is the JDK 11 or later implementation of the tracer health event, emitted by the flight
+ * recorder itself at the period given in the recording settings.
+ */
+final class JfrHealthEmitterImpl {
+
+	static {
+		try {
+			FlightRecorder.addPeriodicEvent(HealthEvent.class, JfrHealthEmitterImpl::emit);
+		} catch (RuntimeException e) {
+			AbstractJfrEmitter.LOGGER.log(Level.WARNING, "Failed to register the tracer health event", e);
+		}
+	}
+
+	@Name("io.opentracing.TracerHealth")
+	@Label("Tracer Health")
+	@Description("Statistics of the JFR tracer itself. The counts are totals since the start of the JVM.")
+	@Category("Open Tracing")
+	@StackTrace(false)
+	@Enabled(false)
+	@Period("1 s")
+	private static class HealthEvent extends Event {
+
+		@Label("Spans Emitted")
+		@Description("The number of span events committed")
+		private long spansEmitted;
+
+		@Label("Spans Dropped")
+		@Description("The number of span events dropped because the span event queue was full")
+		private long spansDropped;
+
+		@Label("Spans Sampled Out")
+		@Description("The number of span events not recorded because their traces were not sampled, or were sampled out while the queue was filling up")
+		private long spansSampledOut;
+
+		@Label("Spans Filtered")
+		@Description("The number of span events skipped by the thresholds or the rate limits")
+		private long spansFiltered;
+
+		@Label("Open Spans")
+		@Description("The number of recorded spans started, but not yet finished")
+		private long openSpans;
+
+		@Label("Spans Leaked")
+		@Description("The number of spans collected without having been finished, if open spans are tracked")
+		private long spansLeaked;
+
+		@Label("Scopes Emitted")
+		@Description("The number of scope events committed")
+		private long scopesEmitted;
+
+		@Label("Scopes Sampled Out")
+		@Description("The number of scope events not recorded because their traces were not sampled")
+		private long scopesSampledOut;
+
+		@Label("Scopes Filtered")
+		@Description("The number of scope events skipped by the thresholds")
+		private long scopesFiltered;
+
+		@Label("Queue Depth")
+		@Description("The number of span events waiting in the span event queue")
+		private int queueDepth;
+
+		@Label("Queue Capacity")
+		@Description("The number of slots in the span event queue, 0 if no span event has been queued")
+		private int queueCapacity;
+
+		@Label("Consumer Lag")
+		@Description("The time since the thread committing the span events last caught up with the queue")
+		@Timespan(Timespan.NANOSECONDS)
+		private long consumerLag;
+	}
+
+	private JfrHealthEmitterImpl() {
+	}
+
+	/**
+	 * Registers the health event, if not already done.
+	 */
+	static void register() {
+		// Done by the class initializer
+	}
+
+	private static void emit() {
+		HealthEvent event = new HealthEvent();
+		event.spansEmitted = TracerStatistics.SPANS_EMITTED.sum();
+		event.spansSampledOut = TracerStatistics.SPANS_SAMPLED_OUT.sum();
+		event.spansFiltered = TracerStatistics.SPANS_FILTERED.sum();
+		event.openSpans = TracerStatistics.OPEN_SPANS.sum();
+		event.spansLeaked = TracerStatistics.SPANS_LEAKED.sum();
+		event.scopesEmitted = TracerStatistics.SCOPES_EMITTED.sum();
+		event.scopesSampledOut = TracerStatistics.SCOPES_SAMPLED_OUT.sum();
+		event.scopesFiltered = TracerStatistics.SCOPES_FILTERED.sum();
+		SpanEventQueue queue = JfrSpanEmitterImpl.getQueue();
+		if (queue != null) {
+			event.spansDropped = queue.dropped();
+			event.spansSampledOut += queue.sampledOut();
+			event.queueDepth = queue.size();
+			event.queueCapacity = queue.capacity();
+			event.consumerLag = queue.lagNanos();
+		}
+		event.commit();
+	}
+}
@@ -16,24 +16,44 @@
 package io.opentracing.contrib.jfrtracer.impl.jfr;
 
 import jdk.jfr.Event;
+import jdk.jfr.EventType;
 import jdk.jfr.Name;
 import jdk.jfr.Label;
 import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
 import jdk.jfr.Description;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
 
-import io.opentracing.Span;
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
 
 /**
- * This is the JDK 9 or later implementation of the JfrEmitter.
+ * This is the JDK 9 or later implementation of the JfrScopeEmitter. The event object is reused
+ * between activations.
  */
-public class JfrScopeEmitterImpl extends AbstractJfrEmitter {
+public class JfrScopeEmitterImpl implements JfrScopeEmitter {
 
-	private ScopeEvent currentEvent;
+	private static final EventType SCOPE_EVENT_TYPE = EventType.getEventType(ScopeEvent.class);
+
+	private final JfrTracerConfiguration configuration;
+	private ScopeEvent event;
+	private boolean started;
+	private long thresholdNanos;
+	private long startNanos;
+	private boolean measuring;
+	private long startCpuTime;
+	private long startAllocatedBytes;
+
+	JfrScopeEmitterImpl(JfrTracerConfiguration configuration) {
+		this.configuration = configuration;
+	}
 
 	@Name("io.opentracing.Scope")
 	@Category("Open Tracing")
 	@Label("Scope")
 	@Description("Open tracing event corresponding to an activation scope")
+	@Threshold("0 ms")
 	private static class ScopeEvent extends Event {
 
 		@Label("Operation Name")
@@ -47,34 +67,112 @@ public class JfrScopeEmitterImpl extends AbstractJfrEmitter {
 
 		@Label("Parent Id")
 		private String parentId;
-	}
 
-	JfrScopeEmitterImpl(Span span) {
-		super(span);
+		@Label("Binary Trace Id High")
+		@Description("The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@Label("Binary Trace Id Low")
+		@Description("The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@Label("Binary Span Id")
+		@Description("The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@Label("Binary Parent Id")
+		@Description("The parent span id, if ids are recorded in binary form")
+		private long binaryParentId;
+
+		@Label("CPU Time")
+		@Description("The CPU time of the thread while the scope was active, including nested scopes, if the threadResources setting is enabled")
+		@Timespan(Timespan.NANOSECONDS)
+		private long cpuTime;
+
+		@Label("Allocated")
+		@Description("The bytes allocated by the thread while the scope was active, including nested scopes, if the threadResources setting is enabled")
+		@DataAmount(DataAmount.BYTES)
+		private long allocated;
+
+		@Label("Thread Resources")
+		@Description("Record the CPU time and the allocated bytes of the thread while the scope was active")
+		@SettingDefinition
+		protected boolean threadResources(ThreadResourcesSetting setting) {
+			return true;
+		}
 	}
 
 	@Override
 	public void close() {
-		if (currentEvent != null) {
-			currentEvent.commit();
-			currentEvent = null;
+		if (started) {
+			started = false;
+			if (thresholdNanos > 0 && System.nanoTime() - startNanos < thresholdNanos) {
+				TracerStatistics.SCOPES_FILTERED.increment();
+				return;
+			}
+			if (measuring) {
+				event.cpuTime = ThreadResources.delta(startCpuTime, ThreadResources.cpuTime());
+				event.allocated = ThreadResources.delta(startAllocatedBytes, ThreadResources.allocatedBytes());
+			}
+			// A reused event would otherwise keep the duration of its first commit
+			event.end();
+			if (event.shouldCommit()) {
+				event.commit();
+				TracerStatistics.SCOPES_EMITTED.increment();
+			} else {
+				TracerStatistics.SCOPES_FILTERED.increment();
+			}
 		}
 	}
 
+	/**
+	 * @return true if scope events are currently being recorded.
+	 */
+	static boolean isEventEnabled() {
+		return RecordingStateTracker.isRecording() && SCOPE_EVENT_TYPE.isEnabled();
+	}
+
 	@Override
-	public void start(String parentId, String operationName) {
-		currentEvent = new ScopeEvent();
-		if (currentEvent.isEnabled()) {
-			currentEvent.operationName = operationName;
-			currentEvent.parentId = parentId;
-			currentEvent.traceId = span.context().toTraceId();
-			currentEvent.spanId = span.context().toSpanId();
+	public void start(SpanInfo span) {
+		if (!isEventEnabled()) {
+			return;
+		}
+		if (!span.isRecorded()) {
+			TracerStatistics.SCOPES_SAMPLED_OUT.increment();
+			return;
+		}
+		if (event == null) {
+			event = new ScopeEvent();
+		}
+		event.operationName = span.getOperationName();
+		if (configuration.isBinaryIds()) {
+			event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+			event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+			event.binarySpanId = span.getBinarySpanId();
+			event.binaryParentId = span.getBinaryParentId();
+		} else {
+			event.parentId = span.getParentId();
+			event.traceId = span.getTraceId();
+			event.spanId = span.getSpanId();
+		}
+		thresholdNanos = configuration.getThresholdNanos(event.operationName);
+		if (thresholdNanos > 0) {
+			startNanos = System.nanoTime();
+		}
+		measuring = ThreadResourcesSetting.isEnabled();
+		if (measuring) {
+			startCpuTime = ThreadResources.cpuTime();
+			startAllocatedBytes = ThreadResources.allocatedBytes();
+		} else {
+			event.cpuTime = 0;
+			event.allocated = 0;
 		}
-		currentEvent.begin();
+		event.begin();
+		started = true;
 	}
 
 	@Override
 	public String toString() {
-		return "JDK 11 JFR Emitter";
+		return "JDK 11 JFR Scope Emitter";
 	}
 }
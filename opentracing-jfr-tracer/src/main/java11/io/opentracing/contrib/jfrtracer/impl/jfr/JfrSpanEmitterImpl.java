@@ -16,26 +16,34 @@
 package io.opentracing.contrib.jfrtracer.impl.jfr;
 
 import jdk.jfr.Event;
+import jdk.jfr.EventType;
 import jdk.jfr.Name;
 import jdk.jfr.Label;
 import jdk.jfr.Category;
 import jdk.jfr.Description;
 import jdk.jfr.StackTrace;
-
-import io.opentracing.Span;
+import jdk.jfr.Threshold;
 
 /**
- * This is the JDK 9 or later implementation of the JfrEmitter.
+ * This is the JDK 9 or later implementation for emitting Span events.
+ * <p>
+ * By default the span events are committed on a separate thread, started along with the queue
+ * once the first span event is queued. For the tracers configured with synchronous spans, the
+ * event is instead committed directly on the thread finishing the span. Either way, the events
+ * are returned to a pool shared by all threads once committed.
  */
-public class JfrSpanEmitterImpl extends AbstractJfrSpanEmitter {
+public final class JfrSpanEmitterImpl extends AbstractJfrSpanEmitter {
 
-	private volatile SpanEvent currentEvent;
+	private static final EventType SPAN_EVENT_TYPE = EventType.getEventType(SpanEvent.class);
+	private static final ConcurrentPool<SpanEvent> POOL = new ConcurrentPool<>(POOL_SIZE);
+	private static volatile SpanEventQueue queue;
 
 	@Name("io.opentracing.Span")
 	@Label("Span")
 	@Description("Open tracing event corresponding to a span.")
 	@Category("Open Tracing")
 	@StackTrace(false)
+	@Threshold("0 ms")
 	private static class SpanEvent extends Event {
 
 		@Label("Operation Name")
@@ -50,6 +58,22 @@ public class JfrSpanEmitterImpl extends AbstractJfrSpanEmitter {
 		@Label("Parent Id")
 		private String parentId;
 
+		@Label("Binary Trace Id High")
+		@Description("The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@Label("Binary Trace Id Low")
+		@Description("The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@Label("Binary Span Id")
+		@Description("The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@Label("Binary Parent Id")
+		@Description("The parent span id, if ids are recorded in binary form")
+		private long binaryParentId;
+
 		@Label("Start Thread")
 		@Description("The thread initiating the span")
 		private Thread startThread;
@@ -59,65 +83,110 @@ public class JfrSpanEmitterImpl extends AbstractJfrSpanEmitter {
 		private Thread endThread;
 	}
 
-	private static class EndEventCommand implements Runnable {
+	private JfrSpanEmitterImpl() {
+	}
 
-		private final SpanEvent event;
+	/**
+	 * @return true if span events are currently being recorded.
+	 */
+	static boolean isEventEnabled() {
+		return RecordingStateTracker.isRecording() && SPAN_EVENT_TYPE.isEnabled();
+	}
 
-		EndEventCommand(SpanEvent event) {
-			this.event = event;
+	static void start(JfrSpan span, long thresholdNanos) {
+		SpanEvent event = POOL.take();
+		if (event == null) {
+			event = new SpanEvent();
 		}
+		event.startThread = Thread.currentThread();
+		startTiming(span, thresholdNanos);
+		event.begin();
+		span.event = event;
+		span.started = 1;
+		TracerStatistics.OPEN_SPANS.increment();
+	}
 
-		@Override
-		public void run() {
-			if (event.shouldCommit()) {
-				event.end();
-				event.commit();
-			}
+	static void finish(JfrSpan span) {
+		if (!finishTiming(span)) {
+			return;
+		}
+		TracerStatistics.OPEN_SPANS.decrement();
+		SpanEvent event = (SpanEvent) span.event;
+		event.end();
+		if (isBelowThreshold(span)) {
+			TracerStatistics.SPANS_FILTERED.increment();
+			release(span, event);
+			return;
+		}
+		event.endThread = Thread.currentThread();
+		if (span.synchronous) {
+			commit(span);
+		} else {
+			queue().offer(span);
 		}
 	}
 
-	private static class BeginEventCommand implements Runnable {
-
-		private final SpanEvent event;
-
-		BeginEventCommand(SpanEvent event) {
-			this.event = event;
+	private static void commit(JfrSpan span) {
+		SpanEvent event = (SpanEvent) span.event;
+		event.operationName = span.getOperationName();
+		// The event is reused, so the fields of the other id format are cleared
+		if (span.binaryIds) {
+			event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+			event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+			event.binarySpanId = span.getBinarySpanId();
+			event.binaryParentId = span.getBinaryParentId();
+			event.parentId = null;
+			event.traceId = null;
+			event.spanId = null;
+		} else {
+			event.parentId = span.getParentId();
+			event.traceId = span.getTraceId();
+			event.spanId = span.getSpanId();
+			event.binaryTraceIdHigh = 0;
+			event.binaryTraceIdLow = 0;
+			event.binarySpanId = 0;
+			event.binaryParentId = 0;
 		}
-
-		@Override
-		public void run() {
-			event.begin();
+		// The duration, and thereby the threshold, is known since end()
+		if (event.shouldCommit()) {
+			event.commit();
+			TracerStatistics.SPANS_EMITTED.increment();
+		} else {
+			TracerStatistics.SPANS_FILTERED.increment();
 		}
+		release(span, event);
 	}
 
-	JfrSpanEmitterImpl(Span span) {
-		super(span);
+	/**
+	 * @return the queue handing the span events over to the thread committing them, or null if no
+	 *         span event has been queued yet.
+	 */
+	static SpanEventQueue getQueue() {
+		return queue;
 	}
 
-	@Override
-	public void close() {
-		if (currentEvent != null) {
-			currentEvent.endThread = Thread.currentThread();
-			EXECUTOR.execute(new EndEventCommand(currentEvent));
-			currentEvent = null;
+	private static SpanEventQueue queue() {
+		SpanEventQueue current = queue;
+		if (current == null) {
+			synchronized (JfrSpanEmitterImpl.class) {
+				current = queue;
+				if (current == null) {
+					current = createQueue(JfrSpanEmitterImpl::commit, JfrSpanEmitterImpl::discard);
+					queue = current;
+				}
+			}
 		}
+		return current;
 	}
 
-	@Override
-	public void start(String parentId, String operationName) {
-		currentEvent = new SpanEvent();
-		if (currentEvent.isEnabled()) {
-			currentEvent.operationName = operationName;
-			currentEvent.parentId = parentId;
-			currentEvent.traceId = span.context().toTraceId();
-			currentEvent.spanId = span.context().toSpanId();
-			currentEvent.startThread = Thread.currentThread();
-		}
-		EXECUTOR.execute(new BeginEventCommand(currentEvent));
+	private static void discard(JfrSpan span) {
+		release(span, (SpanEvent) span.event);
 	}
 
-	@Override
-	public String toString() {
-		return "JDK 11 JFR Emitter";
+	private static void release(JfrSpan span, SpanEvent event) {
+		span.event = null;
+		event.startThread = null;
+		event.endThread = null;
+		POOL.offer(event);
 	}
 }
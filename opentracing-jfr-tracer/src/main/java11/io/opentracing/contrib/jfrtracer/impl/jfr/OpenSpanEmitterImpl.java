@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.logging.Level;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This is the JDK 11 or later implementation of the open span event, emitted for every open span by
+ * the flight recorder itself at the period given in the recording settings.
+ */
+final class OpenSpanEmitterImpl {
+	private static final EventType OPEN_SPAN_EVENT_TYPE = EventType.getEventType(OpenSpanEvent.class);
+
+	static {
+		try {
+			FlightRecorder.addPeriodicEvent(OpenSpanEvent.class, OpenSpanEmitterImpl::emit);
+		} catch (RuntimeException e) {
+			AbstractJfrEmitter.LOGGER.log(Level.WARNING, "Failed to register the open span event", e);
+		}
+	}
+
+	@Name("io.opentracing.OpenSpan")
+	@Label("Open Span")
+	@Description("A span started, but not yet finished, when the open spans were listed")
+	@Category("Open Tracing")
+	@StackTrace(false)
+	@Period("10 s")
+	private static class OpenSpanEvent extends Event {
+
+		@Label("Operation Name")
+		private String operationName;
+
+		@Label("Trace Id")
+		private String traceId;
+
+		@Label("Span Id")
+		private String spanId;
+
+		@Label("Parent Id")
+		private String parentId;
+
+		@Label("Binary Trace Id High")
+		@Description("The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@Label("Binary Trace Id Low")
+		@Description("The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@Label("Binary Span Id")
+		@Description("The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@Label("Binary Parent Id")
+		@Description("The parent span id, if ids are recorded in binary form")
+		private long binaryParentId;
+
+		@Label("Age")
+		@Description("The time since the span was started")
+		@Timespan(Timespan.NANOSECONDS)
+		private long age;
+
+		@Label("Start Thread")
+		@Description("The thread starting the span")
+		private Thread startThread;
+
+		@Label("Probable Leak")
+		@Description("The span has been open for longer than the leak limit of the tracer")
+		private boolean probableLeak;
+	}
+
+	private OpenSpanEmitterImpl() {
+	}
+
+	/**
+	 * Registers the open span event, if not already done.
+	 */
+	static void register() {
+		// Done by the class initializer
+	}
+
+	/**
+	 * @return true if the open spans are currently being listed.
+	 */
+	static boolean isEventEnabled() {
+		return RecordingStateTracker.isRecording() && OPEN_SPAN_EVENT_TYPE.isEnabled();
+	}
+
+	private static void emit() {
+		if (!isEventEnabled()) {
+			return;
+		}
+		long now = System.nanoTime();
+		OpenSpanRegistry.INSTANCE.forEach((span, openSpan) -> {
+			OpenSpanEvent event = new OpenSpanEvent();
+			event.operationName = span.getOperationName();
+			if (openSpan.binaryIds) {
+				event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+				event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+				event.binarySpanId = span.getBinarySpanId();
+				event.binaryParentId = span.getBinaryParentId();
+			} else {
+				event.traceId = span.getTraceId();
+				event.spanId = span.getSpanId();
+				event.parentId = span.getParentId();
+			}
+			event.age = now - openSpan.startNanos;
+			event.startThread = openSpan.startThread;
+			event.probableLeak = openSpan.isProbableLeak(now);
+			event.commit();
+		});
+	}
+}
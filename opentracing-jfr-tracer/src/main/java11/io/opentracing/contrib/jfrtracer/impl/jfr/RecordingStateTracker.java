@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Keeps track of whether any flight recording is running, so that the emitters can be skipped
+ * altogether with nothing more than a volatile read when nothing is recorded.
+ */
+final class RecordingStateTracker {
+	private static final Set<Long> RUNNING_RECORDINGS = new HashSet<>();
+	private static volatile boolean recording;
+	private static volatile long startedRecordings;
+
+	static {
+		if (FlightRecorder.isAvailable()) {
+			FlightRecorder.addListener(new FlightRecorderListener() {
+				@Override
+				public void recordingStateChanged(Recording changed) {
+					update(changed);
+				}
+			});
+			if (FlightRecorder.isInitialized()) {
+				for (Recording running : FlightRecorder.getFlightRecorder().getRecordings()) {
+					update(running);
+				}
+			}
+		}
+	}
+
+	private RecordingStateTracker() {
+	}
+
+	/**
+	 * @return true if at least one recording is running.
+	 */
+	static boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * @return the number of recordings started so far.
+	 */
+	static long getStartedRecordings() {
+		return startedRecordings;
+	}
+
+	private static void update(Recording changed) {
+		synchronized (RUNNING_RECORDINGS) {
+			if (changed.getState() == RecordingState.RUNNING) {
+				if (RUNNING_RECORDINGS.add(changed.getId())) {
+					startedRecordings++;
+				}
+			} else {
+				RUNNING_RECORDINGS.remove(changed.getId());
+			}
+			recording = !RUNNING_RECORDINGS.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+/**
+ * This is the JDK 11 or later implementation for dumping the data of the running recordings.
+ * <p>
+ * The dump is a snapshot of the recordings, trimmed to the maximum age. The recorder drops data a
+ * chunk at a time, so the dump may reach further back than asked for.
+ */
+final class SlowSpanDumperImpl extends AbstractSlowSpanDumper {
+
+	SlowSpanDumperImpl(JfrTracerConfiguration configuration) {
+		super(configuration);
+	}
+
+	@Override
+	boolean isRecording() {
+		return RecordingStateTracker.isRecording();
+	}
+
+	@Override
+	boolean dump(Path file, Duration maxAge) throws IOException {
+		try (Recording snapshot = FlightRecorder.getFlightRecorder().takeSnapshot()) {
+			if (snapshot.getSize() == 0) {
+				return false;
+			}
+			snapshot.setMaxAge(maxAge);
+			snapshot.dump(file);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.Set;
+
+import jdk.jfr.SettingControl;
+
+/**
+ * The <code>threadResources</code> setting of the scope event. When true in any running recording,
+ * the scope events record the CPU time and the allocated bytes of the thread while the scope was
+ * active.
+ * <p>
+ * Must be public for JFR to instantiate it.
+ */
+public final class ThreadResourcesSetting extends SettingControl {
+	private static volatile boolean enabled;
+
+	private String value = "false";
+
+	/**
+	 * @return true if the CPU time and the allocated bytes are to be recorded.
+	 */
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public String combine(Set<String> values) {
+		return Boolean.toString(values.contains("true"));
+	}
+
+	@Override
+	public void setValue(String value) {
+		this.value = value;
+		enabled = "true".equals(value) && ThreadResources.isAvailable();
+	}
+
+	@Override
+	public String getValue() {
+		return value;
+	}
+}
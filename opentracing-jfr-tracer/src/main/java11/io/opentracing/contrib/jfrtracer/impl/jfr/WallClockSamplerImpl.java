@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is the JDK 11 or later implementation of the wall clock sampler. The samples are emitted on
+ * the sampling thread, so the stack trace of the sampled thread is recorded as text, in a separate
+ * event shared by the samples with the same stack trace.
+ */
+final class WallClockSamplerImpl extends AbstractWallClockSampler {
+
+	private static final EventType SAMPLE_EVENT_TYPE = EventType.getEventType(WallClockSampleEvent.class);
+
+	@Name("io.opentracing.WallClockStackTrace")
+	@Label("Wall Clock Stack Trace")
+	@Description("The text of a stack trace of the wall clock samples")
+	@Category("Open Tracing")
+	@StackTrace(false)
+	private static class WallClockStackTraceEvent extends Event {
+
+		@Label("Stack Trace Id")
+		@Description("The id the wall clock samples refer to the stack trace with")
+		private long stackTraceId;
+
+		@Label("Frames")
+		@Description("The frames of the stack trace, top frame first, one frame per line")
+		private String frames;
+	}
+
+	@Name("io.opentracing.WallClockSample")
+	@Label("Wall Clock Sample")
+	@Description("The stack trace of a thread with an active scope of a sampled span")
+	@Category("Open Tracing")
+	@StackTrace(false)
+	private static class WallClockSampleEvent extends Event {
+
+		@Label("Operation Name")
+		private String operationName;
+
+		@Label("Trace Id")
+		private String traceId;
+
+		@Label("Span Id")
+		private String spanId;
+
+		@Label("Binary Trace Id High")
+		@Description("The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@Label("Binary Trace Id Low")
+		@Description("The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@Label("Binary Span Id")
+		@Description("The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@Label("Sampled Thread")
+		private Thread sampledThread;
+
+		@Label("Thread State")
+		private String threadState;
+
+		@Label("Stack Trace Id")
+		@Description("The id of the stack trace of the sampled thread, see the Wall Clock Stack Trace events")
+		private long stackTraceId;
+	}
+
+	private WallClockSamplerImpl(long periodNanos) {
+		super(periodNanos);
+	}
+
+	/**
+	 * @param periodNanos
+	 *            the sampling period.
+	 * @return the started sampler.
+	 */
+	static AbstractWallClockSampler start(long periodNanos) {
+		WallClockSamplerImpl sampler = new WallClockSamplerImpl(periodNanos);
+		sampler.start();
+		return sampler;
+	}
+
+	@Override
+	boolean isEventEnabled() {
+		return RecordingStateTracker.isRecording() && SAMPLE_EVENT_TYPE.isEnabled();
+	}
+
+	@Override
+	void emit(Thread thread, SpanInfo span, Thread.State state, long stackTraceId, boolean binaryIds) {
+		WallClockSampleEvent event = new WallClockSampleEvent();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.operationName = span.getOperationName();
+		if (binaryIds) {
+			event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+			event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+			event.binarySpanId = span.getBinarySpanId();
+		} else {
+			event.traceId = span.getTraceId();
+			event.spanId = span.getSpanId();
+		}
+		event.sampledThread = thread;
+		event.threadState = state.name();
+		event.stackTraceId = stackTraceId;
+		event.commit();
+	}
+
+	@Override
+	void emitStackTrace(long stackTraceId, StackTraceElement[] stackTrace) {
+		WallClockStackTraceEvent event = new WallClockStackTraceEvent();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.stackTraceId = stackTraceId;
+		event.frames = format(stackTrace);
+		event.commit();
+	}
+
+	@Override
+	long startedRecordings() {
+		return RecordingStateTracker.getStartedRecordings();
+	}
+}
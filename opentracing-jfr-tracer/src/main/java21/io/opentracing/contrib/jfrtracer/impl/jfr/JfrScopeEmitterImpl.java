@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.logging.Level;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Name;
+import jdk.jfr.Label;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+
+/**
+ * This is the JDK 21 or later implementation of the JfrScopeEmitter. The event object is reused
+ * between activations.
+ * <p>
+ * In addition to the JDK 11 version, the event tells whether the scope was activated on a virtual
+ * thread, and if so which carrier threads it was mounted on when the scope was activated and
+ * closed. The carrier thread is only available if <code>java.lang</code> is opened to the tracer,
+ * e.g. with <code>--add-opens java.base/java.lang=ALL-UNNAMED</code>.
+ */
+public class JfrScopeEmitterImpl implements JfrScopeEmitter {
+
+	private static final EventType SCOPE_EVENT_TYPE = EventType.getEventType(ScopeEvent.class);
+	private static final MethodHandle CURRENT_CARRIER_THREAD = findCurrentCarrierThread();
+
+	private final JfrTracerConfiguration configuration;
+	private ScopeEvent event;
+	private boolean started;
+	private long thresholdNanos;
+	private long startNanos;
+	private boolean measuring;
+	private long startCpuTime;
+	private long startAllocatedBytes;
+
+	JfrScopeEmitterImpl(JfrTracerConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	@Name("io.opentracing.Scope")
+	@Category("Open Tracing")
+	@Label("Scope")
+	@Description("Open tracing event corresponding to an activation scope")
+	@Threshold("0 ms")
+	private static class ScopeEvent extends Event {
+
+		@Label("Operation Name")
+		private String operationName;
+
+		@Label("Trace Id")
+		private String traceId;
+
+		@Label("Span Id")
+		private String spanId;
+
+		@Label("Parent Id")
+		private String parentId;
+
+		@Label("Binary Trace Id High")
+		@Description("The upper 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdHigh;
+
+		@Label("Binary Trace Id Low")
+		@Description("The lower 64 bits of the trace id, if ids are recorded in binary form")
+		private long binaryTraceIdLow;
+
+		@Label("Binary Span Id")
+		@Description("The span id, if ids are recorded in binary form")
+		private long binarySpanId;
+
+		@Label("Binary Parent Id")
+		@Description("The parent span id, if ids are recorded in binary form")
+		private long binaryParentId;
+
+		@Label("Virtual")
+		@Description("True if the scope was activated on a virtual thread")
+		private boolean virtual;
+
+		@Label("Start Carrier Thread")
+		@Description("The carrier thread the virtual thread was mounted on when the scope was activated")
+		private Thread startCarrierThread;
+
+		@Label("End Carrier Thread")
+		@Description("The carrier thread the virtual thread was mounted on when the scope was closed")
+		private Thread endCarrierThread;
+
+		@Label("CPU Time")
+		@Description("The CPU time of the thread while the scope was active, including nested scopes, if the threadResources setting is enabled")
+		@Timespan(Timespan.NANOSECONDS)
+		private long cpuTime;
+
+		@Label("Allocated")
+		@Description("The bytes allocated by the thread while the scope was active, including nested scopes, if the threadResources setting is enabled")
+		@DataAmount(DataAmount.BYTES)
+		private long allocated;
+
+		@Label("Thread Resources")
+		@Description("Record the CPU time and the allocated bytes of the thread while the scope was active")
+		@SettingDefinition
+		protected boolean threadResources(ThreadResourcesSetting setting) {
+			return true;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (started) {
+			started = false;
+			if (thresholdNanos > 0 && System.nanoTime() - startNanos < thresholdNanos) {
+				TracerStatistics.SCOPES_FILTERED.increment();
+				return;
+			}
+			if (event.virtual) {
+				event.endCarrierThread = currentCarrierThread();
+			}
+			if (measuring) {
+				event.cpuTime = ThreadResources.delta(startCpuTime, ThreadResources.cpuTime());
+				event.allocated = ThreadResources.delta(startAllocatedBytes, ThreadResources.allocatedBytes());
+			}
+			// A reused event would otherwise keep the duration of its first commit
+			event.end();
+			if (event.shouldCommit()) {
+				event.commit();
+				TracerStatistics.SCOPES_EMITTED.increment();
+			} else {
+				TracerStatistics.SCOPES_FILTERED.increment();
+			}
+		}
+	}
+
+	/**
+	 * @return true if scope events are currently being recorded.
+	 */
+	static boolean isEventEnabled() {
+		return RecordingStateTracker.isRecording() && SCOPE_EVENT_TYPE.isEnabled();
+	}
+
+	@Override
+	public void start(SpanInfo span) {
+		if (!isEventEnabled()) {
+			return;
+		}
+		if (!span.isRecorded()) {
+			TracerStatistics.SCOPES_SAMPLED_OUT.increment();
+			return;
+		}
+		if (event == null) {
+			event = new ScopeEvent();
+		}
+		event.operationName = span.getOperationName();
+		if (configuration.isBinaryIds()) {
+			event.binaryTraceIdHigh = span.getBinaryTraceIdHigh();
+			event.binaryTraceIdLow = span.getBinaryTraceIdLow();
+			event.binarySpanId = span.getBinarySpanId();
+			event.binaryParentId = span.getBinaryParentId();
+		} else {
+			event.parentId = span.getParentId();
+			event.traceId = span.getTraceId();
+			event.spanId = span.getSpanId();
+		}
+		event.virtual = Thread.currentThread().isVirtual();
+		event.startCarrierThread = event.virtual ? currentCarrierThread() : null;
+		event.endCarrierThread = null;
+		thresholdNanos = configuration.getThresholdNanos(event.operationName);
+		if (thresholdNanos > 0) {
+			startNanos = System.nanoTime();
+		}
+		measuring = ThreadResourcesSetting.isEnabled();
+		if (measuring) {
+			startCpuTime = ThreadResources.cpuTime();
+			startAllocatedBytes = ThreadResources.allocatedBytes();
+		} else {
+			event.cpuTime = 0;
+			event.allocated = 0;
+		}
+		event.begin();
+		started = true;
+	}
+
+	private static Thread currentCarrierThread() {
+		if (CURRENT_CARRIER_THREAD == null) {
+			return null;
+		}
+		try {
+			return (Thread) CURRENT_CARRIER_THREAD.invokeExact();
+		} catch (Throwable t) {
+			return null;
+		}
+	}
+
+	private static MethodHandle findCurrentCarrierThread() {
+		try {
+			return MethodHandles.privateLookupIn(Thread.class, MethodHandles.lookup()).findStatic(Thread.class,
+					"currentCarrierThread", MethodType.methodType(Thread.class));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			AbstractJfrEmitter.LOGGER.log(Level.FINE,
+					"Carrier threads will not be recorded, open java.lang to the tracer to record them", e);
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "JDK 21 JFR Scope Emitter";
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.contrib.jfrtracer.impl.jfr.ConcurrentPool;
+
+/**
+ * This is the JDK 21 or later implementation of the wrapper for {@link ScopeManager}.
+ * <p>
+ * Platform threads keep their scope stack for as long as they live. Virtual threads release
+ * theirs into a shared {@link ConcurrentPool} as soon as their last scope is closed, so that a
+ * million short-lived virtual threads do not mean a million stacks of scopes and emitters. The
+ * size of the pool is set in the configuration of the tracer.
+ * <p>
+ * A virtual thread still finds its stack through a thread local entry, set on its first activation
+ * and removed with the release of the stack, as there is no other per thread state to hang it on.
+ * The entry goes into the thread local map already created by the thread local scope manager of
+ * the delegate, so it adds one map entry for as long as the thread has scopes. The thread local
+ * benchmarks of VirtualThreadBenchmark measure that cost.
+ */
+final class ScopeManagerWrapper implements ScopeManager {
+
+	private final ScopeManager delegate;
+	private final TracerWrapper owner;
+	private final ThreadLocal<ScopeStack> scopeStack = new ThreadLocal<>();
+	private final ConcurrentPool<ScopeStack> pool;
+
+	ScopeManagerWrapper(ScopeManager delegate, TracerWrapper owner) {
+		this.delegate = delegate;
+		this.owner = owner;
+		this.pool = new ConcurrentPool<>(owner.getConfiguration().getScopeStackPoolSize());
+	}
+
+	@Override
+	@Deprecated
+	public Scope activate(Span span, boolean finishSpanOnClose) {
+		ScopeStack stack = stack();
+		if (!(span instanceof SpanWrapper)) {
+			// This should be rather unlikely...
+			SpanWrapper spanWrapper = new SpanWrapper(owner, null, null, span, "");
+			return stack.push(spanWrapper, delegate.activate(span, finishSpanOnClose), finishSpanOnClose);
+		}
+		SpanWrapper spanWrapper = (SpanWrapper) span;
+		return stack.push(spanWrapper, delegate.activate(spanWrapper.getDelegate(), finishSpanOnClose),
+				finishSpanOnClose);
+	}
+
+	@Override
+	@Deprecated
+	public Scope active() {
+		ScopeStack stack = scopeStack.get();
+		return stack == null ? null : stack.active();
+	}
+
+	@Override
+	public Scope activate(Span arg) {
+		return activate(arg, false);
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public Span activeSpan() {
+		Scope scope = active();
+		return scope == null ? null : scope.span();
+	}
+
+	private ScopeStack stack() {
+		ScopeStack stack = scopeStack.get();
+		if (stack == null) {
+			if (Thread.currentThread().isVirtual()) {
+				stack = pool.take();
+				if (stack == null) {
+					stack = new ScopeStack(owner.getEmitterFactory(), this::release);
+				} else {
+					stack.adopt();
+				}
+			} else {
+				stack = new ScopeStack(owner.getEmitterFactory());
+			}
+			scopeStack.set(stack);
+		}
+		return stack;
+	}
+
+	private void release(ScopeStack stack) {
+		scopeStack.remove();
+		pool.offer(stack);
+	}
+}
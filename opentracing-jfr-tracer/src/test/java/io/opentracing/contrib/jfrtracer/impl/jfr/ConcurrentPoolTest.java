@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentPoolTest {
+
+	@Test
+	void emptyPool() {
+		assertNull(new ConcurrentPool<Object>(4).take());
+	}
+
+	@Test
+	void offerAndTake() {
+		ConcurrentPool<Object> pool = new ConcurrentPool<>(1);
+		Object element = new Object();
+		assertTrue(pool.offer(element));
+		assertFalse(pool.offer(new Object()));
+		assertSame(element, pool.take());
+		assertNull(pool.take());
+	}
+
+	@Test
+	void elementsAreNotHandedOutTwice() throws InterruptedException {
+		ConcurrentPool<AtomicInteger> pool = new ConcurrentPool<>(8);
+		AtomicInteger[] elements = new AtomicInteger[8];
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = new AtomicInteger();
+			pool.offer(elements[i]);
+		}
+		AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 100_000; j++) {
+					AtomicInteger element = pool.take();
+					if (element != null) {
+						if (element.incrementAndGet() != 1) {
+							failures.incrementAndGet();
+						}
+						element.decrementAndGet();
+						pool.offer(element);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+}
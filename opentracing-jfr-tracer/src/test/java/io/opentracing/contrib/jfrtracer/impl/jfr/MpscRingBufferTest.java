@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MpscRingBufferTest {
+
+	@Test
+	void capacityIsRoundedToPowerOfTwo() {
+		MpscRingBuffer<Object> buffer = new MpscRingBuffer<>(50, 8, "test", e -> {
+		});
+		buffer.start();
+		try {
+			assertEquals(64, buffer.capacity());
+		} finally {
+			buffer.stop();
+		}
+	}
+
+	@Test
+	void elementsAreHandledInOrder() {
+		List<Integer> handled = new ArrayList<>();
+		MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(16, 4, "test", e -> {
+			synchronized (handled) {
+				handled.add(e);
+			}
+		});
+		buffer.start();
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertTrue(buffer.offer(i));
+			}
+			await().atMost(5, TimeUnit.SECONDS).until(() -> {
+				synchronized (handled) {
+					return handled.size() == 10;
+				}
+			});
+			for (int i = 0; i < 10; i++) {
+				assertEquals(i, handled.get(i).intValue());
+			}
+		} finally {
+			buffer.stop();
+		}
+	}
+
+	@Test
+	void dropsWhenFull() throws InterruptedException {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		MpscRingBuffer<Object> buffer = new MpscRingBuffer<>(4, 1, "test", e -> {
+			blocked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		buffer.start();
+		try {
+			// The first element is held by the consumer, leaving the slots free again
+			assertTrue(buffer.offer(this));
+			assertTrue(blocked.await(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 4; i++) {
+				assertTrue(buffer.offer(this));
+			}
+			assertFalse(buffer.offer(this));
+			assertEquals(4, buffer.size());
+		} finally {
+			release.countDown();
+			buffer.stop();
+		}
+	}
+
+	@Test
+	void pollRemovesOldest() throws InterruptedException {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Integer> handled = new ArrayList<>();
+		MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4, 1, "test", e -> {
+			blocked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (handled) {
+				handled.add(e);
+			}
+		});
+		buffer.start();
+		try {
+			assertTrue(buffer.offer(-1));
+			assertTrue(blocked.await(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 4; i++) {
+				assertTrue(buffer.offer(i));
+			}
+			assertEquals(0, buffer.poll().intValue());
+			assertTrue(buffer.offer(4));
+			release.countDown();
+			await().atMost(5, TimeUnit.SECONDS).until(() -> {
+				synchronized (handled) {
+					return handled.size() == 5;
+				}
+			});
+			assertEquals(Arrays.asList(-1, 1, 2, 3, 4), handled);
+			assertNull(buffer.poll());
+		} finally {
+			release.countDown();
+			buffer.stop();
+		}
+	}
+
+	@Test
+	void multipleProducers() throws InterruptedException {
+		AtomicLong handled = new AtomicLong();
+		AtomicLong dropped = new AtomicLong();
+		MpscRingBuffer<Object> buffer = new MpscRingBuffer<>(1024, 64, "test", e -> handled.incrementAndGet());
+		buffer.start();
+		try {
+			Thread[] producers = new Thread[8];
+			for (int i = 0; i < producers.length; i++) {
+				producers[i] = new Thread(() -> {
+					for (int j = 0; j < 10_000; j++) {
+						if (!buffer.offer(this)) {
+							dropped.incrementAndGet();
+						}
+					}
+				});
+				producers[i].start();
+			}
+			for (Thread producer : producers) {
+				producer.join();
+			}
+			await().atMost(5, TimeUnit.SECONDS).until(() -> handled.get() + dropped.get() == 80_000);
+		} finally {
+			buffer.stop();
+		}
+	}
+
+	@Test
+	void flushWaitsForHandledElements() throws InterruptedException {
+		List<Integer> handled = new ArrayList<>();
+		MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(64, 4, "test", e -> {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+			synchronized (handled) {
+				handled.add(e);
+			}
+		});
+		buffer.start();
+		try {
+			for (int i = 0; i < 20; i++) {
+				assertTrue(buffer.offer(i));
+			}
+			assertTrue(buffer.flush(TimeUnit.SECONDS.toNanos(5)));
+			synchronized (handled) {
+				assertEquals(20, handled.size());
+			}
+			// Nothing to wait for
+			assertTrue(buffer.flush(0));
+		} finally {
+			buffer.stop();
+		}
+		assertTrue(buffer.offer(20));
+		assertFalse(buffer.flush(TimeUnit.MILLISECONDS.toNanos(10)));
+	}
+}
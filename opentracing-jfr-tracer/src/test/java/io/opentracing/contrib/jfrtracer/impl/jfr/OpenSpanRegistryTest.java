@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenSpanRegistryTest {
+
+	@Test
+	void registerAndUnregister() {
+		OpenSpanRegistry registry = new OpenSpanRegistry(4);
+		TestSpan first = new TestSpan();
+		TestSpan second = new TestSpan();
+		TestSpan third = new TestSpan();
+		registry.register(first, Long.MAX_VALUE, false);
+		registry.register(second, Long.MAX_VALUE, false);
+		registry.register(third, Long.MAX_VALUE, false);
+		assertEquals(new HashSet<>(Arrays.asList(first, second, third)), openSpans(registry));
+
+		registry.unregister(second);
+		assertNull(second.openSpan);
+		// Finishing a span twice is harmless
+		registry.unregister(second);
+		assertEquals(new HashSet<>(Arrays.asList(first, third)), openSpans(registry));
+
+		registry.unregister(first);
+		registry.unregister(third);
+		assertTrue(openSpans(registry).isEmpty());
+	}
+
+	@Test
+	void startThreadAndLeakLimit() {
+		OpenSpanRegistry registry = new OpenSpanRegistry(1);
+		TestSpan span = new TestSpan();
+		registry.register(span, TimeUnit.HOURS.toNanos(1), false);
+		registry.forEach((open, openSpan) -> {
+			assertSame(span, open);
+			assertSame(Thread.currentThread(), openSpan.startThread);
+			assertFalse(openSpan.isProbableLeak(System.nanoTime()));
+			assertTrue(openSpan.isProbableLeak(openSpan.startNanos + TimeUnit.HOURS.toNanos(2)));
+		});
+	}
+
+	@Test
+	void concurrentSpans() throws InterruptedException {
+		OpenSpanRegistry registry = new OpenSpanRegistry(4);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				List<TestSpan> spans = new ArrayList<>();
+				for (int j = 0; j < 10_000; j++) {
+					TestSpan span = new TestSpan();
+					registry.register(span, Long.MAX_VALUE, false);
+					spans.add(span);
+					if (spans.size() == 16) {
+						// Finish the spans on another stripe than the one they were started on
+						spans.forEach(registry::unregister);
+						spans.clear();
+					}
+				}
+				spans.forEach(registry::unregister);
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(openSpans(registry).isEmpty());
+	}
+
+	@Test
+	void collectedSpansAreCountedAsLeaked() {
+		OpenSpanRegistry registry = new OpenSpanRegistry(2);
+		long leaked = TracerStatistics.SPANS_LEAKED.sum();
+		registry.register(new TestSpan(), Long.MAX_VALUE, false);
+		TestSpan finished = new TestSpan();
+		registry.register(finished, Long.MAX_VALUE, false);
+		registry.unregister(finished);
+		finished = null;
+		await().atMost(10, TimeUnit.SECONDS).until(() -> {
+			System.gc();
+			return openSpans(registry).isEmpty() && TracerStatistics.SPANS_LEAKED.sum() > leaked;
+		});
+		assertEquals(leaked + 1, TracerStatistics.SPANS_LEAKED.sum());
+	}
+
+	private static Set<JfrSpan> openSpans(OpenSpanRegistry registry) {
+		Set<JfrSpan> spans = new HashSet<>();
+		registry.forEach((span, openSpan) -> spans.add(span));
+		return spans;
+	}
+
+	private static final class TestSpan extends JfrSpan {
+
+		@Override
+		public boolean isRecorded() {
+			return true;
+		}
+
+		@Override
+		public String getTraceId() {
+			return "1";
+		}
+
+		@Override
+		public String getSpanId() {
+			return "1";
+		}
+
+		@Override
+		public String getParentId() {
+			return null;
+		}
+
+		@Override
+		public long getBinaryTraceIdHigh() {
+			return 0;
+		}
+
+		@Override
+		public long getBinaryTraceIdLow() {
+			return 1;
+		}
+
+		@Override
+		public long getBinarySpanId() {
+			return 1;
+		}
+
+		@Override
+		public long getBinaryParentId() {
+			return 0;
+		}
+
+		@Override
+		public String getOperationName() {
+			return "test span";
+		}
+	}
+}
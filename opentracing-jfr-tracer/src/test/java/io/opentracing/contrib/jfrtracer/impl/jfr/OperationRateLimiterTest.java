@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationRateLimiterTest {
+	private static final int ATTEMPTS = 10_000;
+
+	@Test
+	void limitsSustainedRate() {
+		RateLimiter limiter = new RateLimiter(100);
+		int acquired = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < ATTEMPTS; i++) {
+			if (limiter.tryAcquire()) {
+				acquired++;
+			}
+		}
+		long elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000L;
+		// At most the initial burst of one second, plus the rate for the time spent
+		assertTrue(acquired >= 1);
+		assertTrue(acquired <= 100 * (elapsedSeconds + 2), "Acquired " + acquired);
+		assertEquals(ATTEMPTS - acquired, limiter.suppressed());
+	}
+
+	@Test
+	void singleThreadGetsWholeRate() {
+		// As many stripes as on an 8 core machine
+		RateLimiter limiter = new RateLimiter(100, 8);
+		int acquired = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			if (limiter.tryAcquire()) {
+				acquired++;
+			}
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < TimeUnit.MILLISECONDS.toNanos(1500));
+		// The initial burst of one second, plus the rate for the time spent, whatever the stripes
+		double expected = 100 + 100 * elapsed / 1e9;
+		assertTrue(acquired >= expected * 0.8, "Acquired " + acquired + ", expected about " + (int) expected);
+		assertTrue(acquired <= expected * 1.1, "Acquired " + acquired + ", expected about " + (int) expected);
+	}
+
+	@Test
+	void limitsPerOperation() {
+		OperationRateLimiter limiter = new OperationRateLimiter(
+				JfrTracerConfiguration.builder().rateLimit(10).rateLimit("unlimited", 0).build());
+		for (int i = 0; i < ATTEMPTS; i++) {
+			assertTrue(limiter.tryAcquire("unlimited"));
+			limiter.tryAcquire("health check");
+			limiter.tryAcquire("cache get");
+		}
+		Map<String, Long> suppressed = limiter.getSuppressed();
+		assertNull(suppressed.get("unlimited"));
+		assertTrue(suppressed.get("health check") > ATTEMPTS / 2);
+		assertTrue(suppressed.get("cache get") > ATTEMPTS / 2);
+	}
+
+	@Test
+	void sharesLimiterBeyondMaxOperations() {
+		OperationRateLimiter limiter = new OperationRateLimiter(JfrTracerConfiguration.builder().rateLimit(1)
+				.rateLimit("unlimited", 0).rateLimit("limited", 10).build());
+		for (int i = 0; i < OperationRateLimiter.MAX_OPERATIONS; i++) {
+			assertTrue(limiter.tryAcquire("operation " + i));
+		}
+		assertTrue(limiter.tryAcquire("one more"));
+		assertFalse(limiter.tryAcquire("and another"));
+		// Configured operations seen after the others keep their own limits
+		for (int i = 0; i < ATTEMPTS; i++) {
+			assertTrue(limiter.tryAcquire("unlimited"));
+		}
+		assertTrue(limiter.tryAcquire("limited"));
+		Map<String, Long> suppressed = limiter.getSuppressed();
+		assertEquals(1, suppressed.size());
+		assertEquals(Long.valueOf(1), suppressed.get(OperationRateLimiter.OTHER_OPERATIONS));
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpanEventQueueTest {
+	private static final int CAPACITY = 8;
+
+	private final CountDownLatch blocked = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final List<JfrSpan> discarded = Collections.synchronizedList(new ArrayList<>());
+	private SpanEventQueue queue;
+
+	@AfterEach
+	void stop() {
+		release.countDown();
+		if (queue != null) {
+			queue.stop();
+		}
+	}
+
+	@Test
+	void dropNewest() throws InterruptedException {
+		List<JfrSpan> spans = fill(BackpressurePolicy.DROP_NEWEST, 0);
+		TestSpan newest = new TestSpan(CAPACITY);
+		assertFalse(queue.offer(newest));
+		assertEquals(1, queue.dropped());
+		assertEquals(Collections.singletonList(newest), discarded);
+		assertEquals(CAPACITY, queue.size());
+		assertEquals(CAPACITY, spans.size());
+		Thread.sleep(20);
+		assertTrue(queue.lagNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+
+	@Test
+	void dropOldest() throws InterruptedException {
+		List<JfrSpan> spans = fill(BackpressurePolicy.DROP_OLDEST, 0);
+		assertTrue(queue.offer(new TestSpan(CAPACITY)));
+		assertEquals(1, queue.dropped());
+		assertEquals(Collections.singletonList(spans.get(0)), discarded);
+		assertEquals(CAPACITY, queue.size());
+	}
+
+	@Test
+	void blockUntilTimeout() throws InterruptedException {
+		fill(BackpressurePolicy.BLOCK, TimeUnit.MILLISECONDS.toNanos(20));
+		long start = System.nanoTime();
+		assertFalse(queue.offer(new TestSpan(CAPACITY)));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+		assertEquals(1, queue.dropped());
+	}
+
+	@Test
+	void blockUntilRoom() throws InterruptedException {
+		fill(BackpressurePolicy.BLOCK, TimeUnit.SECONDS.toNanos(10));
+		Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			release.countDown();
+		});
+		releaser.start();
+		assertTrue(queue.offer(new TestSpan(CAPACITY)));
+		assertEquals(0, queue.dropped());
+		releaser.join();
+	}
+
+	@Test
+	void sampleUnderLoad() throws InterruptedException {
+		queue = createQueue(BackpressurePolicy.SAMPLE, 0);
+		holdConsumer();
+		// Up to half full, all spans are kept
+		for (int i = 0; i < CAPACITY / 2 + 1; i++) {
+			assertTrue(queue.offer(new TestSpan(i)));
+		}
+		// With three free slots out of eight, the traces hashing below 0.75 are kept
+		long kept = traceIdHashing(0, 0.75);
+		long sampledOut = traceIdHashing(0.75, 1);
+		assertFalse(queue.offer(new TestSpan(sampledOut)));
+		assertEquals(1, queue.sampledOut());
+		assertTrue(queue.offer(new TestSpan(kept)));
+		assertEquals(0, queue.dropped());
+		assertEquals(1, discarded.size());
+	}
+
+	@Test
+	void policyNames() {
+		for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+			assertEquals(policy, BackpressurePolicy.fromName(policy.getName()));
+		}
+		assertEquals(BackpressurePolicy.DROP_OLDEST, BackpressurePolicy.fromName(" Drop-Oldest "));
+		assertEquals(Arrays.asList("drop-newest", "drop-oldest", "block", "sample"), Arrays.asList(
+				BackpressurePolicy.DROP_NEWEST.getName(), BackpressurePolicy.DROP_OLDEST.getName(),
+				BackpressurePolicy.BLOCK.getName(), BackpressurePolicy.SAMPLE.getName()));
+	}
+
+	@Test
+	void consumerStartsAfterConstruction() throws InterruptedException {
+		List<LogRecord> warnings = Collections.synchronizedList(new ArrayList<>());
+		Handler handler = new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+					warnings.add(record);
+				}
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger(MpscRingBuffer.class.getName());
+		logger.addHandler(handler);
+		List<SpanEventQueue> queues = new ArrayList<>();
+		try {
+			// The consumer threads call back the queues as soon as they are started
+			for (int i = 0; i < 20; i++) {
+				queues.add(new SpanEventQueue(CAPACITY, 1, "test", BackpressurePolicy.DROP_NEWEST, 0, span -> {
+				}, discarded::add));
+			}
+			Thread.sleep(50);
+		} finally {
+			queues.forEach(SpanEventQueue::stop);
+			logger.removeHandler(handler);
+		}
+		assertTrue(warnings.isEmpty(), () -> "Logged " + warnings.get(0).getMessage() + ": " + warnings.get(0).getThrown());
+	}
+
+	/**
+	 * Creates a queue with the given policy, and fills it while the consumer is held up.
+	 *
+	 * @return the spans in the queue, oldest first.
+	 */
+	private List<JfrSpan> fill(BackpressurePolicy policy, long blockTimeoutNanos) throws InterruptedException {
+		queue = createQueue(policy, blockTimeoutNanos);
+		holdConsumer();
+		List<JfrSpan> spans = new ArrayList<>();
+		for (int i = 0; i < CAPACITY; i++) {
+			TestSpan span = new TestSpan(i);
+			assertTrue(queue.offer(span));
+			spans.add(span);
+		}
+		return spans;
+	}
+
+	private SpanEventQueue createQueue(BackpressurePolicy policy, long blockTimeoutNanos) {
+		return new SpanEventQueue(CAPACITY, 1, "test", policy, blockTimeoutNanos, span -> {
+			blocked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, discarded::add);
+	}
+
+	/**
+	 * Queues a span that is taken by the consumer, which then waits for the release.
+	 */
+	private void holdConsumer() throws InterruptedException {
+		assertTrue(queue.offer(new TestSpan(-1)));
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+	}
+
+	private static long traceIdHashing(double from, double to) {
+		for (long id = 1;; id++) {
+			double fraction = TraceIdHash.fraction(0, id);
+			if (fraction >= from && fraction < to) {
+				return id;
+			}
+		}
+	}
+
+	private static final class TestSpan extends JfrSpan {
+		private final long traceId;
+
+		TestSpan(long traceId) {
+			this.traceId = traceId;
+		}
+
+		@Override
+		public boolean isRecorded() {
+			return true;
+		}
+
+		@Override
+		public String getTraceId() {
+			return Long.toHexString(traceId);
+		}
+
+		@Override
+		public String getSpanId() {
+			return getTraceId();
+		}
+
+		@Override
+		public String getParentId() {
+			return null;
+		}
+
+		@Override
+		public long getBinaryTraceIdHigh() {
+			return 0;
+		}
+
+		@Override
+		public long getBinaryTraceIdLow() {
+			return traceId;
+		}
+
+		@Override
+		public long getBinarySpanId() {
+			return traceId;
+		}
+
+		@Override
+		public long getBinaryParentId() {
+			return 0;
+		}
+
+		@Override
+		public String getOperationName() {
+			return "test span";
+		}
+	}
+}
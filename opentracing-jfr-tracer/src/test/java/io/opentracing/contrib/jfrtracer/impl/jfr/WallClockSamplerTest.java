@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.jfr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WallClockSamplerTest {
+	private final TestSampler sampler = new TestSampler();
+
+	@Test
+	void threadsAreOnlyRegisteredWhileEnabled() {
+		SampledThread thread = sampler.createSampledThread(false);
+		thread.activated(new TestSpan(true));
+		thread.emptied();
+		assertEquals(0, sampler.registeredThreads());
+
+		sampler.enabled = true;
+		TestSpan outer = new TestSpan(true);
+		thread.activated(outer);
+		thread.activated(new TestSpan(true));
+		assertEquals(1, sampler.registeredThreads());
+		thread.activated(outer);
+		sampler.sample(true);
+		assertEquals(1, sampler.samples.size());
+		assertSame(outer, sampler.samples.get(0));
+
+		thread.emptied();
+		assertEquals(0, sampler.registeredThreads());
+	}
+
+	@Test
+	void spansThatAreNotSampledAreSkipped() {
+		sampler.enabled = true;
+		SampledThread thread = sampler.createSampledThread(false);
+		thread.activated(new TestSpan(true));
+		thread.activated(new TestSpan(false));
+		sampler.sample(true);
+		assertTrue(sampler.samples.isEmpty());
+		thread.emptied();
+	}
+
+	@Test
+	void deadThreadsArePrunedWhileDisabled() throws InterruptedException {
+		sampler.enabled = true;
+		Thread dying = new Thread(() -> sampler.createSampledThread(false).activated(new TestSpan(true)));
+		dying.start();
+		dying.join();
+		assertEquals(1, sampler.registeredThreads());
+		sampler.enabled = false;
+		sampler.sample(false);
+		assertEquals(0, sampler.registeredThreads());
+	}
+
+	@Test
+	void stackTracesAreEmittedOncePerRecording() {
+		sampler.enabled = true;
+		SampledThread thread = sampler.createSampledThread(false);
+		thread.activated(new TestSpan(true));
+		for (int i = 0; i < 3; i++) {
+			sampler.sample(true);
+		}
+		assertEquals(3, sampler.samples.size());
+		assertEquals(1, sampler.stackTraceIds.size());
+		for (long stackTraceId : sampler.sampleStackTraceIds) {
+			assertEquals(sampler.stackTraceIds.get(0).longValue(), stackTraceId);
+		}
+
+		sampler.startedRecordings++;
+		sampler.sample(true);
+		assertEquals(2, sampler.stackTraceIds.size());
+		sampler.sample(false);
+		sampler.sample(true);
+		assertEquals(3, sampler.stackTraceIds.size());
+		thread.emptied();
+	}
+
+	private static final class TestSampler extends AbstractWallClockSampler {
+		private final List<SpanInfo> samples = new ArrayList<>();
+		private final List<Long> sampleStackTraceIds = new ArrayList<>();
+		private final List<Long> stackTraceIds = new ArrayList<>();
+		private volatile boolean enabled;
+		private long startedRecordings;
+
+		TestSampler() {
+			super(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+
+		@Override
+		boolean isEventEnabled() {
+			return enabled;
+		}
+
+		@Override
+		void emit(Thread thread, SpanInfo span, Thread.State state, long stackTraceId, boolean binaryIds) {
+			assertSame(Thread.currentThread(), thread);
+			samples.add(span);
+			sampleStackTraceIds.add(stackTraceId);
+		}
+
+		@Override
+		void emitStackTrace(long stackTraceId, StackTraceElement[] stackTrace) {
+			stackTraceIds.add(stackTraceId);
+		}
+
+		@Override
+		long startedRecordings() {
+			return startedRecordings;
+		}
+	}
+
+	private static final class TestSpan implements SpanInfo {
+		private final boolean recorded;
+
+		TestSpan(boolean recorded) {
+			this.recorded = recorded;
+		}
+
+		@Override
+		public boolean isRecorded() {
+			return recorded;
+		}
+
+		@Override
+		public String getTraceId() {
+			return "1";
+		}
+
+		@Override
+		public String getSpanId() {
+			return "1";
+		}
+
+		@Override
+		public String getParentId() {
+			return null;
+		}
+
+		@Override
+		public long getBinaryTraceIdHigh() {
+			return 0;
+		}
+
+		@Override
+		public long getBinaryTraceIdLow() {
+			return 1;
+		}
+
+		@Override
+		public long getBinarySpanId() {
+			return 1;
+		}
+
+		@Override
+		public long getBinaryParentId() {
+			return 0;
+		}
+
+		@Override
+		public String getOperationName() {
+			return "test span";
+		}
+	}
+}
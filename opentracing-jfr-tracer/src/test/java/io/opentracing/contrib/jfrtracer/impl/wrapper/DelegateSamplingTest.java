@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import java.util.Collections;
+import java.util.Map.Entry;
+
+import org.junit.jupiter.api.Test;
+
+import brave.Tracing;
+import brave.opentracing.BraveTracer;
+import brave.sampler.Sampler;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.reporters.NoopReporter;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+import io.opentracing.contrib.jfrtracer.SamplingInspector;
+import io.opentracing.contrib.jfrtracer.SamplingInspector.Decision;
+import io.opentracing.mock.MockTracer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelegateSamplingTest {
+	private final DelegateSampling sampling = new DelegateSampling(Collections.emptyList());
+
+	@Test
+	void jaegerDecision() {
+		assertEquals(Decision.SAMPLED, sampling.inspect(jaegerContext(true)));
+		assertEquals(Decision.NOT_SAMPLED, sampling.inspect(jaegerContext(false)));
+	}
+
+	@Test
+	void braveDecision() {
+		assertEquals(Decision.SAMPLED, sampling.inspect(braveContext(Sampler.ALWAYS_SAMPLE)));
+		assertEquals(Decision.NOT_SAMPLED, sampling.inspect(braveContext(Sampler.NEVER_SAMPLE)));
+	}
+
+	@Test
+	void genericDecision() {
+		assertEquals(Decision.NOT_SAMPLED, sampling.inspect(new SampledContext(false)));
+		assertEquals(Decision.UNKNOWN, sampling.inspect(new MockTracer().buildSpan("test").start().context()));
+	}
+
+	@Test
+	void inspectorsAreAskedFirst() {
+		SamplingInspector inspector = context -> context instanceof SampledContext ? Decision.SAMPLED
+				: Decision.UNKNOWN;
+		DelegateSampling configured = new DelegateSampling(Collections.singletonList(inspector));
+		assertEquals(Decision.SAMPLED, configured.inspect(new SampledContext(false)));
+		assertEquals(Decision.NOT_SAMPLED, configured.inspect(jaegerContext(false)));
+	}
+
+	@Test
+	void serviceLoadedInspector() {
+		assertEquals(Decision.NOT_SAMPLED, sampling.inspect(new TestSamplingInspector.UnsampledContext()));
+	}
+
+	@Test
+	void spansFollowDelegate() {
+		JaegerTracer jaeger = new JaegerTracer.Builder("test").withReporter(new NoopReporter())
+				.withSampler(new ConstSampler(false)).build();
+		Tracer following = new TracerWrapper(jaeger,
+				JfrTracerConfiguration.builder().followDelegateSampling(true).build());
+		Tracer ignoring = new TracerWrapper(jaeger);
+		try {
+			assertFalse(((SpanWrapper) following.buildSpan("test").start()).isRecorded());
+			assertTrue(((SpanWrapper) ignoring.buildSpan("test").start()).isRecorded());
+		} finally {
+			jaeger.close();
+		}
+	}
+
+	private static SpanContext jaegerContext(boolean sampled) {
+		JaegerTracer tracer = new JaegerTracer.Builder("test").withReporter(new NoopReporter())
+				.withSampler(new ConstSampler(sampled)).build();
+		try {
+			return tracer.buildSpan("test").start().context();
+		} finally {
+			tracer.close();
+		}
+	}
+
+	private static SpanContext braveContext(Sampler sampler) {
+		try (Tracing tracing = Tracing.newBuilder().sampler(sampler).spanReporter(zipkin2.reporter.Reporter.NOOP)
+				.build()) {
+			Span span = BraveTracer.create(tracing).buildSpan("test").start();
+			return span.context();
+		}
+	}
+
+	public static final class SampledContext implements SpanContext {
+		private final boolean sampled;
+
+		SampledContext(boolean sampled) {
+			this.sampled = sampled;
+		}
+
+		public boolean isSampled() {
+			return sampled;
+		}
+
+		@Override
+		public String toTraceId() {
+			return "1";
+		}
+
+		@Override
+		public String toSpanId() {
+			return "1";
+		}
+
+		@Override
+		public Iterable<Entry<String, String>> baggageItems() {
+			return Collections.emptyList();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import java.util.Collections;
+import java.util.Map.Entry;
+
+import org.junit.jupiter.api.Test;
+
+import brave.Tracing;
+import brave.opentracing.BraveTracer;
+import io.jaegertracing.internal.JaegerTracer;
+import io.jaegertracing.internal.reporters.NoopReporter;
+import io.jaegertracing.internal.samplers.ConstSampler;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapAdapter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeIdsTest {
+
+	@Test
+	void jaegerIds() {
+		JaegerTracer tracer = new JaegerTracer.Builder("test").withReporter(new NoopReporter())
+				.withSampler(new ConstSampler(true)).withTraceId128Bit().build();
+		try {
+			assertMatchesHexIds(tracer.buildSpan("test").start().context());
+		} finally {
+			tracer.close();
+		}
+	}
+
+	@Test
+	void braveIds() {
+		try (Tracing tracing = Tracing.newBuilder().traceId128Bit(true).spanReporter(zipkin2.reporter.Reporter.NOOP)
+				.build()) {
+			assertMatchesHexIds(BraveTracer.create(tracing).buildSpan("test").start().context());
+		}
+	}
+
+	@Test
+	void incompleteBraveIds() {
+		try (Tracing tracing = Tracing.newBuilder().spanReporter(zipkin2.reporter.Reporter.NOOP).build()) {
+			Tracer tracer = new TracerWrapper(BraveTracer.create(tracing));
+			// Sampling flags only, so there are no ids to unwrap
+			SpanContext context = tracer.extract(Format.Builtin.HTTP_HEADERS,
+					new TextMapAdapter(Collections.singletonMap("X-B3-Sampled", "1")));
+			NativeIds ids = NativeIds.forContext(context);
+			assertEquals(NativeIds.parseId(context.toTraceId()), ids.traceIdLow(context));
+			assertEquals(NativeIds.parseId(context.toSpanId()), ids.spanId(context));
+
+			SpanWrapper span = (SpanWrapper) tracer.buildSpan("test").asChildOf(context).start();
+			assertEquals(NativeIds.parseId(context.toSpanId()), span.getBinaryParentId());
+			tracer.activateSpan(span).close();
+		}
+	}
+
+	@Test
+	void mockIds() {
+		Tracer tracer = new MockTracer();
+		SpanContext context = tracer.buildSpan("test").start().context();
+		NativeIds ids = NativeIds.forContext(context);
+		assertEquals(0, ids.traceIdHigh(context));
+		assertEquals(Long.parseLong(context.toTraceId()), ids.traceIdLow(context));
+		assertEquals(Long.parseLong(context.toSpanId()), ids.spanId(context));
+	}
+
+	@Test
+	void parsedIds() {
+		SpanContext context = new TestContext("123456789abcdef00fedcba987654321", "-42");
+		NativeIds ids = NativeIds.forContext(context);
+		assertEquals(0x123456789abcdef0L, ids.traceIdHigh(context));
+		assertEquals(0x0fedcba987654321L, ids.traceIdLow(context));
+		// Not hexadecimal, so hashed
+		assertNotEquals(0, ids.spanId(context));
+		assertEquals(ids.spanId(context), ids.spanId(new TestContext("1", "-42")));
+	}
+
+	@Test
+	void spanWrapperIds() {
+		Tracer tracer = new TracerWrapper(new MockTracer());
+		Span parent = tracer.buildSpan("parent").start();
+		SpanWrapper child = (SpanWrapper) tracer.buildSpan("child").asChildOf(parent).start();
+		assertEquals(Long.parseLong(child.getTraceId()), child.getBinaryTraceIdLow());
+		assertEquals(Long.parseLong(child.getSpanId()), child.getBinarySpanId());
+		assertEquals(Long.parseLong(parent.context().toSpanId()), child.getBinaryParentId());
+		assertEquals(0, ((SpanWrapper) parent).getBinaryParentId());
+	}
+
+	private static void assertMatchesHexIds(SpanContext context) {
+		NativeIds ids = NativeIds.forContext(context);
+		String traceId = context.toTraceId();
+		// Jaeger does not pad the upper half
+		assertTrue(traceId.length() > 16);
+		assertNotEquals(0, ids.traceIdHigh(context));
+		assertEquals(NativeIds.parseTraceIdHigh(traceId), ids.traceIdHigh(context));
+		assertEquals(NativeIds.parseId(traceId), ids.traceIdLow(context));
+		assertEquals(NativeIds.parseId(context.toSpanId()), ids.spanId(context));
+	}
+
+	private static final class TestContext implements SpanContext {
+		private final String traceId;
+		private final String spanId;
+
+		TestContext(String traceId, String spanId) {
+			this.traceId = traceId;
+			this.spanId = spanId;
+		}
+
+		@Override
+		public String toTraceId() {
+			return traceId;
+		}
+
+		@Override
+		public String toSpanId() {
+			return spanId;
+		}
+
+		@Override
+		public Iterable<Entry<String, String>> baggageItems() {
+			return Collections.emptyList();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import org.junit.jupiter.api.Test;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ScopeWrapperTest {
+
+	@Test
+	void closingOuterScopeFirstIsIgnored() {
+		TracerWrapper tracer = new TracerWrapper(new MockTracer());
+		Span outerSpan = tracer.buildSpan("outer").start();
+		Span innerSpan = tracer.buildSpan("inner").start();
+		Scope outer = tracer.activateSpan(outerSpan);
+		Scope inner = tracer.activateSpan(innerSpan);
+
+		outer.close();
+		assertSame(innerSpan, tracer.activeSpan());
+		inner.close();
+		assertSame(outerSpan, tracer.activeSpan());
+		outer.close();
+		assertNull(tracer.activeSpan());
+		assertNull(tracer.scopeManager().activeSpan());
+	}
+
+	@Test
+	void closingReusedScopeAgainIsIgnored() {
+		TracerWrapper tracer = new TracerWrapper(new MockTracer());
+		Span firstSpan = tracer.buildSpan("first").start();
+		Span secondSpan = tracer.buildSpan("second").start();
+		Span innerSpan = tracer.buildSpan("inner").start();
+		Scope first = tracer.activateSpan(firstSpan);
+		first.close();
+		first.close();
+		assertNull(tracer.activeSpan());
+
+		// The second activation reuses the scope of the first one
+		Scope second = tracer.activateSpan(secondSpan);
+		Scope inner = tracer.activateSpan(innerSpan);
+		first.close();
+		assertSame(innerSpan, tracer.activeSpan());
+		inner.close();
+		assertSame(secondSpan, tracer.activeSpan());
+		second.close();
+		assertNull(tracer.activeSpan());
+	}
+}
@@ -1,6 +1,7 @@
 package io.opentracing.contrib.jfrtracer.impl.wrapper;
 
 import io.opentracing.References;
+import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer.SpanBuilder;
@@ -97,4 +98,35 @@ class SpanBuilderWrapperTest {
         assertSame(spanBuilderWrapper, spanBuilder);
         assertNull(spanBuilderWrapper.parentId());
     }
+
+    @Test
+    void asChildOfOnParentSpanWrapper() {
+        MockTracer delegateTracer = new MockTracer();
+        TracerWrapper tracerWrapper = new TracerWrapper(delegateTracer);
+        Span parentSpan = tracerWrapper.buildSpan("parentSpan").start();
+        String operationName = "asChildOfOnParentSpanWrapper";
+        SpanBuilderWrapper spanBuilderWrapper = new SpanBuilderWrapper(tracerWrapper, operationName,
+                delegateTracer.buildSpan(operationName));
+
+        spanBuilderWrapper.asChildOf(parentSpan);
+        assertEquals(parentSpan.context().toSpanId(), spanBuilderWrapper.parentId());
+        SpanWrapper span = (SpanWrapper) spanBuilderWrapper.start();
+        assertEquals(parentSpan.context().toSpanId(), span.getParentId());
+        assertEquals(span.context().toSpanId(), span.getSpanId());
+        assertEquals(span.context().toTraceId(), span.getTraceId());
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    void ignoreActiveSpan() {
+        MockTracer delegateTracer = new MockTracer();
+        TracerWrapper tracerWrapper = new TracerWrapper(delegateTracer);
+        Span activeSpan = tracerWrapper.buildSpan("activeSpan").start();
+        try (Scope scope = tracerWrapper.activateSpan(activeSpan)) {
+            SpanWrapper child = (SpanWrapper) tracerWrapper.buildSpan("child").start();
+            assertEquals(activeSpan.context().toSpanId(), child.getParentId());
+            SpanWrapper root = (SpanWrapper) tracerWrapper.buildSpan("root").ignoreActiveSpan().start();
+            assertNull(root.getParentId());
+        }
+    }
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import java.util.Collections;
+import java.util.Map.Entry;
+
+import io.opentracing.SpanContext;
+import io.opentracing.contrib.jfrtracer.SamplingInspector;
+
+/**
+ * Registered with the service loader in the test resources.
+ */
+public final class TestSamplingInspector implements SamplingInspector {
+
+	@Override
+	public Decision inspect(SpanContext context) {
+		return context instanceof UnsampledContext ? Decision.NOT_SAMPLED : Decision.UNKNOWN;
+	}
+
+	static final class UnsampledContext implements SpanContext {
+		@Override
+		public String toTraceId() {
+			return "1";
+		}
+
+		@Override
+		public String toSpanId() {
+			return "1";
+		}
+
+		@Override
+		public Iterable<Entry<String, String>> baggageItems() {
+			return Collections.emptyList();
+		}
+	}
+}
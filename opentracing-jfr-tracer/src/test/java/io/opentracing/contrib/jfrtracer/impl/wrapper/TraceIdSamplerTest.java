@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer.impl.wrapper;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import io.opentracing.contrib.jfrtracer.JfrTracerConfiguration;
+import io.opentracing.mock.MockTracer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TraceIdSamplerTest {
+	private static final int TRACES = 100_000;
+
+	@Test
+	void samplesConfiguredFraction() {
+		TraceIdSampler sampler = new TraceIdSampler(0.25);
+		SplittableRandom random = new SplittableRandom(4711);
+		int sampled = 0;
+		for (int i = 0; i < TRACES; i++) {
+			if (sampler.isSampled(random.nextLong(), random.nextLong())) {
+				sampled++;
+			}
+		}
+		assertEquals(0.25, sampled / (double) TRACES, 0.01);
+	}
+
+	@Test
+	void sequentialIdsAreSpread() {
+		TraceIdSampler sampler = new TraceIdSampler(0.1);
+		int sampled = 0;
+		for (int i = 0; i < TRACES; i++) {
+			if (sampler.isSampled(0, i)) {
+				sampled++;
+			}
+		}
+		assertEquals(0.1, sampled / (double) TRACES, 0.01);
+	}
+
+	@Test
+	void sameDecisionEverywhere() {
+		TraceIdSampler sampler = new TraceIdSampler(0.5);
+		TraceIdSampler otherNode = new TraceIdSampler(0.5);
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < 1000; i++) {
+			long high = random.nextLong();
+			long low = random.nextLong();
+			assertEquals(sampler.isSampled(high, low), otherNode.isSampled(high, low));
+		}
+		assertTrue(new TraceIdSampler(1).isSampled(1, 2));
+		assertFalse(new TraceIdSampler(0).isSampled(1, 2));
+	}
+
+	@Test
+	void childrenFollowTheParent() {
+		TracerWrapper tracer = new TracerWrapper(new MockTracer(),
+				JfrTracerConfiguration.builder().samplingRate(0.5).build());
+		int recorded = 0;
+		for (int i = 0; i < 1000; i++) {
+			SpanWrapper parent = (SpanWrapper) tracer.buildSpan("parent").start();
+			SpanWrapper child = (SpanWrapper) tracer.buildSpan("child").asChildOf(parent).start();
+			assertEquals(parent.isRecorded(), child.isRecorded());
+			if (parent.isRecorded()) {
+				recorded++;
+			}
+		}
+		assertTrue(recorded > 400 && recorded < 600, "Recorded " + recorded);
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockTracer;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AllocationTest {
+
+	private static final int WARMUP = 20_000;
+	private static final int SPANS = 100_000;
+	private static final int BURST = 256;
+	private static final long PACING_NANOS = 1_000_000;
+
+	/**
+	 * With no recording running, the JFR layer should only add the wrapper objects themselves.
+	 */
+	@Test
+	public void noRecordingAllocationPerSpan() {
+		assertTrue(!FlightRecorder.isInitialized() || FlightRecorder.getFlightRecorder().getRecordings().isEmpty());
+
+		MockTracer rawTracer = new MockTracer();
+		MockTracer delegate = new MockTracer();
+		Tracer tracer = JfrTracerFactory.create(delegate);
+
+		generate(rawTracer, WARMUP);
+		generate(tracer, WARMUP);
+		rawTracer.reset();
+		delegate.reset();
+
+		long raw = allocatedBytes(rawTracer) / SPANS;
+		long wrapped = allocatedBytes(tracer) / SPANS;
+		long overhead = wrapped - raw;
+		assertTrue(overhead < 160,
+				"Allocation overhead per span was " + overhead + " bytes (" + wrapped + " wrapped, " + raw + " raw)");
+	}
+
+	/**
+	 * With no recording running, tracking open spans should not add anything, as spans are only
+	 * tracked while the open span event is enabled.
+	 */
+	@Test
+	public void noRecordingOpenSpanAllocation() {
+		assertTrue(!FlightRecorder.isInitialized() || FlightRecorder.getFlightRecorder().getRecordings().isEmpty());
+
+		Tracer tracer = JfrTracerFactory.create(new MockTracer());
+		Tracer tracking = JfrTracerFactory.create(new MockTracer(),
+				JfrTracerConfiguration.builder().trackOpenSpans(Duration.ofMinutes(1)).build());
+
+		generate(tracer, WARMUP);
+		generate(tracking, WARMUP);
+
+		long untracked = allocatedBytes(tracer) / SPANS;
+		long tracked = allocatedBytes(tracking) / SPANS;
+		assertTrue(tracked - untracked < 8, "Allocation overhead per span of tracking open spans was "
+				+ (tracked - untracked) + " bytes (" + tracked + " tracked, " + untracked + " untracked)");
+	}
+
+	/**
+	 * Activating and closing scopes should not allocate anything in the JFR layer once the scope
+	 * stack of the thread has been set up.
+	 */
+	@Test
+	public void scopeActivationAllocation() {
+		MockTracer rawTracer = new MockTracer();
+		Tracer tracer = JfrTracerFactory.create(new MockTracer());
+		Span rawSpan = rawTracer.buildSpan("raw span").start();
+		Span span = tracer.buildSpan("wrapped span").start();
+
+		activate(rawTracer, rawSpan, WARMUP);
+		activate(tracer, span, WARMUP);
+		long raw = allocatedBytes(() -> activate(rawTracer, rawSpan, SPANS)) / SPANS;
+		long wrapped = allocatedBytes(() -> activate(tracer, span, SPANS)) / SPANS;
+		assertTrue(wrapped - raw < 8, "Allocation overhead per activation was " + (wrapped - raw) + " bytes ("
+				+ wrapped + " wrapped, " + raw + " raw)");
+	}
+
+	/**
+	 * While scope events are recorded, the ids of a span are formatted once, and then reused for
+	 * every following activation of it.
+	 */
+	@Test
+	public void scopeActivationAllocationWhileRecording() {
+		MockTracer rawTracer = new MockTracer();
+		Tracer tracer = JfrTracerFactory.create(new MockTracer());
+		Span rawSpan = rawTracer.buildSpan("raw span").start();
+		Span span = tracer.buildSpan("wrapped span").start();
+
+		try (Recording recording = new Recording()) {
+			recording.enable("io.opentracing.Scope");
+			recording.start();
+			activate(rawTracer, rawSpan, WARMUP);
+			activate(tracer, span, WARMUP);
+			long raw = allocatedBytes(() -> activate(rawTracer, rawSpan, SPANS)) / SPANS;
+			long wrapped = allocatedBytes(() -> activate(tracer, span, SPANS)) / SPANS;
+			assertTrue(wrapped - raw < 8, "Allocation overhead per recorded activation was " + (wrapped - raw)
+					+ " bytes (" + wrapped + " wrapped, " + raw + " raw)");
+		}
+	}
+
+	/**
+	 * While span events are recorded, the event objects are reused through a shared pool, so
+	 * apart from the wrapper objects, the JFR layer should only allocate the formatted ids of a
+	 * span. Those are formatted on the thread emitting the events, unless the span events are
+	 * synchronous.
+	 */
+	@Test
+	public void recordedSpanAllocation() {
+		MockTracer rawTracer = new MockTracer();
+		MockTracer delegate = new MockTracer();
+		Tracer tracer = JfrTracerFactory.create(delegate);
+
+		try (Recording recording = new Recording()) {
+			recording.enable("io.opentracing.Span");
+			recording.disable("io.opentracing.Scope");
+			recording.start();
+			generatePaced(rawTracer, WARMUP);
+			generatePaced(tracer, WARMUP);
+
+			long raw = allocatedBytes(() -> generatePaced(rawTracer, SPANS)) / SPANS;
+			long consumerBefore = consumerAllocatedBytes();
+			long wrapped = allocatedBytes(() -> generatePaced(tracer, SPANS)) / SPANS;
+			LockSupport.parkNanos(PACING_NANOS * 100);
+			long consumer = (consumerAllocatedBytes() - consumerBefore) / SPANS;
+			// The wrapper objects, and the two formatted ids, but no event objects
+			long overhead = wrapped - raw + consumer;
+			assertTrue(overhead < 288, "Allocation overhead per recorded span was " + overhead + " bytes (" + wrapped
+					+ " wrapped, " + raw + " raw, " + consumer + " on the event thread)");
+		}
+	}
+
+	private static long consumerAllocatedBytes() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("JfrTracer Span Events")) {
+				return threadAllocatedBytes(thread.getId());
+			}
+		}
+		// Synchronous span events, so everything was measured on the traced thread
+		return 0;
+	}
+
+	private static long allocatedBytes(Tracer tracer) {
+		return allocatedBytes(() -> generate(tracer, SPANS));
+	}
+
+	private static long allocatedBytes(Runnable runnable) {
+		long threadId = Thread.currentThread().getId();
+		long before = threadAllocatedBytes(threadId);
+		runnable.run();
+		return threadAllocatedBytes(threadId) - before;
+	}
+
+	private static long threadAllocatedBytes(long threadId) {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(threadId);
+	}
+
+	@SuppressWarnings("try")
+	private static void activate(Tracer tracer, Span span, int count) {
+		for (int i = 0; i < count; i++) {
+			try (Scope outer = tracer.scopeManager().activate(span)) {
+				try (Scope inner = tracer.scopeManager().activate(span)) {
+					// Nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generates spans in bursts small enough not to overflow the span event queue.
+	 */
+	private static void generatePaced(Tracer tracer, int count) {
+		for (int i = 0; i < count; i += BURST) {
+			generate(tracer, Math.min(BURST, count - i));
+			LockSupport.parkNanos(PACING_NANOS);
+		}
+	}
+
+	@SuppressWarnings("try")
+	private static void generate(Tracer tracer, int count) {
+		for (int i = 0; i < count; i++) {
+			Span span = tracer.buildSpan("allocation span").start();
+			try (Scope scope = tracer.scopeManager().activate(span)) {
+				// Nothing to do
+			}
+			span.finish();
+		}
+		if (tracer instanceof MockTracer) {
+			((MockTracer) tracer).reset();
+		}
+	}
+}
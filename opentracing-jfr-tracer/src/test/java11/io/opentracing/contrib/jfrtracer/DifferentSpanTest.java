@@ -61,6 +61,7 @@ public class DifferentSpanTest {
 				}).get(5, TimeUnit.SECONDS);
 				scope.close();
 
+				JfrTestUtils.flush();
 				recording.dump(output);
 			}
 
@@ -104,6 +105,7 @@ public class DifferentSpanTest {
 					span.finish();
 				}).get(5, TimeUnit.SECONDS);
 
+				JfrTestUtils.flush();
 				recording.dump(output);
 			}
 
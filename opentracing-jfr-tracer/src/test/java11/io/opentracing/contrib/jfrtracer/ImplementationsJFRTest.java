@@ -101,6 +101,8 @@ public class ImplementationsJFRTest {
                                 }
 				start.finish();
 
+				JfrTestUtils.flush();
+
 				recording.dump(output);
 			}
 
@@ -15,10 +15,17 @@
  */
 package io.opentracing.contrib.jfrtracer;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 public final class JfrTestUtils {
 
@@ -31,6 +38,36 @@ public final class JfrTestUtils {
 		return recording;
 	}
 	
+	/**
+	 * Waits for the span events of the finished spans to be committed, so that a dump of the
+	 * recording includes them.
+	 */
+	public static void flush() {
+		if (!JfrTracerFactory.flushSpanEvents(Duration.ofSeconds(10))) {
+			throw new AssertionError("The span events were not committed in time");
+		}
+	}
+
+	/**
+	 * Dumps a running recording until the events of a type satisfy a condition, as periodic events
+	 * are emitted late on a busy machine.
+	 *
+	 * @return the events of the type in the last dump.
+	 */
+	public static List<RecordedEvent> dumpUntil(Recording recording, Path output, String eventName,
+			Predicate<List<RecordedEvent>> condition) throws IOException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		for (;;) {
+			recording.dump(output);
+			List<RecordedEvent> events = RecordingFile.readAllEvents(output).stream()
+					.filter(e -> e.getEventType().getName().equals(eventName)).collect(Collectors.toList());
+			if (condition.test(events) || System.nanoTime() - deadline > 0) {
+				return events;
+			}
+			sleep(50);
+		}
+	}
+
 	public static void sleep(int millis) {
 		try {
 			Thread.sleep(millis);
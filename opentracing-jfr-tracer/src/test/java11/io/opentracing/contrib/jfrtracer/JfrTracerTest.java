@@ -30,10 +30,14 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -65,8 +69,7 @@ public class JfrTracerTest {
 				// Generate span
 				tracer.buildSpan("test span").start().finish();
 
-				// To be removed when test are fixed, it's used due to concurrency issue
-				Thread.sleep(100);
+				JfrTestUtils.flush();
 
 				recording.dump(output);
 				recording.stop();
@@ -93,6 +96,382 @@ public class JfrTracerTest {
 		}
 	}
 
+	/**
+	 * The id format and the synchronous span events are configured per tracer.
+	 */
+	@Test
+	public void binaryIdsAndSynchronousSpans() throws IOException {
+		Path output = Files.createTempFile("test-recording-binary-11", ".jfr");
+		try {
+			MockTracer binaryMockTracer = new MockTracer();
+			Tracer binaryTracer = JfrTracerFactory.create(binaryMockTracer,
+					JfrTracerConfiguration.builder().binaryIds(true).synchronousSpans(true).build());
+			Tracer stringTracer = JfrTracerFactory.create(new MockTracer());
+
+			try (Recording recording = JfrTestUtils.startJFR()) {
+				binaryTracer.activateSpan(binaryTracer.buildSpan("binary span").start()).close();
+				// Committed on the finishing thread, so there is no need to flush
+				recording.dump(output);
+				List<RecordedEvent> events = RecordingFile.readAllEvents(output);
+				assertEquals(2, events.size());
+				MockSpan span = binaryMockTracer.finishedSpans().get(0);
+				for (RecordedEvent event : events) {
+					assertEquals("binary span", event.getString("operationName"));
+					assertEquals(span.context().traceId(), event.getLong("binaryTraceIdLow"));
+					assertEquals(span.context().spanId(), event.getLong("binarySpanId"));
+					assertNull(event.getString("traceId"));
+				}
+
+				stringTracer.activateSpan(stringTracer.buildSpan("string span").start()).close();
+				JfrTestUtils.flush();
+				recording.dump(output);
+				recording.stop();
+			}
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(output).stream()
+					.filter(e -> e.getString("operationName").equals("string span")).collect(Collectors.toList());
+			assertEquals(2, events.size());
+			for (RecordedEvent event : events) {
+				assertNotNull(event.getString("traceId"));
+				assertEquals(0, event.getLong("binarySpanId"));
+			}
+		} finally {
+			JfrTestUtils.delete(output);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	public void thresholds() throws IOException, InterruptedException {
+		Path output = Files.createTempFile("test-recording-thresholds-11", ".jfr");
+		try {
+			MockTracer mockTracer = new MockTracer();
+			Tracer tracer = JfrTracerFactory.create(mockTracer, JfrTracerConfiguration.builder()
+					.threshold(Duration.ofMillis(20)).threshold("recorded fast span", Duration.ZERO).build());
+
+			try (Recording recording = JfrTestUtils.startJFR()) {
+				for (String operationName : new String[] {"fast span", "recorded fast span"}) {
+					tracer.activateSpan(tracer.buildSpan(operationName).start()).close();
+				}
+				try (Scope scope = tracer.activateSpan(tracer.buildSpan("slow span").start())) {
+					Thread.sleep(40);
+				}
+
+				JfrTestUtils.flush();
+
+				recording.dump(output);
+				recording.stop();
+			}
+
+			assertEquals(3, mockTracer.finishedSpans().size());
+			Map<String, Long> events = RecordingFile.readAllEvents(output).stream()
+					.collect(Collectors.groupingBy(e -> e.getString("operationName"), Collectors.counting()));
+			// One span and one scope event each
+			assertNull(events.get("fast span"));
+			assertEquals(Long.valueOf(2), events.get("recorded fast span"));
+			assertEquals(Long.valueOf(2), events.get("slow span"));
+		} finally {
+			JfrTestUtils.delete(output);
+		}
+	}
+
+	/**
+	 * The span event is queued once the span is finished, but carries the time stamps and threads
+	 * of both the start and the finish of the span.
+	 */
+	@Test
+	public void spanEventEdges() throws IOException, InterruptedException {
+		Path output = Files.createTempFile("test-recording-edges-11", ".jfr");
+		try {
+			Tracer tracer = JfrTracerFactory.create(new MockTracer());
+
+			try (Recording recording = JfrTestUtils.startJFR()) {
+				Span span = tracer.buildSpan("cross thread span").start();
+				Thread.sleep(50);
+				// The end thread is only recorded if it is still alive when the event is committed
+				CountDownLatch finished = new CountDownLatch(1);
+				CountDownLatch dumped = new CountDownLatch(1);
+				Thread finisher = new Thread(() -> {
+					span.finish();
+					finished.countDown();
+					try {
+						dumped.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}, "finisher");
+				finisher.start();
+				finished.await();
+
+				JfrTestUtils.flush();
+
+				recording.dump(output);
+				recording.stop();
+				dumped.countDown();
+				finisher.join();
+			}
+
+			List<RecordedEvent> spans = RecordingFile.readAllEvents(output).stream()
+					.filter(e -> e.getEventType().getName().equals("io.opentracing.Span")).collect(Collectors.toList());
+			assertEquals(1, spans.size());
+			RecordedEvent event = spans.get(0);
+			assertTrue(event.getDuration().toMillis() >= 50);
+			assertTrue(event.getDuration().toMillis() < 100);
+			assertEquals(Thread.currentThread().getName(), event.getThread("startThread").getJavaName());
+			assertEquals("finisher", event.getThread("endThread").getJavaName());
+		} finally {
+			JfrTestUtils.delete(output);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	public void reusedScopeEventDuration() throws IOException, InterruptedException {
+		Path output = Files.createTempFile("test-recording-reused-scope-11", ".jfr");
+		try {
+			Tracer tracer = JfrTracerFactory.create(new MockTracer());
+			Span span = tracer.buildSpan("scope span").start();
+
+			try (Recording recording = JfrTestUtils.startJFR()) {
+				try (Scope scope = tracer.scopeManager().activate(span)) {
+					Thread.sleep(50);
+				}
+				tracer.scopeManager().activate(span).close();
+				recording.dump(output);
+				recording.stop();
+			}
+
+			List<RecordedEvent> scopes = RecordingFile.readAllEvents(output).stream()
+					.filter(e -> e.getEventType().getName().equals("io.opentracing.Scope")).collect(Collectors.toList());
+			assertEquals(2, scopes.size());
+			assertTrue(scopes.get(0).getDuration().toMillis() >= 50);
+			assertTrue(scopes.get(1).getDuration().toMillis() < 50);
+		} finally {
+			JfrTestUtils.delete(output);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	public void scopeThreadResources() throws IOException {
+		Path output = Files.createTempFile("test-recording-resources-11", ".jfr");
+		try {
+			Tracer tracer = JfrTracerFactory.create(new MockTracer());
+			Span span = tracer.buildSpan("busy span").start();
+			List<byte[]> allocated = new ArrayList<>();
+
+			try (Recording recording = new Recording()) {
+				recording.enable("io.opentracing.Scope").with("threadResources", "true");
+				recording.start();
+				try (Scope scope = tracer.scopeManager().activate(span)) {
+					long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+					while (System.nanoTime() < deadline) {
+						allocated.add(new byte[1024]);
+					}
+				}
+				recording.dump(output);
+				recording.stop();
+			}
+			span.finish();
+
+			List<RecordedEvent> scopes = RecordingFile.readAllEvents(output).stream()
+					.filter(e -> e.getEventType().getName().equals("io.opentracing.Scope")).collect(Collectors.toList());
+			assertEquals(1, scopes.size());
+			assertTrue(scopes.get(0).getDuration("cpuTime").toMillis() > 0);
+			assertTrue(scopes.get(0).getLong("allocated") >= allocated.size() * 1024L);
+		} finally {
+			JfrTestUtils.delete(output);
+		}
+	}
+
+	@Test
+	public void healthEvent() throws IOException {
+		Path output = Files.createTempFile("test-recording-health-11", ".jfr");
+		try {
+			Tracer tracer = JfrTracerFactory.create(new MockTracer(), JfrTracerConfiguration.builder()
+					.threshold("filtered span", Duration.ofHours(1)).build());
+
+			List<RecordedEvent> health;
+			try (Recording recording = new Recording()) {
+				// The period only takes effect if set before the recording is started
+				recording.enable("io.opentracing.TracerHealth").withPeriod(Duration.ofMillis(50));
+				recording.start();
+				Span open = tracer.buildSpan("open span").start();
+				for (int i = 0; i < 10; i++) {
+					Span span = tracer.buildSpan("health span").start();
+					tracer.scopeManager().activate(span).close();
+					span.finish();
+				}
+				tracer.buildSpan("filtered span").start().finish();
+
+				// Wait for the span events to be committed, and a health event to count them
+				JfrTestUtils.flush();
+				health = JfrTestUtils.dumpUntil(recording, output, "io.opentracing.TracerHealth",
+						events -> !events.isEmpty() && events.get(events.size() - 1).getLong("spansEmitted") >= 10);
+				recording.stop();
+				open.finish();
+			}
+
+			assertFalse(health.isEmpty());
+			// The counts are totals for the JVM, so other tests may have added to them
+			RecordedEvent last = health.get(health.size() - 1);
+			assertTrue(last.getLong("spansEmitted") >= 10);
+			assertTrue(last.getLong("spansFiltered") >= 1);
+			assertTrue(last.getLong("scopesEmitted") >= 10);
+			assertTrue(last.getLong("openSpans") >= 1);
+			assertEquals(0, last.getInt("queueDepth"));
+		} finally {
+			JfrTestUtils.delete(output);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	public void slowSpanDump() throws IOException {
+		Path directory = Files.createTempDirectory("test-slow-spans");
+		try {
+			MockTracer mockTracer = new MockTracer();
+			Tracer tracer = JfrTracerFactory.create(mockTracer,
+					JfrTracerConfiguration.builder().slowSpanLimit("slow span", Duration.ofMillis(20))
+							.slowSpanDumpDirectory(directory).slowSpanDumpInterval(Duration.ZERO).slowSpanDumpCount(1)
+							.build());
+
+			try (Recording recording = JfrTestUtils.startJFR()) {
+				// Fast spans, and spans of operations without a limit, are not dumped
+				tracer.buildSpan("slow span").start().finish();
+				Span other = tracer.buildSpan("other span").start();
+				JfrTestUtils.sleep(30);
+				other.finish();
+
+				Span slow = tracer.buildSpan("slow span").start();
+				Span sameTrace = tracer.buildSpan("slow span").asChildOf(slow).start();
+				JfrTestUtils.sleep(30);
+				sameTrace.finish();
+				slow.finish();
+				await().atMost(10, TimeUnit.SECONDS).until(() -> listDumps(directory).size() == 1);
+				Path first = listDumps(directory).get(0);
+				String traceId = slow.context().toTraceId();
+				assertTrue(first.getFileName().toString().endsWith("-slow_span-" + traceId + ".jfr"), first.toString());
+				assertTrue(RecordingFile.readAllEvents(first).stream()
+						.anyMatch(e -> e.getEventType().getName().equals("io.opentracing.Span")
+								&& traceId.equals(e.getString("traceId"))));
+
+				// A second slow span of another trace replaces the first dump
+				JfrTestUtils.sleep(10);
+				Span next = tracer.buildSpan("slow span").start();
+				JfrTestUtils.sleep(30);
+				next.finish();
+				await().atMost(10, TimeUnit.SECONDS).until(() -> !listDumps(directory).contains(first));
+				List<Path> dumps = listDumps(directory);
+				assertEquals(1, dumps.size());
+				assertTrue(dumps.get(0).toString().endsWith(next.context().toTraceId() + ".jfr"));
+			}
+		} finally {
+			for (Path dump : listDumps(directory)) {
+				JfrTestUtils.delete(dump);
+			}
+			JfrTestUtils.delete(directory);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	public void wallClockSampling() throws IOException, InterruptedException {
+		Path output = Files.createTempFile("test-recording-wall-clock-11", ".jfr");
+		try {
+			Tracer tracer = JfrTracerFactory.create(new MockTracer(),
+					JfrTracerConfiguration.builder().wallClockSampling(Duration.ofMillis(10)).build());
+			Thread outside = new Thread(() -> spin(500), "outside of scopes");
+
+			Span span;
+			try (Recording recording = JfrTestUtils.startJFR()) {
+				outside.start();
+				span = tracer.buildSpan("sampled span").start();
+				try (Scope scope = tracer.scopeManager().activate(span)) {
+					spin(500);
+				}
+				span.finish();
+				outside.join();
+				recording.dump(output);
+			}
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(output);
+			List<RecordedEvent> samples = events.stream()
+					.filter(e -> e.getEventType().getName().equals("io.opentracing.WallClockSample"))
+					.collect(Collectors.toList());
+			Map<Long, String> stackTraces = events.stream()
+					.filter(e -> e.getEventType().getName().equals("io.opentracing.WallClockStackTrace"))
+					.collect(Collectors.toMap(e -> e.getLong("stackTraceId"), e -> e.getString("frames"),
+							(first, second) -> first));
+			assertTrue(samples.size() > 10, "Only " + samples.size() + " samples");
+			for (RecordedEvent sample : samples) {
+				assertEquals(Thread.currentThread().getName(), sample.getThread("sampledThread").getJavaName());
+				assertEquals("sampled span", sample.getString("operationName"));
+				assertEquals(span.context().toTraceId(), sample.getString("traceId"));
+				assertEquals(span.context().toSpanId(), sample.getString("spanId"));
+			}
+			// Each stack trace is recorded once, and shared by the samples
+			assertTrue(stackTraces.size() < samples.size(), stackTraces.size() + " stack traces");
+			for (RecordedEvent sample : samples) {
+				assertTrue(stackTraces.containsKey(sample.getLong("stackTraceId")));
+			}
+			assertTrue(stackTraces.values().stream().anyMatch(stackTrace -> stackTrace.contains("JfrTracerTest.spin")));
+		} finally {
+			JfrTestUtils.delete(output);
+		}
+	}
+
+	private static void spin(long millis) {
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		while (System.nanoTime() < end) {
+			// Keep the thread running
+		}
+	}
+
+	@Test
+	public void openSpans() throws IOException {
+		Path output = Files.createTempFile("test-recording-open-spans-11", ".jfr");
+		try {
+			Tracer tracer = JfrTracerFactory.create(new MockTracer(),
+					JfrTracerConfiguration.builder().trackOpenSpans(Duration.ofMillis(100)).build());
+
+			// Spans are only tracked while the open span event is enabled
+			Span untracked = tracer.buildSpan("untracked span").start();
+			Span open;
+			List<RecordedEvent> events;
+			try (Recording recording = new Recording()) {
+				recording.enable("io.opentracing.OpenSpan").withPeriod(Duration.ofMillis(50));
+				recording.start();
+				open = tracer.buildSpan("open span").start();
+				tracer.buildSpan("finished span").start().finish();
+				// Wait for the span to be listed as a probable leak
+				events = JfrTestUtils.dumpUntil(recording, output, "io.opentracing.OpenSpan",
+						list -> !list.isEmpty() && list.get(list.size() - 1).getBoolean("probableLeak"));
+				recording.stop();
+				open.finish();
+			}
+			untracked.finish();
+
+			assertFalse(events.isEmpty());
+			for (RecordedEvent event : events) {
+				assertEquals("open span", event.getString("operationName"));
+				assertEquals(open.context().toSpanId(), event.getString("spanId"));
+				assertEquals(Thread.currentThread().getName(), event.getThread("startThread").getJavaName());
+				assertEquals(event.getDuration("age").toNanos() > TimeUnit.MILLISECONDS.toNanos(100),
+						event.getBoolean("probableLeak"));
+			}
+			assertTrue(events.get(events.size() - 1).getBoolean("probableLeak"));
+		} finally {
+			JfrTestUtils.delete(output);
+		}
+	}
+
+	private static List<Path> listDumps(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().collect(Collectors.toList());
+		}
+	}
+
 	@Test
 	public void noJFR() throws IOException {
 		// Setup tracers
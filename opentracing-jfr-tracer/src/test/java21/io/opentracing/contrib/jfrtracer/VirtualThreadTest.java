@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.opentracing.contrib.jfrtracer;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockTracer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualThreadTest {
+
+	/**
+	 * The scope stacks released by finished virtual threads are reused by later ones, and must
+	 * start out empty. With a single pooled stack, every virtual thread picks up the previous one's.
+	 */
+	@Test
+	@SuppressWarnings("try")
+	public void nestedScopesOnVirtualThreads() {
+		Tracer tracer = JfrTracerFactory.create(new MockTracer(),
+				JfrTracerConfiguration.builder().scopeStackPoolSize(1).build());
+		AtomicInteger failures = new AtomicInteger();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < 10_000; i++) {
+				executor.execute(() -> {
+					if (tracer.activeSpan() != null) {
+						failures.incrementAndGet();
+					}
+					Span outer = tracer.buildSpan("outer span").start();
+					try (Scope outerScope = tracer.scopeManager().activate(outer)) {
+						Span inner = tracer.buildSpan("inner span").start();
+						try (Scope innerScope = tracer.scopeManager().activate(inner)) {
+							Thread.yield();
+							if (tracer.activeSpan() != inner) {
+								failures.incrementAndGet();
+							}
+						}
+						inner.finish();
+						if (tracer.activeSpan() != outer) {
+							failures.incrementAndGet();
+						}
+					}
+					outer.finish();
+					if (tracer.activeSpan() != null) {
+						failures.incrementAndGet();
+					}
+				});
+			}
+		}
+		assertEquals(0, failures.get());
+	}
+
+	/**
+	 * Closing a scope again after its stack was handed over to another virtual thread must not
+	 * close the scope of that thread.
+	 */
+	@Test
+	public void closingHandedOverScope() throws InterruptedException {
+		Tracer tracer = JfrTracerFactory.create(new MockTracer(),
+				JfrTracerConfiguration.builder().scopeStackPoolSize(1).build());
+		Span span = tracer.buildSpan("span").start();
+		CountDownLatch released = new CountDownLatch(1);
+		CountDownLatch handedOver = new CountDownLatch(1);
+		CountDownLatch staleClosed = new CountDownLatch(1);
+		AtomicInteger failures = new AtomicInteger();
+		Thread first = Thread.ofVirtual().start(() -> {
+			Scope scope = tracer.scopeManager().activate(span);
+			scope.close();
+			released.countDown();
+			await(handedOver);
+			scope.close();
+			staleClosed.countDown();
+		});
+		released.await();
+		Thread second = Thread.ofVirtual().start(() -> {
+			Scope scope = tracer.scopeManager().activate(span);
+			handedOver.countDown();
+			await(staleClosed);
+			if (tracer.activeSpan() != span) {
+				failures.incrementAndGet();
+			}
+			scope.close();
+		});
+		first.join();
+		second.join();
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void carrierThreads() throws IOException, InterruptedException {
+		Path output = Files.createTempFile("test-recording-virtual-21", ".jfr");
+		try {
+			Tracer tracer = JfrTracerFactory.create(new MockTracer());
+			try (Recording recording = new Recording()) {
+				recording.enable("io.opentracing.Scope");
+				recording.start();
+				Thread.ofVirtual().start(() -> tracer.activateSpan(tracer.buildSpan("virtual span").start()).close())
+						.join();
+				Thread.ofPlatform().start(() -> tracer.activateSpan(tracer.buildSpan("platform span").start()).close())
+						.join();
+				recording.dump(output);
+			}
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(output).stream()
+					.filter(e -> e.getEventType().getName().equals("io.opentracing.Scope")).collect(Collectors.toList());
+			assertEquals(2, events.size());
+			for (RecordedEvent event : events) {
+				if (event.getString("operationName").equals("virtual span")) {
+					assertTrue(event.getBoolean("virtual"));
+					assertTrue(event.getThread().isVirtual());
+					// The tests open java.lang, so the carrier threads are available
+					assertNotNull(event.getThread("startCarrierThread"));
+					assertNotNull(event.getThread("endCarrierThread"));
+				} else {
+					assertFalse(event.getBoolean("virtual"));
+					assertNull(event.getThread("startCarrierThread"));
+				}
+			}
+		} finally {
+			Files.deleteIfExists(output);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}